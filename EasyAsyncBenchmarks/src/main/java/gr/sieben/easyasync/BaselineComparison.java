@@ -0,0 +1,134 @@
+package gr.sieben.easyasync;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares the results of a benchmark run with the committed baseline, both in the CSV format of JMH.
+ * A score that is worse than the baseline by more than the tolerance is reported as a regression and the process
+ * exits with status 1. Scores in operations per time are better when higher, scores in time per operation when lower.
+ * The percentiles of the sample mode and the single shot scores of the cold starts are printed but not compared,
+ * they are too noisy for a fixed tolerance.
+ * <pre><code>
+ * java gr.sieben.easyasync.BaselineComparison baseline/results.csv build/jmh/results.csv [tolerance]
+ * </code></pre>
+ */
+public final class BaselineComparison {
+
+    private static final double DEFAULT_TOLERANCE = 0.25;
+
+    private BaselineComparison() {}
+
+    public static void main(String[] args) throws IOException {
+        if(args.length < 2) {
+            System.err.println("Usage: BaselineComparison <baseline.csv> <results.csv> [tolerance]");
+            System.exit(2);
+        }
+        double tolerance = args.length > 2 ? Double.parseDouble(args[2]) : DEFAULT_TOLERANCE;
+        Map<String, Score> baseline = read(args[0]);
+        Map<String, Score> results = read(args[1]);
+        int regressions = 0;
+        for(Map.Entry<String, Score> entry : results.entrySet()) {
+            Score before = baseline.get(entry.getKey());
+            Score after = entry.getValue();
+            if(before == null) {
+                System.out.println("NEW        " + entry.getKey() + " " + after);
+                continue;
+            }
+            if(entry.getKey().matches("\\S*:p[01]\\.\\d+ .*") || entry.getKey().matches("\\S+ ss .*")) {
+                System.out.println("           " + entry.getKey() + " " + before + " -> " + after);
+                continue;
+            }
+            double change = before.value == 0 ? 0 : (after.value - before.value) / before.value;
+            double worse = after.higherIsBetter ? -change : change;
+            boolean regressed = worse > tolerance;
+            if(regressed)
+                regressions++;
+            System.out.println(String.format("%-10s %s %s -> %s (%+.1f%%)", regressed ? "REGRESSION" : "OK",
+                    entry.getKey(), before, after, change * 100));
+        }
+        if(regressions > 0) {
+            System.out.println(regressions + " benchmarks are slower than the baseline by more than " +
+                    Math.round(tolerance * 100) + "%");
+            System.exit(1);
+        }
+    }
+
+    private static final class Score {
+        final double value;
+        final String unit;
+        final boolean higherIsBetter;
+
+        Score(double value, String unit) {
+            this.value = value;
+            this.unit = unit;
+            this.higherIsBetter = unit.startsWith("ops/");
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%.3f %s", value, unit);
+        }
+    }
+
+    //reads the scores by benchmark, mode, threads and parameters
+    private static Map<String, Score> read(String path) throws IOException {
+        Map<String, Score> scores = new LinkedHashMap<String, Score>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(path), "UTF-8"));
+        try {
+            List<String> header = split(reader.readLine());
+            int score = header.indexOf("Score");
+            int unit = header.indexOf("Unit");
+            String line;
+            while((line = reader.readLine()) != null) {
+                if(line.trim().length() == 0)
+                    continue;
+                List<String> columns = split(line);
+                StringBuilder key = new StringBuilder();
+                for(int i = 0; i < columns.size(); i++) {
+                    String name = header.get(i);
+                    if(name.equals("Benchmark") || name.equals("Mode") || name.equals("Threads")) {
+                        key.append(columns.get(i)).append(' ');
+                    } else if(name.startsWith("Param: ") && columns.get(i).length() > 0) {
+                        key.append(name.substring("Param: ".length())).append('=').append(columns.get(i)).append(' ');
+                    }
+                }
+                scores.put(key.toString().trim(), new Score(Double.parseDouble(columns.get(score)), columns.get(unit)));
+            }
+        } finally {
+            reader.close();
+        }
+        return scores;
+    }
+
+    //splits a line of CSV, the fields may be quoted
+    private static List<String> split(String line) {
+        List<String> fields = new ArrayList<String>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for(int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if(c == '"') {
+                if(quoted && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = !quoted;
+                }
+            } else if(c == ',' && !quoted) {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+}
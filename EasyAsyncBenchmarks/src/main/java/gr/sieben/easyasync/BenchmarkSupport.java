@@ -0,0 +1,73 @@
+package gr.sieben.easyasync;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Helpers of the benchmarks. The main thread is an {@link gr.sieben.easyasync.EventLoop}, so everything that
+ * the library expects in the main thread is posted to it and awaited.
+ */
+final class BenchmarkSupport {
+
+    static final EventLoop MAIN_THREAD = new EventLoop("main");
+    static final EasyAsyncCore CORE = new EasyAsyncCore(MAIN_THREAD);
+
+    private BenchmarkSupport() {}
+
+    /**
+     * Runs the runnable in the main thread and waits for it
+     * @param runnable The runnable to run
+     */
+    static void runOnMainThread(final Runnable runnable) {
+        if(MAIN_THREAD.isLoopThread()) {
+            runnable.run();
+            return;
+        }
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicReference<RuntimeException> failure = new AtomicReference<RuntimeException>();
+        MAIN_THREAD.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    runnable.run();
+                } catch (RuntimeException e) {
+                    failure.set(e);
+                } finally {
+                    done.countDown();
+                }
+            }
+        });
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException("Interrupted while waiting for the main thread", e);
+        }
+        if(failure.get() != null)
+            throw failure.get();
+    }
+
+    /**
+     * Registers the target in the core
+     * @param target The object with the annotated methods
+     */
+    static void attach(final Object target) {
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                CORE.register(target);
+            }
+        });
+    }
+
+    /**
+     * Destroys the runs and the registered targets of the core
+     */
+    static void detach() {
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                CORE.destroy();
+            }
+        });
+    }
+}
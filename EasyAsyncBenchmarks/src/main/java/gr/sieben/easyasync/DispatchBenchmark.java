@@ -0,0 +1,81 @@
+package gr.sieben.easyasync;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of {@linkplain gr.sieben.easyasync.EasyAsync#invokeMethod(String, EasyAsyncCallbacks, EasyAsyncResult)} for each
+ * {@link gr.sieben.easyasync.AnnotatedMethodType}. The annotation processor does not run in this module, so the
+ * annotated methods are invoked with reflection.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DispatchBenchmark {
+
+    public static class Target {
+        int calls;
+
+        @BackgroundJob(id = "noParam")
+        public void noParam() {
+            calls++;
+        }
+
+        @BackgroundJob(id = "callbacks")
+        public void callbacks(EasyAsyncCallbacks callbacks) {
+            calls++;
+        }
+
+        @BackgroundJob(id = "result")
+        public void result(EasyAsyncCallbacks callbacks, EasyAsyncResult<Object, Object> args) {
+            calls++;
+        }
+    }
+
+    private Target target;
+    private EasyAsyncResult args;
+
+    @Setup
+    public void setUp() {
+        target = new Target();
+        args = EasyAsyncResult.obtain();
+        BenchmarkSupport.attach(target);
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkSupport.detach();
+    }
+
+    @Benchmark
+    public int noParam() {
+        BenchmarkSupport.CORE.invokeMethod("noParam", EasyAsyncCallbacks.ON_BACKGROUND, args);
+        return target.calls;
+    }
+
+    @Benchmark
+    public int typeCallbacks() {
+        BenchmarkSupport.CORE.invokeMethod("callbacks", EasyAsyncCallbacks.ON_BACKGROUND, args);
+        return target.calls;
+    }
+
+    @Benchmark
+    public int typeResult() {
+        BenchmarkSupport.CORE.invokeMethod("result", EasyAsyncCallbacks.ON_BACKGROUND, args);
+        return target.calls;
+    }
+}
@@ -0,0 +1,89 @@
+package gr.sieben.easyasync;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cold start of a core with the eager and the lazy registration of a large target: the time that the registration
+ * blocks the main thread and the time from the registration until the first background job has delivered
+ * {@link gr.sieben.easyasync.EasyAsyncCallbacks#AFTER_EXECUTE}. Every invocation uses a new core, so the class of the
+ * target is scanned each time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 10)
+@Measurement(iterations = 30)
+@Fork(1)
+public class InitBenchmark {
+
+    @Param({"eager", "lazy"})
+    public String mode;
+
+    private EasyAsyncCore core;
+    private LargeTarget target;
+
+    @Setup(Level.Invocation)
+    public void setUp() {
+        core = new EasyAsyncCore(BenchmarkSupport.MAIN_THREAD);
+        target = new LargeTarget();
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDown() {
+        BenchmarkSupport.runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                core.destroy();
+            }
+        });
+    }
+
+    //registers the target in the main thread, like the initialisation in onCreate
+    private void registerTarget() {
+        if("lazy".equals(mode)) {
+            core.registerLazily(target);
+        } else {
+            core.register(target);
+        }
+    }
+
+    //measured in the thread of the benchmark, the round trip to the main thread is larger than the lazy registration
+    @Benchmark
+    public void init() {
+        registerTarget();
+    }
+
+    @Benchmark
+    public void initToAfterExecute() throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(1);
+        final JobListener listener = new JobListener() {
+            @Override
+            public void onJobFinished(String id, EasyAsyncCallbacks callbacks, EasyAsyncResult args) {
+                done.countDown();
+            }
+        };
+        BenchmarkSupport.MAIN_THREAD.execute(new Runnable() {
+            @Override
+            public void run() {
+                registerTarget();
+                core.start(LargeTarget.IDS[0], null, listener);
+            }
+        });
+        done.await();
+    }
+}
@@ -0,0 +1,308 @@
+package gr.sieben.easyasync;
+
+/**
+ * A large target with 32 annotated methods in a chain of dependencies and 32 methods without annotation.
+ */
+public class LargeTarget {
+
+    /**
+     * The ids of the annotated methods
+     */
+    static final String[] IDS = new String[32];
+
+    static {
+        for(int i = 0; i < IDS.length; i++) {
+            IDS[i] = "large" + i;
+        }
+    }
+
+    int calls;
+
+    @BackgroundJob(id = "large0")
+    public void job0(EasyAsyncCallbacks callbacks, EasyAsyncResult<Object, Object> args) {
+        calls++;
+    }
+
+    @BackgroundJob(id = "large1", dependsOn = "large0")
+    public void job1(EasyAsyncCallbacks callbacks, EasyAsyncResult<Object, Object> args) {
+        calls++;
+    }
+
+    @BackgroundJob(id = "large2", dependsOn = "large1")
+    public void job2(EasyAsyncCallbacks callbacks, EasyAsyncResult<Object, Object> args) {
+        calls++;
+    }
+
+    @BackgroundJob(id = "large3", dependsOn = "large2")
+    public void job3(EasyAsyncCallbacks callbacks, EasyAsyncResult<Object, Object> args) {
+        calls++;
+    }
+
+    @BackgroundJob(id = "large4", dependsOn = "large3")
+    public void job4(EasyAsyncCallbacks callbacks, EasyAsyncResult<Object, Object> args) {
+        calls++;
+    }
+
+    @BackgroundJob(id = "large5", dependsOn = "large4")
+    public void job5(EasyAsyncCallbacks callbacks, EasyAsyncResult<Object, Object> args) {
+        calls++;
+    }
+
+    @BackgroundJob(id = "large6", dependsOn = "large5")
+    public void job6(EasyAsyncCallbacks callbacks, EasyAsyncResult<Object, Object> args) {
+        calls++;
+    }
+
+    @BackgroundJob(id = "large7", dependsOn = "large6")
+    public void job7(EasyAsyncCallbacks callbacks, EasyAsyncResult<Object, Object> args) {
+        calls++;
+    }
+
+    @BackgroundJob(id = "large8", dependsOn = "large7")
+    public void job8(EasyAsyncCallbacks callbacks, EasyAsyncResult<Object, Object> args) {
+        calls++;
+    }
+
+    @BackgroundJob(id = "large9", dependsOn = "large8")
+    public void job9(EasyAsyncCallbacks callbacks, EasyAsyncResult<Object, Object> args) {
+        calls++;
+    }
+
+    @BackgroundJob(id = "large10", dependsOn = "large9")
+    public void job10(EasyAsyncCallbacks callbacks, EasyAsyncResult<Object, Object> args) {
+        calls++;
+    }
+
+    @BackgroundJob(id = "large11", dependsOn = "large10")
+    public void job11(EasyAsyncCallbacks callbacks, EasyAsyncResult<Object, Object> args) {
+        calls++;
+    }
+
+    @BackgroundJob(id = "large12", dependsOn = "large11")
+    public void job12(EasyAsyncCallbacks callbacks, EasyAsyncResult<Object, Object> args) {
+        calls++;
+    }
+
+    @BackgroundJob(id = "large13", dependsOn = "large12")
+    public void job13(EasyAsyncCallbacks callbacks, EasyAsyncResult<Object, Object> args) {
+        calls++;
+    }
+
+    @BackgroundJob(id = "large14", dependsOn = "large13")
+    public void job14(EasyAsyncCallbacks callbacks, EasyAsyncResult<Object, Object> args) {
+        calls++;
+    }
+
+    @BackgroundJob(id = "large15", dependsOn = "large14")
+    public void job15(EasyAsyncCallbacks callbacks, EasyAsyncResult<Object, Object> args) {
+        calls++;
+    }
+
+    @BackgroundJob(id = "large16", dependsOn = "large15")
+    public void job16(EasyAsyncCallbacks callbacks, EasyAsyncResult<Object, Object> args) {
+        calls++;
+    }
+
+    @BackgroundJob(id = "large17", dependsOn = "large16")
+    public void job17(EasyAsyncCallbacks callbacks, EasyAsyncResult<Object, Object> args) {
+        calls++;
+    }
+
+    @BackgroundJob(id = "large18", dependsOn = "large17")
+    public void job18(EasyAsyncCallbacks callbacks, EasyAsyncResult<Object, Object> args) {
+        calls++;
+    }
+
+    @BackgroundJob(id = "large19", dependsOn = "large18")
+    public void job19(EasyAsyncCallbacks callbacks, EasyAsyncResult<Object, Object> args) {
+        calls++;
+    }
+
+    @BackgroundJob(id = "large20", dependsOn = "large19")
+    public void job20(EasyAsyncCallbacks callbacks, EasyAsyncResult<Object, Object> args) {
+        calls++;
+    }
+
+    @BackgroundJob(id = "large21", dependsOn = "large20")
+    public void job21(EasyAsyncCallbacks callbacks, EasyAsyncResult<Object, Object> args) {
+        calls++;
+    }
+
+    @BackgroundJob(id = "large22", dependsOn = "large21")
+    public void job22(EasyAsyncCallbacks callbacks, EasyAsyncResult<Object, Object> args) {
+        calls++;
+    }
+
+    @BackgroundJob(id = "large23", dependsOn = "large22")
+    public void job23(EasyAsyncCallbacks callbacks, EasyAsyncResult<Object, Object> args) {
+        calls++;
+    }
+
+    @BackgroundJob(id = "large24", dependsOn = "large23")
+    public void job24(EasyAsyncCallbacks callbacks, EasyAsyncResult<Object, Object> args) {
+        calls++;
+    }
+
+    @BackgroundJob(id = "large25", dependsOn = "large24")
+    public void job25(EasyAsyncCallbacks callbacks, EasyAsyncResult<Object, Object> args) {
+        calls++;
+    }
+
+    @BackgroundJob(id = "large26", dependsOn = "large25")
+    public void job26(EasyAsyncCallbacks callbacks, EasyAsyncResult<Object, Object> args) {
+        calls++;
+    }
+
+    @BackgroundJob(id = "large27", dependsOn = "large26")
+    public void job27(EasyAsyncCallbacks callbacks, EasyAsyncResult<Object, Object> args) {
+        calls++;
+    }
+
+    @BackgroundJob(id = "large28", dependsOn = "large27")
+    public void job28(EasyAsyncCallbacks callbacks, EasyAsyncResult<Object, Object> args) {
+        calls++;
+    }
+
+    @BackgroundJob(id = "large29", dependsOn = "large28")
+    public void job29(EasyAsyncCallbacks callbacks, EasyAsyncResult<Object, Object> args) {
+        calls++;
+    }
+
+    @BackgroundJob(id = "large30", dependsOn = "large29")
+    public void job30(EasyAsyncCallbacks callbacks, EasyAsyncResult<Object, Object> args) {
+        calls++;
+    }
+
+    @BackgroundJob(id = "large31", dependsOn = "large30")
+    public void job31(EasyAsyncCallbacks callbacks, EasyAsyncResult<Object, Object> args) {
+        calls++;
+    }
+
+    public int plain0() {
+        return calls + 0;
+    }
+
+    public int plain1() {
+        return calls + 1;
+    }
+
+    public int plain2() {
+        return calls + 2;
+    }
+
+    public int plain3() {
+        return calls + 3;
+    }
+
+    public int plain4() {
+        return calls + 4;
+    }
+
+    public int plain5() {
+        return calls + 5;
+    }
+
+    public int plain6() {
+        return calls + 6;
+    }
+
+    public int plain7() {
+        return calls + 7;
+    }
+
+    public int plain8() {
+        return calls + 8;
+    }
+
+    public int plain9() {
+        return calls + 9;
+    }
+
+    public int plain10() {
+        return calls + 10;
+    }
+
+    public int plain11() {
+        return calls + 11;
+    }
+
+    public int plain12() {
+        return calls + 12;
+    }
+
+    public int plain13() {
+        return calls + 13;
+    }
+
+    public int plain14() {
+        return calls + 14;
+    }
+
+    public int plain15() {
+        return calls + 15;
+    }
+
+    public int plain16() {
+        return calls + 16;
+    }
+
+    public int plain17() {
+        return calls + 17;
+    }
+
+    public int plain18() {
+        return calls + 18;
+    }
+
+    public int plain19() {
+        return calls + 19;
+    }
+
+    public int plain20() {
+        return calls + 20;
+    }
+
+    public int plain21() {
+        return calls + 21;
+    }
+
+    public int plain22() {
+        return calls + 22;
+    }
+
+    public int plain23() {
+        return calls + 23;
+    }
+
+    public int plain24() {
+        return calls + 24;
+    }
+
+    public int plain25() {
+        return calls + 25;
+    }
+
+    public int plain26() {
+        return calls + 26;
+    }
+
+    public int plain27() {
+        return calls + 27;
+    }
+
+    public int plain28() {
+        return calls + 28;
+    }
+
+    public int plain29() {
+        return calls + 29;
+    }
+
+    public int plain30() {
+        return calls + 30;
+    }
+
+    public int plain31() {
+        return calls + 31;
+    }
+}
@@ -0,0 +1,74 @@
+package gr.sieben.easyasync;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookups of the registry of the annotated methods by many threads, alone and while the target is registered
+ * again and again as in configuration changes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LookupBenchmark {
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+
+        String nextId() {
+            return LargeTarget.IDS[next++ & (LargeTarget.IDS.length - 1)];
+        }
+    }
+
+    private LargeTarget target;
+
+    @Setup
+    public void setUp() {
+        target = new LargeTarget();
+        BenchmarkSupport.attach(target);
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkSupport.detach();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Object lookup(Cursor cursor) {
+        return BenchmarkSupport.CORE.mAnnotatedMethods.get(cursor.nextId());
+    }
+
+    @Benchmark
+    @Group("rebinding")
+    @GroupThreads(3)
+    public Object lookupWhileRebinding(Cursor cursor) {
+        return BenchmarkSupport.CORE.mAnnotatedMethods.get(cursor.nextId()).getBinding(true);
+    }
+
+    @Benchmark
+    @Group("rebinding")
+    @GroupThreads(1)
+    public void rebind() {
+        BenchmarkSupport.CORE.clearAnnotations();
+        BenchmarkSupport.CORE.findAnnotations(target);
+    }
+}
@@ -0,0 +1,52 @@
+package gr.sieben.easyasync;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the annotation scan of a large class and of the registration of a target during a configuration change,
+ * when the descriptor of its class is already cached.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RegistryBenchmark {
+
+    private LargeTarget target;
+
+    @Setup
+    public void setUp() {
+        target = new LargeTarget();
+        BenchmarkSupport.attach(target);
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkSupport.detach();
+    }
+
+    @Benchmark
+    public Object scanClass() {
+        return ClassDescriptor.create(LargeTarget.class);
+    }
+
+    @Benchmark
+    public void configurationChange() {
+        BenchmarkSupport.CORE.clearAnnotations();
+        BenchmarkSupport.CORE.findAnnotations(target);
+    }
+}
@@ -0,0 +1,96 @@
+package gr.sieben.easyasync;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency and throughput from the start of a number of concurrent runs in the main thread until all of them have
+ * delivered {@link gr.sieben.easyasync.EasyAsyncCallbacks#AFTER_EXECUTE}. The runs are started with distinct keys
+ * and forced, so that each of them is executed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StartBenchmark {
+
+    public static class Target {
+
+        @BackgroundJob(id = "serial")
+        public void serial(EasyAsyncCallbacks callbacks, EasyAsyncResult<Object, Object> args) {
+            if(callbacks == EasyAsyncCallbacks.ON_BACKGROUND)
+                args.setResult(args.getParameter());
+        }
+
+        @BackgroundJob(id = "parallel", executor = ExecutorType.PARALLEL)
+        public void parallel(EasyAsyncCallbacks callbacks, EasyAsyncResult<Object, Object> args) {
+            if(callbacks == EasyAsyncCallbacks.ON_BACKGROUND)
+                args.setResult(args.getParameter());
+        }
+
+        @BackgroundJob(id = "virtual", executor = ExecutorType.VIRTUAL)
+        public void virtual(EasyAsyncCallbacks callbacks, EasyAsyncResult<Object, Object> args) {
+            if(callbacks == EasyAsyncCallbacks.ON_BACKGROUND)
+                args.setResult(args.getParameter());
+        }
+    }
+
+    @Param({"serial", "parallel", "virtual"})
+    public String id;
+
+    @Param({"1", "64"})
+    public int jobs;
+
+    private Target target;
+    private Integer[] keys;
+
+    @Setup
+    public void setUp() {
+        target = new Target();
+        keys = new Integer[jobs];
+        for(int i = 0; i < jobs; i++) {
+            keys[i] = i;
+        }
+        BenchmarkSupport.attach(target);
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkSupport.detach();
+    }
+
+    @Benchmark
+    public void startToAfterExecute() throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(jobs);
+        final JobListener listener = new JobListener() {
+            @Override
+            public void onJobFinished(String id, EasyAsyncCallbacks callbacks, EasyAsyncResult args) {
+                done.countDown();
+            }
+        };
+        BenchmarkSupport.MAIN_THREAD.execute(new Runnable() {
+            @Override
+            public void run() {
+                for(int i = 0; i < jobs; i++) {
+                    BenchmarkSupport.CORE.forceStart(id, keys[i], listener);
+                }
+            }
+        });
+        done.await();
+    }
+}
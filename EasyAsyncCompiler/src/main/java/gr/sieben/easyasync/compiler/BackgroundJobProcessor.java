@@ -0,0 +1,337 @@
+package gr.sieben.easyasync.compiler;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+/**
+ * Annotation processor that generates a dispatcher for every class that declares
+ * {@code gr.sieben.easyasync.BackgroundJob} annotated methods.
+ * The generated class implements {@code gr.sieben.easyasync.EasyAsyncDispatcher}, it is named after the binary name
+ * of the class with the {@code $$EasyAsyncDispatcher} suffix and it invokes the annotated methods directly
+ * instead of using reflection. The signatures of the annotated methods are validated at compile time.
+ * <p>
+ * The annotation types are referenced by name so that the processor does not depend on the android library.
+ * </p>
+ */
+public class BackgroundJobProcessor extends AbstractProcessor {
+
+    static final String PACKAGE = "gr.sieben.easyasync";
+    static final String BACKGROUND_JOB = PACKAGE + ".BackgroundJob";
+    static final String CALLBACKS = PACKAGE + ".EasyAsyncCallbacks";
+    static final String RUNTIME_EXCEPTION = PACKAGE + ".exceptions.EasyAsyncRuntimeException";
+    static final String RESULT = PACKAGE + ".EasyAsyncResult";
+    static final String DISPATCHER = PACKAGE + ".EasyAsyncDispatcher";
+    static final String SUFFIX = "$$EasyAsyncDispatcher";
+
+    private Elements elementUtils;
+    private Types typeUtils;
+    private Messager messager;
+
+    @Override
+    public synchronized void init(ProcessingEnvironment processingEnv) {
+        super.init(processingEnv);
+        elementUtils = processingEnv.getElementUtils();
+        typeUtils = processingEnv.getTypeUtils();
+        messager = processingEnv.getMessager();
+    }
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        Set<String> types = new LinkedHashSet<String>();
+        types.add(BACKGROUND_JOB);
+        return types;
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        TypeElement annotationType = elementUtils.getTypeElement(BACKGROUND_JOB);
+        if(annotationType == null || annotations.isEmpty()) {
+            return false;
+        }
+        //the classes that declare annotated methods, the inherited methods are included in their dispatchers
+        Set<TypeElement> targets = new LinkedHashSet<TypeElement>();
+        for(Element element : roundEnv.getElementsAnnotatedWith(annotationType)) {
+            if(element.getKind() == ElementKind.METHOD) {
+                targets.add((TypeElement) element.getEnclosingElement());
+            }
+        }
+        for(TypeElement target : targets) {
+            List<ExecutableElement> methods = findAnnotatedMethods(target, annotationType);
+            if(methods != null && !methods.isEmpty()) {
+                writeDispatcher(target, methods, annotationType);
+            }
+        }
+        return true;
+    }
+
+    //collects and validates the annotated methods of the class and of its superclasses, returns null on error
+    private List<ExecutableElement> findAnnotatedMethods(TypeElement target, TypeElement annotationType) {
+        if(target.getModifiers().contains(Modifier.PRIVATE)
+                || (target.getNestingKind() == NestingKind.MEMBER && !target.getModifiers().contains(Modifier.STATIC))
+                || target.getNestingKind() == NestingKind.LOCAL || target.getNestingKind() == NestingKind.ANONYMOUS) {
+            messager.printMessage(Diagnostic.Kind.ERROR, "Class " + target.getQualifiedName() +
+                    " must be a top level or a static nested class that is not private to declare @BackgroundJob methods", target);
+            return null;
+        }
+        List<ExecutableElement> methods = new ArrayList<ExecutableElement>();
+        Map<String, ExecutableElement> ids = new LinkedHashMap<String, ExecutableElement>();
+        boolean valid = true;
+        for(ExecutableElement method : ElementFilter.methodsIn(elementUtils.getAllMembers(target))) {
+            AnnotationMirror mirror = getAnnotationMirror(method, annotationType);
+            if(mirror == null) {
+                continue;
+            }
+            if(!method.getModifiers().contains(Modifier.PUBLIC)) {
+                //the runtime only takes the public methods into account, same as Class.getMethods()
+                messager.printMessage(Diagnostic.Kind.WARNING, "Method " + method.getSimpleName() +
+                        " is annotated with @BackgroundJob but it is not public, it will be ignored", method);
+                continue;
+            }
+            if(!hasValidParameters(method)) {
+                messager.printMessage(Diagnostic.Kind.ERROR, "Method " + method.getSimpleName() + " in class " +
+                        target.getQualifiedName() + " must have zero parameters, one parameter of type EasyAsyncCallbacks " +
+                        "or two parameters of types (EasyAsyncCallbacks, EasyAsyncResult)", method);
+                valid = false;
+                continue;
+            }
+            String id = (String) getValue(mirror, "id").getValue();
+            ExecutableElement similarMethod = ids.put(id, method);
+            if(similarMethod != null) {
+                messager.printMessage(Diagnostic.Kind.ERROR, "You must specify a unique id in the annotated method. In class " +
+                        target.getQualifiedName() + " method " + method.getSimpleName() + " has the same id with method " +
+                        similarMethod.getSimpleName(), method);
+                valid = false;
+                continue;
+            }
+            AnnotationValue executor = getValue(mirror, "executor");
+            AnnotationValue pool = getValue(mirror, "pool");
+            if(executor != null && pool != null && "NAMED".equals(((VariableElement) executor.getValue()).getSimpleName().toString())
+                    && ((String) pool.getValue()).length() == 0) {
+                messager.printMessage(Diagnostic.Kind.ERROR, "You have to specify a pool name in method " +
+                        method.getSimpleName() + " when the executor is of type NAMED", method);
+                valid = false;
+                continue;
+            }
+            AnnotationValue batchSize = getValue(mirror, "batchSize");
+            if(batchSize != null && (Integer) batchSize.getValue() > 0 && method.getParameters().size() != 2) {
+                messager.printMessage(Diagnostic.Kind.ERROR, "Method " + method.getSimpleName() + " must have two parameters " +
+                        "of types (EasyAsyncCallbacks, EasyAsyncResult) when it is batched", method);
+                valid = false;
+                continue;
+            }
+            methods.add(method);
+        }
+        return valid ? methods : null;
+    }
+
+    //whether the method has zero parameters, (EasyAsyncCallbacks) or (EasyAsyncCallbacks, EasyAsyncResult)
+    private boolean hasValidParameters(ExecutableElement method) {
+        List<? extends VariableElement> parameters = method.getParameters();
+        if(parameters.size() > 2) {
+            return false;
+        }
+        if(parameters.size() >= 1 && !isType(parameters.get(0).asType(), CALLBACKS)) {
+            return false;
+        }
+        return parameters.size() != 2 || isType(parameters.get(1).asType(), RESULT);
+    }
+
+    private boolean isType(TypeMirror type, String name) {
+        TypeMirror erasure = typeUtils.erasure(type);
+        return erasure.getKind() == TypeKind.DECLARED
+                && ((TypeElement) ((DeclaredType) erasure).asElement()).getQualifiedName().contentEquals(name);
+    }
+
+    private AnnotationMirror getAnnotationMirror(Element element, TypeElement annotationType) {
+        for(AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            if(typeUtils.isSameType(mirror.getAnnotationType(), annotationType.asType())) {
+                return mirror;
+            }
+        }
+        return null;
+    }
+
+    private AnnotationValue getValue(AnnotationMirror mirror, String name) {
+        for(Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry :
+                elementUtils.getElementValuesWithDefaults(mirror).entrySet()) {
+            if(entry.getKey().getSimpleName().contentEquals(name)) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    //writes the source of the dispatcher of the class
+    private void writeDispatcher(TypeElement target, List<ExecutableElement> methods, TypeElement annotationType) {
+        PackageElement targetPackage = elementUtils.getPackageOf(target);
+        String packageName = targetPackage.isUnnamed() ? "" : targetPackage.getQualifiedName().toString();
+        String binaryName = elementUtils.getBinaryName(target).toString();
+        String className = (packageName.length() == 0 ? binaryName : binaryName.substring(packageName.length() + 1)) + SUFFIX;
+        String targetType = typeUtils.erasure(target.asType()).toString();
+
+        StringBuilder source = new StringBuilder();
+        source.append("// Generated code from EasyAsyncCompiler. Do not modify!\n");
+        if(packageName.length() > 0) {
+            source.append("package ").append(packageName).append(";\n\n");
+        }
+        //the raw EasyAsyncResult of the dispatcher and the arrays of classes of the annotations must not warn in the builds of the users
+        source.append("@SuppressWarnings({\"unchecked\", \"rawtypes\"})\n");
+        source.append("public final class ").append(className).append(" implements ").append(DISPATCHER).append(" {\n\n");
+
+        //the annotations are recreated so that no reflection is needed to read them
+        source.append("    private static final ").append(BACKGROUND_JOB).append("[] JOBS = new ")
+                .append(BACKGROUND_JOB).append("[] {\n");
+        for(ExecutableElement method : methods) {
+            appendAnnotation(source, getAnnotationMirror(method, annotationType));
+        }
+        source.append("    };\n\n");
+
+        source.append("    private static final String[] METHOD_NAMES = new String[] {\n");
+        for(ExecutableElement method : methods) {
+            source.append("        ").append(elementUtils.getConstantExpression(method.getSimpleName().toString())).append(",\n");
+        }
+        source.append("    };\n\n");
+
+        source.append("    private static final int[] PARAMETER_COUNTS = new int[] {\n");
+        for(ExecutableElement method : methods) {
+            source.append("        ").append(method.getParameters().size()).append(",\n");
+        }
+        source.append("    };\n\n");
+
+        source.append("    @Override\n    public int getJobCount() {\n        return JOBS.length;\n    }\n\n");
+        source.append("    @Override\n    public ").append(BACKGROUND_JOB).append(" getJob(int index) {\n        return JOBS[index];\n    }\n\n");
+        source.append("    @Override\n    public String getMethodName(int index) {\n        return METHOD_NAMES[index];\n    }\n\n");
+        source.append("    @Override\n    public int getParameterCount(int index) {\n        return PARAMETER_COUNTS[index];\n    }\n\n");
+
+        source.append("    @Override\n");
+        source.append("    public void dispatch(Object target, int index, ").append(CALLBACKS).append(" callbacks, ")
+                .append(RESULT).append(" args) {\n");
+        source.append("        switch (index) {\n");
+        for(int i = 0; i < methods.size(); i++) {
+            ExecutableElement method = methods.get(i);
+            source.append("            case ").append(i).append(":\n                ");
+            //checked exceptions are wrapped the same way as the reflection wraps them
+            boolean throwsChecked = !method.getThrownTypes().isEmpty();
+            if(throwsChecked) {
+                source.append("try {\n                    ");
+            }
+            if(method.getModifiers().contains(Modifier.STATIC)) {
+                source.append(typeUtils.erasure(method.getEnclosingElement().asType()).toString());
+            } else {
+                source.append("((").append(targetType).append(") target)");
+            }
+            source.append('.').append(method.getSimpleName()).append('(');
+            int parameterCount = method.getParameters().size();
+            if(parameterCount >= 1) {
+                source.append("callbacks");
+            }
+            if(parameterCount == 2) {
+                source.append(", args");
+            }
+            source.append(");\n");
+            if(throwsChecked) {
+                source.append("                } catch (RuntimeException e) {\n                    throw e;\n");
+                source.append("                } catch (Error e) {\n                    throw e;\n");
+                source.append("                } catch (Throwable e) {\n                    throw new ").append(RUNTIME_EXCEPTION)
+                        .append("(\"Problem when invoking method ").append(method.getSimpleName()).append("\", e);\n");
+                source.append("                }\n");
+            }
+            source.append("                break;\n");
+        }
+        source.append("            default:\n");
+        source.append("                throw new IllegalArgumentException(\"No annotated method with index \" + index);\n");
+        source.append("        }\n    }\n}\n");
+
+        String sourceName = packageName.length() == 0 ? className : packageName + "." + className;
+        try {
+            JavaFileObject file = processingEnv.getFiler().createSourceFile(sourceName, target);
+            Writer writer = file.openWriter();
+            try {
+                writer.write(source.toString());
+            } finally {
+                writer.close();
+            }
+        } catch (IOException e) {
+            messager.printMessage(Diagnostic.Kind.ERROR, "Unable to write the dispatcher of class " +
+                    target.getQualifiedName() + ": " + e.getMessage(), target);
+        }
+    }
+
+    //appends an anonymous implementation of the annotation with all of its values, including the defaults
+    private void appendAnnotation(StringBuilder source, AnnotationMirror mirror) {
+        source.append("        new ").append(BACKGROUND_JOB).append("() {\n");
+        for(Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry :
+                elementUtils.getElementValuesWithDefaults(mirror).entrySet()) {
+            ExecutableElement element = entry.getKey();
+            source.append("            @Override\n            public ").append(element.getReturnType().toString())
+                    .append(' ').append(element.getSimpleName()).append("() {\n                return ");
+            appendValue(source, element.getReturnType(), entry.getValue());
+            source.append(";\n            }\n\n");
+        }
+        source.append("            @Override\n            public Class<? extends java.lang.annotation.Annotation> annotationType() {\n");
+        source.append("                return ").append(BACKGROUND_JOB).append(".class;\n            }\n");
+        source.append("        },\n");
+    }
+
+    //appends the value as a java expression of the given type
+    private void appendValue(StringBuilder source, TypeMirror type, AnnotationValue value) {
+        Object object = value.getValue();
+        if(type.getKind() == TypeKind.ARRAY) {
+            TypeMirror componentType = ((ArrayType) type).getComponentType();
+            source.append("new ").append(typeUtils.erasure(componentType).toString()).append("[] {");
+            List<?> values = (List<?>) object;
+            for(int i = 0; i < values.size(); i++) {
+                if(i > 0) {
+                    source.append(", ");
+                }
+                appendValue(source, componentType, (AnnotationValue) values.get(i));
+            }
+            source.append('}');
+        } else if(object instanceof VariableElement) {
+            VariableElement constant = (VariableElement) object;
+            source.append(typeUtils.erasure(constant.asType()).toString()).append('.').append(constant.getSimpleName());
+        } else if(object instanceof TypeMirror) {
+            source.append(typeUtils.erasure((TypeMirror) object).toString()).append(".class");
+        } else if(object instanceof AnnotationMirror) {
+            throw new IllegalStateException("Annotation values of type annotation are not supported");
+        } else {
+            source.append(elementUtils.getConstantExpression(object));
+        }
+    }
+}
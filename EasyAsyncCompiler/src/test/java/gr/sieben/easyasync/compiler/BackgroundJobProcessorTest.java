@@ -0,0 +1,80 @@
+package gr.sieben.easyasync.compiler;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The generated dispatchers compile without warnings, also for annotated methods that declare checked exceptions.
+ */
+public class BackgroundJobProcessorTest {
+
+    private static final String SOURCE =
+            "package demo;\n" +
+            "import gr.sieben.easyasync.*;\n" +
+            "public class Demo {\n" +
+            "    @BackgroundJob(id = \"checked\", maxAttempts = 2, retryOn = {java.io.IOException.class})\n" +
+            "    public void checked(EasyAsyncCallbacks callbacks) throws java.io.IOException {\n" +
+            "    }\n" +
+            "    @BackgroundJob(id = \"result\")\n" +
+            "    public void result(EasyAsyncCallbacks callbacks, EasyAsyncResult<String, String> args) {\n" +
+            "    }\n" +
+            "    @BackgroundJob(id = \"none\")\n" +
+            "    public static void none() throws Exception {\n" +
+            "    }\n" +
+            "}\n";
+
+    private static class Source extends SimpleJavaFileObject {
+        Source() {
+            super(URI.create("string:///demo/Demo.java"), Kind.SOURCE);
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            return SOURCE;
+        }
+    }
+
+    @Test
+    public void dispatcherCompilesWithoutWarnings() throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+        StandardJavaFileManager files = compiler.getStandardFileManager(diagnostics, Locale.ROOT, null);
+        File output = File.createTempFile("dispatcher", "");
+        assertTrue(output.delete() && output.mkdirs());
+        List<String> options = Arrays.asList("-Xlint:all", "-Xlint:-options", "-Werror", "-proc:only", "-s", output.getPath(),
+                "-classpath", System.getProperty("java.class.path"));
+        JavaCompiler.CompilationTask task = compiler.getTask(null, files, diagnostics, options, null,
+                Arrays.asList(new Source()));
+        task.setProcessors(Arrays.asList(new BackgroundJobProcessor()));
+        assertTrue(String.valueOf(diagnostics.getDiagnostics()), task.call());
+
+        //the generated source is compiled on its own with the same strict options
+        File generated = new File(output, "demo/Demo$$EasyAsyncDispatcher.java");
+        assertTrue(generated.isFile());
+        DiagnosticCollector<JavaFileObject> generatedDiagnostics = new DiagnosticCollector<JavaFileObject>();
+        List<String> strict = Arrays.asList("-Xlint:all", "-Xlint:-options", "-Werror", "-proc:none", "-d", output.getPath(),
+                "-classpath", System.getProperty("java.class.path"));
+        List<JavaFileObject> units = Arrays.asList(new Source(),
+                files.getJavaFileObjects(generated).iterator().next());
+        boolean compiled = compiler.getTask(null, files, generatedDiagnostics, strict, null, units).call();
+        for(Diagnostic<? extends JavaFileObject> diagnostic : generatedDiagnostics.getDiagnostics())
+            System.err.println(diagnostic);
+        assertTrue(String.valueOf(generatedDiagnostics.getDiagnostics()), compiled);
+    }
+}
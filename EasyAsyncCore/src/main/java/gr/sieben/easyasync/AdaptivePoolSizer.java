@@ -0,0 +1,152 @@
+package gr.sieben.easyasync;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sizes the pool of the background jobs that block on IO, see {@link gr.sieben.easyasync.ExecutorType#IO}. For every
+ * window of runs it measures the share of the time that the runs have been blocked, the wall time that they have not
+ * spent on the CPU, and sizes the pool to keep the cores busy without oversubscribing them: cores / (1 - blocked share).
+ * When the runs wait in the queue longer than the target latency the pool jumps to that size, otherwise it moves towards
+ * it one thread per window, always within the configured bounds.
+ * <p>
+ * The CPU time of the threads is read from the management beans of the JDK. Where they are not available, for example
+ * on android, the pool is sized by the queue latency only: it grows while the runs wait and shrinks while they do not.
+ * </p>
+ */
+class AdaptivePoolSizer {
+
+    private static final int WINDOW_RUNS = 32;
+    private static final long WINDOW_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+    private static final long TARGET_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+    private static final double MAX_BLOCKED_SHARE = 0.99;
+    private static final double SATURATED_SHARE = 0.9; //the share of the cores that the pool keeps busy
+
+    //the thread management bean of the JDK and its method, null where they are not available
+    private static final Object THREAD_BEAN;
+    private static final Method CURRENT_THREAD_CPU_TIME;
+
+    static {
+        Object bean = null;
+        Method cpuTime = null;
+        try {
+            bean = Class.forName("java.lang.management.ManagementFactory").getMethod("getThreadMXBean").invoke(null);
+            Class<?> beanClass = Class.forName("java.lang.management.ThreadMXBean");
+            if((Boolean) beanClass.getMethod("isCurrentThreadCpuTimeSupported").invoke(bean))
+                cpuTime = beanClass.getMethod("getCurrentThreadCpuTime");
+        } catch (Exception e) {
+            cpuTime = null;
+        } catch (LinkageError e) {
+            cpuTime = null;
+        }
+        THREAD_BEAN = cpuTime == null ? null : bean;
+        CURRENT_THREAD_CPU_TIME = cpuTime;
+    }
+
+    /**
+     * The CPU time of the current thread
+     * @return The time in nanoseconds or -1 if it can not be measured
+     */
+    static long currentThreadCpuTime() {
+        if(CURRENT_THREAD_CPU_TIME == null)
+            return -1;
+        try {
+            return (Long) CURRENT_THREAD_CPU_TIME.invoke(THREAD_BEAN);
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    private final PriorityExecutor pool;
+    private final int cores;
+
+    //guarded by this
+    private int minThreads;
+    private int maxThreads;
+    private int runs;
+    private long waitNanos;
+    private long wallNanos;
+    private long cpuNanos;
+    private long measuredWallNanos; //the wall time of the runs with a known CPU time
+    private long windowStart; //zero before the first run
+
+    AdaptivePoolSizer(PriorityExecutor pool, int cores, int minThreads, int maxThreads) {
+        this.pool = pool;
+        this.cores = cores;
+        setBounds(minThreads, maxThreads);
+    }
+
+    /**
+     * Sets the bounds of the size of the pool and moves the size into them
+     * @param minThreads The minimum size
+     * @param maxThreads The maximum size
+     */
+    void setBounds(int minThreads, int maxThreads) {
+        int size;
+        synchronized (this) {
+            this.minThreads = Math.max(1, minThreads);
+            this.maxThreads = Math.max(this.minThreads, maxThreads);
+            size = clamp(pool.getMaxThreads());
+        }
+        pool.setMaxThreads(size);
+    }
+
+    /**
+     * Records a run of the pool, in its thread
+     * @param waitNanos The time that it has waited in the queue
+     * @param wallNanos The time that it has run
+     * @param cpuNanos The CPU time that it has used or -1 if it is not known
+     */
+    void onRun(long waitNanos, long wallNanos, long cpuNanos) {
+        int size;
+        synchronized (this) {
+            runs++;
+            this.waitNanos += waitNanos;
+            this.wallNanos += wallNanos;
+            if(cpuNanos >= 0) {
+                this.cpuNanos += cpuNanos;
+                measuredWallNanos += wallNanos;
+            }
+            long now = System.nanoTime();
+            if(windowStart == 0)
+                windowStart = now - wallNanos; //an idle pool is not measured
+            if(runs < WINDOW_RUNS && now - windowStart < WINDOW_NANOS)
+                return;
+            size = resizeLocked(now - windowStart);
+            runs = 0;
+            this.waitNanos = 0;
+            this.wallNanos = 0;
+            this.cpuNanos = 0;
+            measuredWallNanos = 0;
+            windowStart = now;
+        }
+        if(size != pool.getMaxThreads())
+            pool.setMaxThreads(size);
+    }
+
+    //the size for the window that has just ended
+    private int resizeLocked(long windowNanos) {
+        int current = pool.getMaxThreads();
+        boolean backedUp = waitNanos / runs > TARGET_WAIT_NANOS;
+        if(measuredWallNanos == 0) {
+            //without the CPU time only the queue tells, it grows while the runs wait and shrinks while they do not
+            return clamp(backedUp ? current + Math.max(1, current / 4) : current - 1);
+        }
+        double blockedShare = Math.max(0, Math.min(MAX_BLOCKED_SHARE, 1 - (double) cpuNanos / measuredWallNanos));
+        //more threads than the cores can keep busy only oversubscribe them, however long the queue is
+        int target = (int) Math.ceil(cores / (1 - blockedShare));
+        //a run that waits for a core looks blocked too, so a pool that already keeps the cores busy does not grow
+        double cpuShare = (double) cpuNanos * wallNanos / measuredWallNanos / ((double) windowNanos * cores);
+        if(cpuShare >= SATURATED_SHARE)
+            target = Math.min(target, Math.max(cores, current - 1));
+        else if(target > current && !backedUp)
+            target = current + 1; //nobody waits, so there is no hurry
+        else if(target < current)
+            target = current - 1; //shrink gently, the blocked share of a single window is noisy
+        return clamp(target);
+    }
+
+    private int clamp(int size) {
+        return Math.max(minThreads, Math.min(maxThreads, size));
+    }
+}
@@ -0,0 +1,144 @@
+package gr.sieben.easyasync;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * BackgroundJob Annotation.
+ * Use in methods only. Specify an <b>id</b> for the BackgoundJob.
+ * Optionally specify the <b>executor</b> that the BackgroundJob runs on, see {@link gr.sieben.easyasync.ExecutorType},
+ * and its <b>priority</b> in the queue of the executor. Failed attempts can be retried with a backoff, see {@link #maxAttempts()}.
+ * See example of use in {@link gr.sieben.easyasync.EasyAsyncCore} class or in the official documentation
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface BackgroundJob {
+    public static final int PRIORITY_LOW = 1;
+    public static final int PRIORITY_NORMAL = 5;
+    public static final int PRIORITY_HIGH = 10;
+
+    public String id();
+
+    /**
+     * The executor that the background job is executed on. Default is {@link gr.sieben.easyasync.ExecutorType#SERIAL}
+     */
+    public ExecutorType executor() default ExecutorType.SERIAL;
+
+    /**
+     * The name of the registered executor. Used only when {@link #executor()} is {@link gr.sieben.easyasync.ExecutorType#NAMED}
+     */
+    public String pool() default "";
+
+    /**
+     * The name of the group of the background job. The runs of the background jobs of a group share the maximum concurrency
+     * and the bounded queue that are set with {@linkplain gr.sieben.easyasync.EasyAsyncCore#setGroupLimit(String, int, int, OverflowPolicy)},
+     * whatever their executor. A group without limits does not limit its background jobs. Default is no group.
+     */
+    public String group() default "";
+
+    /**
+     * The minimum interval in milliseconds between two {@link gr.sieben.easyasync.EasyAsyncCallbacks#ON_PROGRESS} callbacks.
+     * Progress that is published in between is coalesced and only the latest value is delivered.
+     */
+    public long progressInterval() default 100;
+
+    /**
+     * The maximum number of items of {@linkplain gr.sieben.easyasync.EasyAsyncResult#emit(Object)} that wait for the main
+     * thread. When it is reached the background thread waits until the main thread has taken the items with
+     * {@link gr.sieben.easyasync.EasyAsyncCallbacks#ON_ITEM}.
+     */
+    public int itemBuffer() default 64;
+
+    /**
+     * The time to live in milliseconds of the cached result of the background job. When it has passed
+     * {@linkplain gr.sieben.easyasync.EasyAsyncCore#start(String)} executes the background job again.
+     * A negative value never expires, which is the default, and zero does not reuse the result.
+     */
+    public long cacheTtl() default -1;
+
+    /**
+     * The priority of the background job in the queue of its executor, higher values run first.
+     * It can be overridden per call with {@linkplain gr.sieben.easyasync.EasyAsyncCore#start(String, Object, JobListener, int)}.
+     * Applies to the {@link gr.sieben.easyasync.ExecutorType#SERIAL} and {@link gr.sieben.easyasync.ExecutorType#PARALLEL} executors.
+     * Default is {@link #PRIORITY_NORMAL}
+     */
+    public int priority() default PRIORITY_NORMAL;
+
+    /**
+     * The ids of the background jobs that have to finish their background phase before this one is executed.
+     * Starting this background job starts the ones it depends on that are not already running or cached, and jobs
+     * that do not depend on each other run in parallel when their executors allow it. Their results are available
+     * with {@linkplain gr.sieben.easyasync.EasyAsyncResult#getDependencyResult(String)}. If one of them is cancelled
+     * this background job is cancelled too. Cycles are rejected when the annotations are registered.
+     */
+    public String[] dependsOn() default {};
+
+    /**
+     * The maximum number of keys that are executed together in one run. Zero, the default, does not batch.
+     * The requests that are started with a key, {@linkplain gr.sieben.easyasync.EasyAsyncCore#start(String, Object, JobListener)},
+     * are collected for {@link #batchLinger()} milliseconds or until the batch is full. The run receives the
+     * {@link java.util.List} of the keys as the parameter and must set a {@link java.util.Map} from each key to its result
+     * as the result. Each key then receives its own callback with the key as the parameter and its entry as the result.
+     */
+    public int batchSize() default 0;
+
+    /**
+     * The time in milliseconds that the requests of a batched background job are collected before the batch runs,
+     * see {@link #batchSize()}
+     */
+    public long batchLinger() default 10;
+
+    /**
+     * The time in milliseconds that the background phase may take. When it has passed the run is cancelled, its
+     * {@linkplain gr.sieben.easyasync.EasyAsyncResult#getCancellationToken()} is cancelled, its thread is interrupted and
+     * {@link gr.sieben.easyasync.EasyAsyncCallbacks#TIMED_OUT} is invoked. Zero, the default, never times out.
+     */
+    public long timeout() default 0;
+
+    /**
+     * The maximum number of attempts of the background phase when it throws an exception. One, the default, never retries.
+     * The waits between the attempts are scheduled on the main thread instead of sleeping on a thread of the executor and each
+     * retry is submitted to the queue of the executor again with the same arguments. A retry is not made when the run has
+     * been cancelled in the meantime, and {@link gr.sieben.easyasync.EasyAsyncCallbacks#BEFORE_EXECUTE} is invoked only once.
+     * The {@link #timeout()} applies to each attempt.
+     */
+    public int maxAttempts() default 1;
+
+    /**
+     * The delay in milliseconds before the first retry, see {@link #maxAttempts()}. It is doubled for each retry that follows.
+     */
+    public long retryDelay() default 100;
+
+    /**
+     * The maximum delay in milliseconds before a retry, see {@link #retryDelay()}
+     */
+    public long retryMaxDelay() default 10000;
+
+    /**
+     * The part of the delay before a retry, from 0 to 1, that is randomly taken off, so that the runs that have failed
+     * together do not retry together. Zero retries exactly after the delay.
+     */
+    public double retryJitter() default 0.5;
+
+    /**
+     * The types of the exceptions that are retried. An exception is retried when it or one of its causes is an instance
+     * of them. Empty, the default, retries every exception.
+     */
+    public Class<? extends Throwable>[] retryOn() default {};
+
+    /**
+     * Whether the result of the runs without a key is persisted in the {@link gr.sieben.easyasync.ResultStore} of the library,
+     * see {@linkplain gr.sieben.easyasync.EasyAsyncCore#setResultStore(ResultStore)}. In a new process
+     * {@linkplain gr.sieben.easyasync.EasyAsyncCore#start(String)} delivers the persisted result with
+     * {@link gr.sieben.easyasync.EasyAsyncCallbacks#AFTER_EXECUTE} right away, and if its {@link #cacheTtl()} has passed
+     * the background job is executed again and {@link gr.sieben.easyasync.EasyAsyncCallbacks#AFTER_EXECUTE} is invoked
+     * once more with the fresh result. A start that comes before the store has read its file executes the background job,
+     * and the persisted result is delivered when the read finishes, if the run has not finished first. The result must be
+     * supported by the serializer of the store, and it is converted to bytes in the background thread right after
+     * {@link gr.sieben.easyasync.EasyAsyncCallbacks#ON_BACKGROUND}, so it must not be changed by another thread while
+     * it is converted, treat it as immutable. Default is false.
+     */
+    public boolean persist() default false;
+}
@@ -0,0 +1,104 @@
+package gr.sieben.easyasync;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Cooperative cancellation of a run of a background job, see {@linkplain gr.sieben.easyasync.EasyAsyncResult#getCancellationToken()}.
+ * The token is cancelled when the run is cancelled with {@linkplain gr.sieben.easyasync.EasyAsyncCore#cancel(String)},
+ * when a background job that it depends on is cancelled or when its {@linkplain gr.sieben.easyasync.BackgroundJob#timeout()}
+ * has passed. The thread of the background phase is interrupted too, but blocking calls such as socket reads
+ * ignore the interruption, so long running jobs should check the token or register a hook that closes their resources.
+ * <pre><code>
+ * CancellationToken token = args.getCancellationToken();
+ * token.register(new Runnable() {
+ *     public void run() {
+ *         connection.disconnect();
+ *     }
+ * });
+ * while(hasMore()) {
+ *     token.throwIfCancelled();
+ *     readNext();
+ * }
+ * </code></pre>
+ */
+public final class CancellationToken {
+
+    private volatile boolean cancelled;
+    private volatile boolean timedOut;
+    private List<Runnable> hooks; //guarded by this, null after cancellation
+
+    /**
+     * Whether the run has been cancelled. It is cheap to call it in a tight loop.
+     * @return True if cancelled, false otherwise
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Whether the run has been cancelled because its timeout has passed
+     * @return True if timed out, false otherwise
+     */
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+
+    /**
+     * Throws a {@link java.util.concurrent.CancellationException} if the run has been cancelled. When it is thrown out of
+     * {@link gr.sieben.easyasync.EasyAsyncCallbacks#ON_BACKGROUND} the run ends as cancelled instead of failing.
+     */
+    public void throwIfCancelled() {
+        if(cancelled)
+            throw new CancellationException("The background job has been cancelled");
+    }
+
+    /**
+     * Registers a hook that is invoked once when the run is cancelled, in the thread that cancels it, usually the
+     * <u>main</u> thread. If the run has already been cancelled the hook is invoked immediately in the calling thread.
+     * Hooks must return quickly, for example by closing a connection.
+     * @param hook The hook to invoke
+     */
+    public void register(Runnable hook) {
+        synchronized (this) {
+            if(!cancelled) {
+                if(hooks == null)
+                    hooks = new ArrayList<Runnable>(1);
+                hooks.add(hook);
+                return;
+            }
+        }
+        hook.run();
+    }
+
+    /**
+     * Unregisters a hook that is no longer needed, for example because the connection has been closed normally
+     * @param hook The hook that has been registered
+     */
+    public synchronized void unregister(Runnable hook) {
+        if(hooks != null)
+            hooks.remove(hook);
+    }
+
+    /**
+     * Cancels the token and invokes the registered hooks
+     * @param timedOut True if the run is cancelled because its timeout has passed
+     */
+    void cancel(boolean timedOut) {
+        List<Runnable> toInvoke;
+        synchronized (this) {
+            if(cancelled)
+                return;
+            this.timedOut = timedOut;
+            cancelled = true;
+            toInvoke = hooks;
+            hooks = null;
+        }
+        if(toInvoke != null) {
+            for(int i = 0; i < toInvoke.size(); i++) {
+                toInvoke.get(i).run();
+            }
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package gr.sieben.easyasync;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import gr.sieben.easyasync.exceptions.EasyAsyncRuntimeException;
+
+/**
+ * Immutable description of the {@link gr.sieben.easyasync.BackgroundJob} annotated methods of a class.
+ * The annotation scan and the validation of the methods are made once when the descriptor is created,
+ * so a configuration change only rebinds the new target to the existing descriptors.
+ */
+final class ClassDescriptor {
+
+    /**
+     * Descriptor of the classes without annotated methods
+     */
+    static final ClassDescriptor EMPTY = new ClassDescriptor(new JobDescriptor[0]);
+
+    final JobDescriptor[] jobs;
+
+    private ClassDescriptor(JobDescriptor[] jobs) {
+        this.jobs = jobs;
+    }
+
+    /**
+     * Scans the target class for annotated methods. The generated dispatcher is preferred, reflection is used
+     * when the annotation processor is not in use.
+     * @param targetClass The class to scan
+     * @return The descriptor of the class
+     */
+    static ClassDescriptor create(Class<?> targetClass) {
+        //if we reach an android component or a java component we stop searching
+        if(isFrameworkClass(targetClass)) {
+            return EMPTY;
+        }
+        List<JobDescriptor> jobs = new ArrayList<JobDescriptor>();
+        EasyAsyncDispatcher dispatcher = findDispatcher(targetClass);
+        if(dispatcher != null) {
+            for(int i = 0; i < dispatcher.getJobCount(); i++) {
+                String methodName = dispatcher.getMethodName(i);
+                jobs.add(createJob(targetClass, dispatcher.getJob(i), methodName, null, dispatcher, i,
+                        getParameterMethodType(targetClass, methodName, dispatcher.getParameterCount(i))));
+            }
+        } else {
+            for(Method method : targetClass.getMethods()) {
+                if(method.isAnnotationPresent(BackgroundJob.class)) {
+                    jobs.add(createJob(targetClass, method.getAnnotation(BackgroundJob.class), method.getName(), method,
+                            null, -1, getParameterMethodType(targetClass, method)));
+                }
+            }
+        }
+        if(jobs.isEmpty()) {
+            return EMPTY;
+        }
+        //ids must be unique inside the class, the uniqueness among the targets is checked when binding
+        Map<String, JobDescriptor> ids = new HashMap<String, JobDescriptor>();
+        for(JobDescriptor job : jobs) {
+            JobDescriptor similarJob = ids.put(job.id, job);
+            if(similarJob != null)
+                throw new EasyAsyncRuntimeException("You must specify a unique id in the annotated method. In class " +
+                        targetClass.getName() + " method " + job.methodName + " has the same id with method " +
+                        similarJob.methodName + " in class " + targetClass.getName());
+        }
+        return new ClassDescriptor(jobs.toArray(new JobDescriptor[jobs.size()]));
+    }
+
+    //validates the annotation and creates the descriptor of the job
+    private static JobDescriptor createJob(Class<?> targetClass, BackgroundJob annotation, String methodName, Method method,
+                                           EasyAsyncDispatcher dispatcher, int dispatchIndex, AnnotatedMethodType methodType) {
+        if(annotation.id() == null)  //annotation needs a unique id to work, throw an exception otherwise
+            throw new EasyAsyncRuntimeException("You have to specify an id in class "+
+                    targetClass.getName()+" and in annotated method "+methodName+
+                    ". See documentation for more details");
+        if(annotation.executor() == ExecutorType.NAMED && annotation.pool().length() == 0)
+            throw new EasyAsyncRuntimeException("You have to specify a pool name in class "+
+                    targetClass.getName()+" and in annotated method "+methodName+
+                    " when the executor is of type NAMED. See documentation for more details");
+        if(annotation.batchSize() > 0 && methodType != AnnotatedMethodType.TYPE_RESULT)
+            throw new EasyAsyncRuntimeException("Method "+methodName+" in class "+targetClass.getName()+
+                    " must have two parameters of types (EasyAsyncCallbacks, EasyAsyncResult) when it is batched. " +
+                    "See documentation for more details");
+        return new JobDescriptor(annotation, methodName, method, dispatcher, dispatchIndex, methodType);
+    }
+
+    //whether the class is an android or a java component
+    private static boolean isFrameworkClass(Class<?> targetClass) {
+        return targetClass.getName().startsWith("android.") || targetClass.getName().startsWith("java.");
+    }
+
+    /*
+    finds the generated dispatcher of the class or of its closest superclass. The dispatcher of a superclass does not
+    know the annotated methods of its subclasses, so if a class in between declares some without a dispatcher of its own,
+    for example because it has been compiled without the annotation processor, reflection is used instead
+     */
+    private static EasyAsyncDispatcher findDispatcher(Class<?> targetClass) {
+        for(Class<?> current = targetClass; current != null && !isFrameworkClass(current);
+            current = current.getSuperclass()) {
+            try {
+                Class<?> dispatcherClass = Class.forName(current.getName() + EasyAsyncDispatcher.SUFFIX,
+                        true, current.getClassLoader());
+                return (EasyAsyncDispatcher) dispatcherClass.newInstance();
+            } catch (ClassNotFoundException e) {
+                //no generated dispatcher for this class, continue with the superclass unless it declares annotated methods
+                if(declaresJobs(current))
+                    return null;
+            } catch (Exception e) {
+                throw new EasyAsyncRuntimeException("Problem when creating the generated dispatcher of class "+
+                        current.getName(), e);
+            }
+        }
+        return null;
+    }
+
+    //whether the class itself declares annotated methods
+    private static boolean declaresJobs(Class<?> declaringClass) {
+        for(Method method : declaringClass.getDeclaredMethods()) {
+            if(method.isAnnotationPresent(BackgroundJob.class))
+                return true;
+        }
+        return false;
+    }
+
+    //returns the Method type according to the AnnotatedMethodType for easier use
+    private static AnnotatedMethodType getParameterMethodType(Class<?> targetClass, Method method) {
+        Class[] types = method.getParameterTypes();
+        AnnotatedMethodType methodType = null;
+        if(types == null || types.length == 0)
+            methodType = AnnotatedMethodType.NO_PARAM;
+        else {
+            int typesSize = types.length;
+            switch (typesSize) {
+                case 1:
+                    if (types[0] == EasyAsyncCallbacks.class)
+                        methodType = AnnotatedMethodType.TYPE_CALLBACKS;
+                    else
+                        throw new EasyAsyncRuntimeException("Method " + method.getName() + " in class " + targetClass.getName() +
+                                " has one parameter and it is not of type AnnotatedMethodType. " +
+                                "See documentation for more details");
+                    break;
+                case 2:
+                    if(types[0] == EasyAsyncCallbacks.class && types[1] == EasyAsyncResult.class)
+                        methodType = AnnotatedMethodType.TYPE_RESULT;
+                    else
+                        throw new EasyAsyncRuntimeException("Method "+method.getName()+" in class "+targetClass.getName()+
+                                " has two parameters and they are not of type (AnnotatedMethodType, EasyAsyncResult). " +
+                                "See documentation for more details");
+                    break;
+            }
+        }
+
+        return methodType;
+    }
+
+    //returns the Method type of a method of the generated dispatcher, the signature is validated at compile time
+    private static AnnotatedMethodType getParameterMethodType(Class<?> targetClass, String methodName, int parameterCount) {
+        switch (parameterCount) {
+            case 0:
+                return AnnotatedMethodType.NO_PARAM;
+            case 1:
+                return AnnotatedMethodType.TYPE_CALLBACKS;
+            case 2:
+                return AnnotatedMethodType.TYPE_RESULT;
+            default:
+                throw new EasyAsyncRuntimeException("Method "+methodName+" in class "+targetClass.getName()+
+                        " has more than two parameters. See documentation for more details");
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package gr.sieben.easyasync;
+
+/**
+ * The callbacks that can be used in the annotated method as a parameter in order to determine the states of the
+ * background job that is invoked.
+ * <li><b>BEFORE_EXECUTE</b> Before the asynchronous execution. This is currently in the <u>main</u> thread.</li>
+ * <li><b>ON_BACKGROUND</b> This is invoked in the background. This is currently in the <u>background</u> thread.
+ * Do not use any ui changes without the proper implementation.</li>
+ * <li><b>ON_PROGRESS</b> This is invoked after {@linkplain gr.sieben.easyasync.EasyAsyncResult#publishProgress(Object)} is called in the
+ * background. This is currently in the <u>main</u> thread. The progress is coalesced, it is delivered at most once in every
+ * {@linkplain gr.sieben.easyasync.BackgroundJob#progressInterval()} with the latest value only.</li>
+ * <li><b>ON_ITEM</b> This is invoked after {@linkplain gr.sieben.easyasync.EasyAsyncResult#emit(Object)} is called in the
+ * background. This is currently in the <u>main</u> thread. The items are delivered in batches with
+ * {@linkplain gr.sieben.easyasync.EasyAsyncResult#getItems()}, the remaining ones before {@linkplain #AFTER_EXECUTE}.</li>
+ * <li><b>AFTER_EXECUTE</b> After the asynchronous execution. This is currently in the <u>main</u> thread</li>
+ * <li><b>CANCELLED</b> This is invoked when {@linkplain gr.sieben.easyasync.EasyAsyncCore#cancel(String)} is invoked. Cancels the
+ *  background job. {@linkplain #AFTER_EXECUTE} is never invoked. It is also invoked when {@linkplain #ON_BACKGROUND} has thrown
+ *  an exception, which is then returned by {@linkplain gr.sieben.easyasync.EasyAsyncResult#getError()}.</li>
+ * <li><b>TIMED_OUT</b> This is invoked instead of {@linkplain #AFTER_EXECUTE} when the background phase takes longer than
+ * {@linkplain gr.sieben.easyasync.BackgroundJob#timeout()}. This is currently in the <u>main</u> thread and it is invoked without
+ * waiting for the background phase to return.</li>
+ */
+public enum EasyAsyncCallbacks {
+    BEFORE_EXECUTE, ON_BACKGROUND, ON_PROGRESS, ON_ITEM, AFTER_EXECUTE, CANCELLED, TIMED_OUT;
+
+    @Override
+    public String toString() {
+        if(this == BEFORE_EXECUTE)
+            return "BEFORE_EXECUTE";
+        if (this == ON_BACKGROUND)
+            return "ON_BACKGROUND";
+        if (this == ON_PROGRESS)
+            return "ON_PROGRESS";
+        if (this == ON_ITEM)
+            return "ON_ITEM";
+        if (this == AFTER_EXECUTE)
+            return "AFTER_EXECUTE";
+        if(this == CANCELLED)
+            return "CANCELLED";
+        if(this == TIMED_OUT)
+            return "TIMED_OUT";
+        return "";
+    }
+}
@@ -0,0 +1,1004 @@
+package gr.sieben.easyasync;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+
+import gr.sieben.easyasync.exceptions.EasyAsyncRuntimeException;
+
+/**
+ * The platform independent core of the EasyAsync library: the registry of the {@link gr.sieben.easyasync.BackgroundJob}
+ * annotated methods, the scheduling of their runs and the dispatch of the callbacks. The callbacks that are not
+ * {@link gr.sieben.easyasync.EasyAsyncCallbacks#ON_BACKGROUND} are invoked in the thread of a
+ * {@link gr.sieben.easyasync.MainThreadExecutor} and the library must be called from that thread.
+ * <p>
+ * On android use {@code EasyAsync}, which runs the core on the main looper and registers the Activity through a retained
+ * fragment. On the JVM create the core with an {@link gr.sieben.easyasync.EventLoop} and register the targets yourself:
+ * <pre><code>
+ * final EventLoop mainThread = new EventLoop("main");
+ * final EasyAsyncCore core = new EasyAsyncCore(mainThread);
+ * mainThread.execute(new Runnable() {
+ *     public void run() {
+ *         core.register(service);
+ *         core.start("demoid");
+ *     }
+ * });
+ * </code></pre>
+ * </p>
+ * <p>
+ * The core is one registry of unique ids. When several hosts are alive at the same time, each of them can have a registry
+ * of its own that shares the executors of the core, see {@linkplain #newScope()}.
+ * </p>
+ */
+public class EasyAsyncCore {
+
+    /**
+     * Creates the core
+     * @param mainThread The main thread that the callbacks are invoked in
+     */
+    public EasyAsyncCore(MainThreadExecutor mainThread) {
+        if(mainThread == null)
+            throw new EasyAsyncRuntimeException("You have to specify the main thread of the platform");
+        mRoot = this;
+        mMainThread = mainThread;
+        mExecutors = new ConcurrentHashMap<String, Executor>();
+        mGroups = new ConcurrentHashMap<String, JobGroup>();
+        mQueueWaitStats = new QueueWaitStats();
+        mSerialExecutor = new PriorityExecutor("EasyAsync serial", 1, DEFAULT_AGING_INTERVAL, mQueueWaitStats);
+        mParallelExecutor = new PriorityExecutor("EasyAsync", CPU_COUNT, DEFAULT_AGING_INTERVAL, mQueueWaitStats);
+        mIoExecutor = new PriorityExecutor("EasyAsync io", 2 * CPU_COUNT, DEFAULT_AGING_INTERVAL, mQueueWaitStats);
+        mIoSizer = new AdaptivePoolSizer(mIoExecutor, CPU_COUNT, CPU_COUNT, DEFAULT_IO_MAX_THREADS);
+        mIoExecutor.setSizer(mIoSizer);
+        mVirtualExecutor = VirtualThreadExecutor.create("EasyAsync virtual");
+        mFrameCoalescer = new FrameCoalescer(mainThread, DEFAULT_FRAME_BUDGET);
+        mClassDescriptors = new WeakHashMap<Class<?>, SoftReference<ClassDescriptor>>();
+        mScopes = new CopyOnWriteArrayList<EasyAsyncCore>();
+        mResultCache = new ResultCache(mainThread);
+    }
+
+    //creates a scope that shares everything but the registry, the runs and the cached results with the root
+    private EasyAsyncCore(EasyAsyncCore root) {
+        mRoot = root;
+        mMainThread = root.mMainThread;
+        mExecutors = root.mExecutors;
+        mGroups = root.mGroups;
+        mQueueWaitStats = root.mQueueWaitStats;
+        mSerialExecutor = root.mSerialExecutor;
+        mParallelExecutor = root.mParallelExecutor;
+        mIoExecutor = root.mIoExecutor;
+        mIoSizer = root.mIoSizer;
+        mVirtualExecutor = root.mVirtualExecutor;
+        mFrameCoalescer = root.mFrameCoalescer;
+        mClassDescriptors = root.mClassDescriptors;
+        mScopes = null;
+        mResultCache = new ResultCache(mMainThread);
+        mResultCache.setMetricsListener(root.mMetricsListener);
+    }
+
+    /**
+     * The core that has created this scope, or this core if it is not a scope. The settings are kept in the root.
+     */
+    private final EasyAsyncCore mRoot;
+
+    /**
+     * The scopes of the root core that have not been destroyed, null in a scope
+     */
+    private final CopyOnWriteArrayList<EasyAsyncCore> mScopes;
+
+    /**
+     * ConcurrentHashMap to avoid deadlocks and crashes when simultaneous access to the object.
+     */
+    ConcurrentHashMap<String, ObjectHolder> mAnnotatedMethods = new ConcurrentHashMap<String, ObjectHolder>();
+
+    /**
+     * Lock that serializes only the changes of the registry. The dispatch of the annotated methods never holds it.
+     */
+    private final Object mRegistryLock = new Object();
+
+    /**
+     * Queue of the weakly held targets that have been collected, see {@linkplain #setWeakTargets(boolean)}
+     */
+    private final ReferenceQueue<Object> mCollectedTargets = new ReferenceQueue<Object>();
+
+    /**
+     * Executors that are registered by name and are used by the background jobs of type {@link gr.sieben.easyasync.ExecutorType#NAMED}
+     */
+    private final ConcurrentHashMap<String, Executor> mExecutors;
+
+    /**
+     * The groups of background jobs that have limits, by name, see {@linkplain #setGroupLimit(String, int, int, OverflowPolicy)}
+     */
+    private final ConcurrentHashMap<String, JobGroup> mGroups;
+
+    /**
+     * Priority of a call that uses the priority of the annotation
+     */
+    static final int DEFAULT_PRIORITY = Integer.MIN_VALUE;
+
+    //shared serial executor and parallel pool sized to the number of the available cores, in order of priority
+    private static final int CPU_COUNT = Runtime.getRuntime().availableProcessors();
+    private static final long DEFAULT_AGING_INTERVAL = 200;
+    private final QueueWaitStats mQueueWaitStats;
+    private final PriorityExecutor mSerialExecutor;
+    private final PriorityExecutor mParallelExecutor;
+    //elastic pool of the jobs that block on IO, sized by the measured blocking time and queue latency
+    private static final int DEFAULT_IO_MAX_THREADS = 64;
+    private final PriorityExecutor mIoExecutor;
+    private final AdaptivePoolSizer mIoSizer;
+    //a virtual thread per run when the JDK supports them, null otherwise
+    private final Executor mVirtualExecutor;
+
+    /**
+     * Cache of the results of the completed background jobs
+     */
+    private final ResultCache mResultCache;
+
+    /**
+     * The main thread of the platform
+     */
+    private final MainThreadExecutor mMainThread;
+
+    /**
+     * Coalesces the last callbacks of the runs when the frame coalescing is enabled
+     */
+    private final FrameCoalescer mFrameCoalescer;
+    private volatile boolean mFrameCoalescing;
+    private static final long DEFAULT_FRAME_BUDGET = 4;
+
+    /**
+     * The lifecycle of the runs of the background jobs
+     */
+    private final JobController mController = new JobController(this);
+
+    /**
+     * Listener of the metrics of the background jobs, null when the metrics are not recorded
+     */
+    private volatile JobMetricsListener mMetricsListener;
+
+    /**
+     * The persistent tier of the results, null when the results are kept only in memory
+     */
+    private volatile ResultStore mResultStore;
+
+    /**
+     * Whether the registered targets are weakly held, kept in the root
+     */
+    private volatile boolean mWeakTargets;
+
+    /*
+    The lazy registration, all of them are accessed only in the main thread. While the registration is deferred
+    the starts are buffered until the target is registered.
+     */
+    private boolean mRegistrationDeferred;
+    private Object mDeferredTarget;
+    private final List<DeferredStart> mDeferredStarts = new ArrayList<DeferredStart>();
+    private final Runnable mDeferredRegistration = new Runnable() {
+        @Override
+        public void run() {
+            completeDeferredRegistration();
+        }
+    };
+
+    //a start that is made before the target of a lazy registration is known
+    private static final class DeferredStart {
+        final String id;
+        final Object key;
+        final JobListener listener;
+        final int priority;
+        final boolean isForced;
+
+        DeferredStart(String id, Object key, JobListener listener, int priority, boolean isForced) {
+            this.id = id;
+            this.key = key;
+            this.listener = listener;
+            this.priority = priority;
+            this.isForced = isForced;
+        }
+    }
+
+    /**
+     * Start an asynchronous background job for the current id. The id is defined in the @BackgroundJob annotation
+     * @param id The asynchronous method id to start
+     */
+    public void start(String id) {
+        startAsync(id, null, null, DEFAULT_PRIORITY, false);
+    }
+
+    /**
+     * Start an asynchronous background job for the current id and a caller supplied key, for example the parameter of the job.
+     * The key is set as the parameter of the {@link gr.sieben.easyasync.EasyAsyncResult} of the run.
+     * If a run with an equal key is already in flight the request is attached to it instead of starting a new one,
+     * and a fresh cached result of an equal key is reused.
+     * @param id The asynchronous method id to start
+     * @param key The key of the run, runs are deduplicated by id and key
+     */
+    public void start(String id, Object key) {
+        startAsync(id, key, null, DEFAULT_PRIORITY, false);
+    }
+
+    /**
+     * Start an asynchronous background job for the current id and a caller supplied key, see {@linkplain #start(String, Object)}.
+     * The listener is invoked with the result of the run that the request is attached to, the same result for all
+     * the requests of the same run.
+     * @param id The asynchronous method id to start
+     * @param key The key of the run or null
+     * @param listener The listener of this request
+     */
+    public void start(String id, Object key, JobListener listener) {
+        startAsync(id, key, listener, DEFAULT_PRIORITY, false);
+    }
+
+    /**
+     * Force start an asynchronous background job for the current id. Force start must be used when the annotated @BackgroundJob must be restarted if not yet started.
+     * @param id The asynchronous method id to start
+     */
+    public void forceStart(String id) {
+        startAsync(id, null, null, DEFAULT_PRIORITY, true);
+    }
+
+    /**
+     * Force start an asynchronous background job for the current id and a caller supplied key. The cached result is not reused,
+     * but if a run with an equal key is already in flight the request is attached to it, so that concurrent requests
+     * share one fresh run.
+     * @param id The asynchronous method id to start
+     * @param key The key of the run, runs are deduplicated by id and key
+     */
+    public void forceStart(String id, Object key) {
+        startAsync(id, key, null, DEFAULT_PRIORITY, true);
+    }
+
+    /**
+     * Force start an asynchronous background job for the current id and a caller supplied key, see {@linkplain #forceStart(String, Object)}.
+     * @param id The asynchronous method id to start
+     * @param key The key of the run or null
+     * @param listener The listener of this request
+     */
+    public void forceStart(String id, Object key, JobListener listener) {
+        startAsync(id, key, listener, DEFAULT_PRIORITY, true);
+    }
+
+    /**
+     * Start an asynchronous background job with a priority that overrides the priority of the annotation,
+     * see {@linkplain #start(String, Object, JobListener)}. Waiting background jobs of lower priority are passed.
+     * @param id The asynchronous method id to start
+     * @param key The key of the run or null
+     * @param listener The listener of this request or null
+     * @param priority The priority of the run, for example {@link gr.sieben.easyasync.BackgroundJob#PRIORITY_HIGH}
+     */
+    public void start(String id, Object key, JobListener listener, int priority) {
+        startAsync(id, key, listener, priority, false);
+    }
+
+    /**
+     * Force start an asynchronous background job with a priority that overrides the priority of the annotation,
+     * see {@linkplain #forceStart(String, Object, JobListener)}.
+     * @param id The asynchronous method id to start
+     * @param key The key of the run or null
+     * @param listener The listener of this request or null
+     * @param priority The priority of the run, for example {@link gr.sieben.easyasync.BackgroundJob#PRIORITY_HIGH}
+     */
+    public void forceStart(String id, Object key, JobListener listener, int priority) {
+        startAsync(id, key, listener, priority, true);
+    }
+
+    /**
+     * Start an asynchronous background job, see {@linkplain #start(String)}, and get a handle of its result for
+     * composing it without callbacks.
+     * @param id The asynchronous method id to start
+     * @param <R> The type of the result of the background job
+     * @return The handle of the result of the run that the request is attached to
+     */
+    public <R> JobHandle<R> submit(String id) {
+        return submit(id, null);
+    }
+
+    /**
+     * Start an asynchronous background job for a caller supplied key, see {@linkplain #start(String, Object)}, and get
+     * a handle of its result for composing it without callbacks.
+     * @param id The asynchronous method id to start
+     * @param key The key of the run or null
+     * @param <R> The type of the result of the background job
+     * @return The handle of the result of the run that the request is attached to
+     */
+    public <R> JobHandle<R> submit(String id, Object key) {
+        JobHandle<R> handle = new JobHandle<R>();
+        startAsync(id, key, handle, DEFAULT_PRIORITY, false);
+        return handle;
+    }
+
+    /**
+     * Force start an asynchronous background job for a caller supplied key, see {@linkplain #forceStart(String, Object)},
+     * and get a handle of its result for composing it without callbacks.
+     * @param id The asynchronous method id to start
+     * @param key The key of the run or null
+     * @param <R> The type of the result of the background job
+     * @return The handle of the result of the run that the request is attached to
+     */
+    public <R> JobHandle<R> forceSubmit(String id, Object key) {
+        JobHandle<R> handle = new JobHandle<R>();
+        startAsync(id, key, handle, DEFAULT_PRIORITY, true);
+        return handle;
+    }
+
+    //starts the run of the background job in the main thread
+    private void startAsync(String id, Object key, JobListener listener, int priority, boolean isForced) {
+        sweepCollectedTargets();
+        if(mRegistrationDeferred) {
+            if(mDeferredTarget == null) {
+                //the target is not known yet, the start is made when it is registered
+                mDeferredStarts.add(new DeferredStart(id, key, listener, priority, isForced));
+                return;
+            }
+            completeDeferredRegistration();
+        }
+        //if the annotation method does not exist
+        if(!mAnnotatedMethods.containsKey(id)) {
+            throw new EasyAsyncRuntimeException("Method with id="+id+" is not declared in any of the target Activity");
+        }
+        mController.startAsync(id, key, listener, priority, isForced);
+    }
+
+    /**
+     * Registers an executor under a name. Background jobs that are annotated with executor
+     * {@link gr.sieben.easyasync.ExecutorType#NAMED} and the same pool name are executed on it.
+     * @param name The name of the executor as used in {@link gr.sieben.easyasync.BackgroundJob#pool()}
+     * @param executor The executor to register
+     */
+    public void registerExecutor(String name, Executor executor) {
+        if(name == null || executor == null)
+            throw new EasyAsyncRuntimeException("You have to specify both a name and an executor to register");
+        mExecutors.put(name, executor);
+    }
+
+    /**
+     * Unregisters a previously registered executor.
+     * @param name The name of the executor
+     */
+    public void unregisterExecutor(String name) {
+        mExecutors.remove(name);
+    }
+
+    /**
+     * Sets the bounds of the pool of the background jobs of {@link gr.sieben.easyasync.ExecutorType#IO}. The pool grows and
+     * shrinks within them based on the time that its jobs are blocked and the time that they wait in the queue.
+     * Default is from the number of the available cores to 64 threads.
+     * @param minThreads The minimum number of the threads
+     * @param maxThreads The maximum number of the threads
+     */
+    public void setIoPoolBounds(int minThreads, int maxThreads) {
+        mIoSizer.setBounds(minThreads, maxThreads);
+    }
+
+    /**
+     * Gets the current size of the pool of the background jobs of {@link gr.sieben.easyasync.ExecutorType#IO}
+     * @return The maximum number of the threads that the pool uses now
+     */
+    public int getIoPoolSize() {
+        return mIoExecutor.getMaxThreads();
+    }
+
+    /**
+     * Limits the background jobs of a group, see {@link gr.sieben.easyasync.BackgroundJob#group()}. At most maxConcurrency
+     * runs of the group execute their background phase at the same time, whatever their executor, and at most maxQueued
+     * runs wait for them in order of priority. When the queue is full the policy applies. Calling it again changes the limits.
+     * @param group The name of the group
+     * @param maxConcurrency The maximum number of the background phases of the group that run at the same time
+     * @param maxQueued The maximum number of the runs of the group that wait
+     * @param policy What happens to a run when the queue is full
+     */
+    public void setGroupLimit(String group, int maxConcurrency, int maxQueued, OverflowPolicy policy) {
+        JobGroup existing = mGroups.get(group);
+        if(existing != null) {
+            existing.configure(maxConcurrency, maxQueued, policy);
+            return;
+        }
+        existing = mGroups.putIfAbsent(group, new JobGroup(maxConcurrency, maxQueued, policy,
+                mSerialExecutor.getAgingInterval()));
+        if(existing != null)
+            existing.configure(maxConcurrency, maxQueued, policy);
+    }
+
+    /**
+     * The number of the runs of a group that wait for their turn
+     * @param group The name of the group
+     * @return The depth of the queue of the group, zero if the group has no limits
+     */
+    public int getGroupQueueDepth(String group) {
+        JobGroup jobGroup = mGroups.get(group);
+        return jobGroup == null ? 0 : jobGroup.getQueueDepth();
+    }
+
+    /**
+     * The number of the runs of a group that execute their background phase
+     * @param group The name of the group
+     * @return The number of the running background phases of the group, zero if the group has no limits
+     */
+    public int getGroupRunningCount(String group) {
+        JobGroup jobGroup = mGroups.get(group);
+        return jobGroup == null ? 0 : jobGroup.getRunningCount();
+    }
+
+    //the group that limits the background jobs of the name, null if there is none
+    JobGroup getGroup(String group) {
+        return group.length() == 0 ? null : mGroups.get(group);
+    }
+
+    /**
+     * Bounds the result cache by the number of the cached results. The least recently used results are evicted first.
+     * Default value is 64.
+     * @param maxEntries The maximum number of the cached results
+     */
+    public void setResultCacheMaxSize(int maxEntries) {
+        mResultCache.setMaxSize(maxEntries, null);
+    }
+
+    /**
+     * Bounds the result cache by the estimated size of the cached results. The least recently used results are evicted first.
+     * @param maxSize The maximum size of the cached results, in the units of the estimator
+     * @param estimator The estimator of the size of each result
+     */
+    public void setResultCacheMaxSize(int maxSize, ResultSizeEstimator estimator) {
+        if(estimator == null)
+            throw new EasyAsyncRuntimeException("You have to specify an estimator to bound the result cache by size");
+        mResultCache.setMaxSize(maxSize, estimator);
+    }
+
+    /**
+     * Gets the number of the times that {@linkplain #start(String)} was served by a fresh cached result
+     * @return The hit count of the result cache
+     */
+    public long getCacheHitCount() {
+        return mResultCache.getHitCount();
+    }
+
+    /**
+     * Gets the number of the times that {@linkplain #start(String)} found no fresh cached result and executed the background job
+     * @return The miss count of the result cache
+     */
+    public long getCacheMissCount() {
+        return mResultCache.getMissCount();
+    }
+
+    /**
+     * Sets the persistent tier of the results of the background jobs that are annotated with
+     * {@link gr.sieben.easyasync.BackgroundJob#persist()}. Set it before the first start, as early as possible, so that the
+     * store has read its file when the background jobs are started:
+     * <pre><code>
+     * core.setResultStore(new ResultStore(new File(cacheDir, "easyasync.results"), new SerializableResultSerializer(), 1024 * 1024));
+     * </code></pre>
+     * Evicting the result cache does not delete the persisted results, see {@linkplain ResultStore#clear()}.
+     * @param store The store or null to keep the results only in memory
+     */
+    public void setResultStore(ResultStore store) {
+        mRoot.mResultStore = store;
+    }
+
+    /**
+     * Gets the persistent tier of the results
+     * @return The store or null if the results are kept only in memory
+     */
+    public ResultStore getResultStore() {
+        return mRoot.mResultStore;
+    }
+
+    /**
+     * Evicts half of the cached results in least recently used order, for example when the memory is low.
+     * The root core trims the caches of its scopes too.
+     */
+    public void trimResultCache() {
+        mResultCache.trimToHalf();
+        if(mScopes != null) {
+            for(EasyAsyncCore scope : mScopes) {
+                scope.mResultCache.trimToHalf();
+            }
+        }
+    }
+
+    /**
+     * Evicts all the cached results. The root core evicts the caches of its scopes too.
+     */
+    public void evictResultCache() {
+        mResultCache.evictAll();
+        if(mScopes != null) {
+            for(EasyAsyncCore scope : mScopes) {
+                scope.mResultCache.evictAll();
+            }
+        }
+    }
+
+    ResultCache getResultCache() {
+        return mResultCache;
+    }
+
+    MainThreadExecutor getMainThread() {
+        return mMainThread;
+    }
+
+    /**
+     * Gets the main thread as an executor, for example to continue a {@link gr.sieben.easyasync.JobHandle} in the main thread
+     * @return The executor of the main thread
+     */
+    public Executor getMainThreadExecutor() {
+        return mMainThread;
+    }
+
+    /**
+     * Gets a shared executor of the background jobs, for example to continue a {@link gr.sieben.easyasync.JobHandle} in the background
+     * @param type The type of the executor, {@link gr.sieben.easyasync.ExecutorType#NAMED} executors are the ones that have been registered
+     * @return The executor
+     */
+    public Executor getExecutor(ExecutorType type) {
+        if(type == ExecutorType.PARALLEL)
+            return mParallelExecutor;
+        if(type == ExecutorType.IO)
+            return mIoExecutor;
+        if(type == ExecutorType.VIRTUAL)
+            return mVirtualExecutor != null ? mVirtualExecutor : mIoExecutor;
+        if(type == ExecutorType.NAMED)
+            throw new IllegalArgumentException("Named executors are the ones that have been registered with registerExecutor");
+        return mSerialExecutor;
+    }
+
+    //the executor that posts the last callback of a run to the main thread
+    Executor getFinisherExecutor() {
+        return mRoot.mFrameCoalescing ? mFrameCoalescer : mMainThread;
+    }
+
+    JobController getController() {
+        return mController;
+    }
+
+    /**
+     * Sets how fast waiting background jobs of low priority catch up with the ones of higher priority, in the queues of the
+     * executors and of the groups, so that they run eventually.
+     * Default value is 200 milliseconds.
+     * @param agingInterval The time in milliseconds that raises the priority of a waiting background job by one level,
+     *                      zero or negative to disable the aging
+     */
+    public void setPriorityAgingInterval(long agingInterval) {
+        mSerialExecutor.setAgingInterval(agingInterval);
+        mParallelExecutor.setAgingInterval(agingInterval);
+        mIoExecutor.setAgingInterval(agingInterval);
+        for(JobGroup group : mGroups.values()) {
+            group.setAgingInterval(agingInterval);
+        }
+    }
+
+    /**
+     * Enables the coalescing of the last callbacks of the runs, {@link gr.sieben.easyasync.EasyAsyncCallbacks#AFTER_EXECUTE}
+     * or {@link gr.sieben.easyasync.EasyAsyncCallbacks#CANCELLED}. Instead of one message for each run that finishes, they
+     * are queued and drained in one message, and when a drain takes longer than the frame budget the rest are delivered
+     * at the next frame. Use it when many background jobs finish at once, for example after a refresh of a list.
+     * It applies to the runs that are started after it has been enabled. Disabled by default.
+     * @param enabled True to coalesce the last callbacks, false to post each of them on its own
+     */
+    public void setFrameCoalescing(boolean enabled) {
+        mRoot.mFrameCoalescing = enabled;
+    }
+
+    /**
+     * Sets the time that the coalesced callbacks may take in one frame, see {@linkplain #setFrameCoalescing(boolean)}.
+     * At least one callback is delivered in each frame. Default value is 4 milliseconds.
+     * @param budgetMillis The time in milliseconds
+     */
+    public void setFrameBudget(long budgetMillis) {
+        mFrameCoalescer.setBudget(budgetMillis);
+    }
+
+    /**
+     * Gets the number of the background jobs of a priority that have left the queue of the shared executors
+     * @param priority The priority of the background jobs
+     * @return The number of the background jobs
+     */
+    public long getQueueWaitCount(int priority) {
+        return mQueueWaitStats.getCount(priority);
+    }
+
+    /**
+     * Gets the average time that the background jobs of a priority have waited in the queue of the shared executors
+     * @param priority The priority of the background jobs
+     * @return The average time waiting in milliseconds
+     */
+    public double getAverageQueueWaitMillis(int priority) {
+        return mQueueWaitStats.getAverageMillis(priority);
+    }
+
+    /**
+     * Gets the maximum time that a background job of a priority has waited in the queue of the shared executors
+     * @param priority The priority of the background jobs
+     * @return The maximum time waiting in milliseconds
+     */
+    public double getMaxQueueWaitMillis(int priority) {
+        return mQueueWaitStats.getMaxMillis(priority);
+    }
+
+    /**
+     * Sets the listener of the metrics of the background jobs: the time waiting in the queue, the duration of the
+     * background phase, the time spent in the main thread callbacks, the cancellations, the errors and the use of the
+     * result cache, per background job id. Use a {@link gr.sieben.easyasync.JobMetricsRecorder} to record them in
+     * histograms. The listener applies to the runs that are started after it has been set.
+     * @param listener The listener or null to stop recording the metrics
+     */
+    public void setMetricsListener(JobMetricsListener listener) {
+        mRoot.mMetricsListener = listener;
+        mRoot.mResultCache.setMetricsListener(listener);
+        for(EasyAsyncCore scope : mRoot.mScopes) {
+            scope.mResultCache.setMetricsListener(listener);
+        }
+    }
+
+    /**
+     * Gets the listener of the metrics of the background jobs
+     * @return The listener or null if the metrics are not recorded
+     */
+    public JobMetricsListener getMetricsListener() {
+        return mRoot.mMetricsListener;
+    }
+
+    /**
+     * Holds the targets that are registered from now on weakly, so that a target that is not released, for example an
+     * Activity whose destroy has been forgotten, is not kept alive by the library. The bindings of a collected target
+     * are cleared and the callbacks for it are skipped. Targets that are held only by the library must be held strongly,
+     * which is the default of the core. {@code EasyAsync} holds the Activities weakly.
+     * @param weak True to hold the targets weakly, false to hold them strongly
+     */
+    public void setWeakTargets(boolean weak) {
+        mRoot.mWeakTargets = weak;
+    }
+
+    /**
+     * Cancels an asynchronous background job for the current id. This should trigger a callback of type {@link gr.sieben.easyasync.EasyAsyncCallbacks#CANCELLED}
+     * in the annotated method for each run that has not finished, including the runs that are started with a key.
+     * The cancellation token of each run is cancelled and its thread is interrupted. Nothing happens if the
+     * background job has not been started.
+     * @param id The asynchronous method id to start
+     */
+    public void cancel(String id) {
+        for(int i = mDeferredStarts.size() - 1; i >= 0; i--) {
+            if(mDeferredStarts.get(i).id.equals(id)) {
+                DeferredStart start = mDeferredStarts.remove(i);
+                if(start.listener instanceof JobHandle)
+                    ((JobHandle) start.listener).cancel(false);
+            }
+        }
+        mController.cancelAsync(id);
+    }
+
+    /**
+     * Registers the {@link gr.sieben.easyasync.BackgroundJob} annotated methods of the target. On android this is made
+     * by the retained fragment when the Activity is attached. The ids must be unique among the registered targets.
+     * @param target The object with the annotated methods
+     */
+    public void register(Object target) {
+        findAnnotations(target);
+    }
+
+    /**
+     * Registers the target without scanning it now, so that it can be called in the critical path of the start of the
+     * application. The annotated methods are scanned when a background job is started for the first time or when the
+     * main thread is idle, whichever comes first. Must be called in the main thread.
+     * @param target The object with the annotated methods
+     */
+    public void registerLazily(Object target) {
+        if(target == null)
+            throw new EasyAsyncRuntimeException("You have to specify the target to register");
+        mRegistrationDeferred = true;
+        mDeferredTarget = target;
+        if(!mDeferredStarts.isEmpty()) {
+            completeDeferredRegistration();
+        } else {
+            mMainThread.executeWhenIdle(mDeferredRegistration);
+        }
+    }
+
+    /**
+     * Defers the registration until a target is passed to {@linkplain #registerLazily(Object)}. The background jobs that
+     * are started in the meantime are buffered instead of failing because their ids are not declared yet.
+     */
+    void deferRegistration() {
+        mRegistrationDeferred = true;
+    }
+
+    /**
+     * Whether the registration has been deferred and the target has not been scanned yet
+     * @return True if the registration is deferred, false otherwise
+     */
+    boolean isRegistrationDeferred() {
+        return mRegistrationDeferred;
+    }
+
+    //scans the target of the lazy registration and makes the buffered starts, in the main thread
+    private void completeDeferredRegistration() {
+        if(!mRegistrationDeferred || mDeferredTarget == null)
+            return;
+        mMainThread.remove(mDeferredRegistration);
+        Object target = mDeferredTarget;
+        mDeferredTarget = null;
+        mRegistrationDeferred = false;
+        findAnnotations(target);
+        List<DeferredStart> starts = new ArrayList<DeferredStart>(mDeferredStarts);
+        mDeferredStarts.clear();
+        for(DeferredStart start : starts) {
+            startAsync(start.id, start.key, start.listener, start.priority, start.isForced);
+        }
+    }
+
+    /**
+     * Creates a scope, a registry of its own for the targets of one host, for example an Activity when several of them are
+     * alive at the same time. The ids of a scope do not collide with the ids of other scopes or of this core, and
+     * {@linkplain #destroy()} of the scope frees only its targets, its runs and its cached results. The main thread, the
+     * executors, the descriptors of the scanned classes and the settings, such as the metrics listener, the result store
+     * and the frame coalescing, are shared with the root core, while the bound of the result cache is set per scope.
+     * A destroyed scope must not be used again.
+     * @return The new scope
+     */
+    public EasyAsyncCore newScope() {
+        EasyAsyncCore scope = new EasyAsyncCore(mRoot);
+        mRoot.mScopes.add(scope);
+        return scope;
+    }
+
+    /**
+     * Releases the runs of all the background jobs, clears the registered targets and evicts the cached results.
+     * The scopes of the core are left alone, each of them is destroyed on its own. Must be called in the main thread.
+     */
+    public void destroy() {
+        synchronized (mRegistryLock) {
+            for(ObjectHolder holder : mAnnotatedMethods.values()) {
+                if(holder.getAsyncTask() != null)
+                    holder.getAsyncTask().release();
+                for(EasyAsyncTask keyedTask : holder.getKeyedTasks())
+                    keyedTask.release();
+            }
+            mAnnotatedMethods.clear();
+        }
+        mMainThread.remove(mDeferredRegistration);
+        mRegistrationDeferred = false;
+        mDeferredTarget = null;
+        mDeferredStarts.clear();
+        mResultCache.evictAll();
+        if(mRoot != this)
+            mRoot.mScopes.remove(this);
+    }
+
+    /**
+     * Resolves the executor that the background job of the holder is executed on
+     * @param holder The holder of the background job
+     * @return The executor to use
+     */
+    Executor getExecutor(ObjectHolder holder) {
+        BackgroundJob annotation = holder.getJob().annotation;
+        ExecutorType executorType = annotation.executor();
+        if(executorType == ExecutorType.NAMED) {
+            Executor executor = mExecutors.get(annotation.pool());
+            if(executor == null)
+                throw new EasyAsyncRuntimeException("There is no executor registered with name "+annotation.pool()+
+                        ". Use registerExecutor before starting the background job");
+            return executor;
+        }
+        return getExecutor(executorType);
+    }
+
+    /**
+     * Method that is used to find annotations of the @BackgroundJob in target class
+     * @param target The target object
+     */
+    void findAnnotations(Object target) {
+        sweepCollectedTargets();
+        synchronized (mRegistryLock) {
+            findAnnotationsLocked(target);
+        }
+    }
+
+    //clears the holders that are bound to the weakly held targets that have been collected
+    private void sweepCollectedTargets() {
+        ObjectHolder.TargetReference collected = (ObjectHolder.TargetReference) mCollectedTargets.poll();
+        if(collected == null)
+            return;
+        synchronized (mRegistryLock) {
+            do {
+                for(ObjectHolder holder : collected.holders) {
+                    holder.clear(collected);
+                }
+                collected.holders.clear();
+            } while((collected = (ObjectHolder.TargetReference) mCollectedTargets.poll()) != null);
+        }
+    }
+
+    //binds the target to the descriptors of its class, must be called while holding the registry lock
+    private void findAnnotationsLocked(Object target) {
+        ClassDescriptor descriptor = getClassDescriptor(target.getClass());
+        //the target is checked before any holder is bound, so a rejected target leaves the registry as it was
+        boolean changed = false;
+        for(JobDescriptor job : descriptor.jobs) {
+            ObjectHolder holder = mAnnotatedMethods.get(job.id);
+            Object boundTarget = holder == null ? null : holder.getTarget();
+            if(boundTarget != null) {
+                //checking for a unique key inside, we also check the target to be null
+                //because there might be an orientation change so we must reinitialise the targets of each async
+                throw new EasyAsyncRuntimeException("You must specify a unique id in the annotated method. In class " +
+                        target.getClass().getName() + " method " + job.methodName + " has the same id with method " +
+                        holder.getMethodName() + " in class " +
+                        boundTarget.getClass().getName());
+            }
+            if(holder == null || holder.getJob() != job)
+                changed = true;
+        }
+        //a re-attach after a configuration change binds the same descriptors, so the dependencies have not changed
+        if(changed)
+            checkDependencyCycles(descriptor);
+        ObjectHolder.TargetReference reference = new ObjectHolder.TargetReference(target,
+                mRoot.mWeakTargets ? mCollectedTargets : null);
+        for(JobDescriptor job : descriptor.jobs) {
+            ObjectHolder holder = mAnnotatedMethods.get(job.id);
+            //this condition checks whether we should create the annotation or reset the targets
+            if(holder == null) {
+                holder = new ObjectHolder();
+                mAnnotatedMethods.put(job.id, holder);
+            }
+            holder.bind(new ObjectHolder.Binding(reference, job));
+            reference.holders.add(holder);
+        }
+    }
+
+    /*
+    rejects cycles that the jobs of the class would make with the registered background jobs, before they are bound.
+    The registered jobs have no cycle, so a new cycle passes through a job of the class and only those are walked.
+    Must be called while holding the registry lock.
+     */
+    private void checkDependencyCycles(ClassDescriptor descriptor) {
+        Map<String, JobDescriptor> pending = new HashMap<String, JobDescriptor>();
+        for(JobDescriptor job : descriptor.jobs) {
+            pending.put(job.id, job);
+        }
+        Map<String, Boolean> visited = new HashMap<String, Boolean>(); //false while on the current path, true when done
+        List<String> path = new ArrayList<String>();
+        for(JobDescriptor job : descriptor.jobs) {
+            checkDependencyCycles(job.id, pending, visited, path);
+        }
+    }
+
+    private void checkDependencyCycles(String id, Map<String, JobDescriptor> pending, Map<String, Boolean> visited,
+                                       List<String> path) {
+        Boolean done = visited.get(id);
+        if(done != null) {
+            if(!done) {
+                StringBuilder cycle = new StringBuilder();
+                for(String step : path.subList(path.indexOf(id), path.size())) {
+                    cycle.append(step).append(" -> ");
+                }
+                throw new EasyAsyncRuntimeException("The background jobs depend on each other in a cycle: " +
+                        cycle.append(id));
+            }
+            return;
+        }
+        JobDescriptor job = pending.get(id);
+        if(job == null) {
+            ObjectHolder holder = mAnnotatedMethods.get(id);
+            job = holder == null ? null : holder.getJob();
+        }
+        if(job == null) {
+            return; //not registered yet, it is checked when its target is registered
+        }
+        visited.put(id, Boolean.FALSE);
+        path.add(id);
+        for(String dependency : job.annotation.dependsOn()) {
+            checkDependencyCycles(dependency, pending, visited, path);
+        }
+        path.remove(path.size() - 1);
+        visited.put(id, Boolean.TRUE);
+    }
+
+    /**
+     * Cache of the descriptors per class. The classes are weakly held so that they can be unloaded, the descriptors
+     * are softly held because they reference the methods and through them their classes. Shared with the scopes.
+     */
+    private final WeakHashMap<Class<?>, SoftReference<ClassDescriptor>> mClassDescriptors;
+
+    //gets the cached descriptor of the class or scans the class, the cache is shared with the scopes so it has its own lock
+    private ClassDescriptor getClassDescriptor(Class<?> targetClass) {
+        synchronized (mClassDescriptors) {
+            SoftReference<ClassDescriptor> reference = mClassDescriptors.get(targetClass);
+            ClassDescriptor descriptor = reference == null ? null : reference.get();
+            if(descriptor == null) {
+                descriptor = ClassDescriptor.create(targetClass);
+                mClassDescriptors.put(targetClass, new SoftReference<ClassDescriptor>(descriptor));
+            }
+            return descriptor;
+        }
+    }
+
+    /**
+     * Helper method for clearing the target Activity and annotated Method
+     * This has to be done in an orientation change in order to avoid any activity leaks
+     */
+    void clearAnnotations() {
+        mDeferredTarget = null; //a lazy registration waits for the next target
+        synchronized (mRegistryLock) {
+            for(Map.Entry<String, ObjectHolder> holder : mAnnotatedMethods.entrySet()) {
+                holder.getValue().unbind();
+            }
+        }
+    }
+
+    /**
+     * This method is called when we want to invoke any annotated method in the target Activity.
+     * No lock is held while the annotated method runs, so background jobs run at the same time and the
+     * main thread callbacks are never blocked by them.
+     * @param id The id of the method to be invoked
+     * @param callbacks The callbacks that will be passed in the method
+     * @param args The arguments that will be passed
+     */
+    void invokeMethod(String id, EasyAsyncCallbacks callbacks, EasyAsyncResult args) {
+        ObjectHolder holder = mAnnotatedMethods.get(id);
+        if(holder == null) {
+            return;
+        }
+        //the background phase may run while the target is detached during a configuration change
+        ObjectHolder.Binding binding = holder.getBinding(callbacks == EasyAsyncCallbacks.ON_BACKGROUND);
+        if(binding == null) {
+            return;
+        }
+        Object target = binding.target.get();
+        if(target == null) {
+            return; //a weakly held target that has been collected
+        }
+        JobDescriptor job = binding.job;
+        if(job.dispatcher != null) {
+            try {
+                job.dispatcher.dispatch(target, job.dispatchIndex, callbacks, args);
+            } catch (CancellationException e) {
+                throw e; //a job that gives up after its cancellation, see EasyAsyncTask#run
+            } catch (RuntimeException e) {
+                throw new EasyAsyncRuntimeException("Problem when invoking method "+job.methodName+" with " +
+                        "callbacks of type EasyAsyncCallbacks "+callbacks.toString(), e);
+            }
+            return;
+        }
+        Method method = job.annotatedMethod;
+        AnnotatedMethodType parameterType = job.methodType;
+        //we categorize the invokation depending on the number of the parameters specified
+        if(parameterType == AnnotatedMethodType.NO_PARAM)
+            try {
+                method.invoke(target);
+            } catch (Exception e) {
+                rethrowCancellation(e);
+                throw new EasyAsyncRuntimeException("Problem when invoking method "+method.getName()+" with " +
+                        "no parameter", e);
+            }
+        else if(parameterType == AnnotatedMethodType.TYPE_CALLBACKS)
+            try {
+                method.invoke(target, callbacks);
+            } catch (Exception e) {
+                rethrowCancellation(e);
+                throw new EasyAsyncRuntimeException("Problem when invoking method "+method.getName()+" with " +
+                        "one parameter of type EasyAsyncCallbacks "+callbacks.toString(), e);
+            }
+        else if(parameterType == AnnotatedMethodType.TYPE_RESULT)
+            try {
+                method.invoke(target, callbacks, args);
+            } catch (Exception e) {
+                rethrowCancellation(e);
+                throw new EasyAsyncRuntimeException("Problem when invoking method "+method.getName()+" with " +
+                        "two parameter of type EasyAsyncCallbacks "+callbacks.toString()+
+                        " and EasyAsyncResult"+args.toString(), e);
+            }
+    }
+
+    //passes on the CancellationException of a job that gives up after its cancellation without wrapping it
+    private static void rethrowCancellation(Exception e) {
+        Throwable thrown = e instanceof InvocationTargetException ? e.getCause() : e;
+        if(thrown instanceof CancellationException)
+            throw (CancellationException) thrown;
+    }
+}
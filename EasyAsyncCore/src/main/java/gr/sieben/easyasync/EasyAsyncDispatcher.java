@@ -0,0 +1,52 @@
+package gr.sieben.easyasync;
+
+/**
+ * Dispatcher of the {@link gr.sieben.easyasync.BackgroundJob} annotated methods of a target Activity.
+ * An implementation is generated at compile time by the EasyAsyncCompiler annotation processor for every class
+ * that declares annotated methods, named after the class with the {@link #SUFFIX} suffix.
+ * When a dispatcher is present the annotated methods are invoked directly instead of using reflection.
+ * <b>DO NOT IMPLEMENT MANUALLY, THE IMPLEMENTATIONS ARE GENERATED.</b>
+ */
+public interface EasyAsyncDispatcher {
+
+    /**
+     * The suffix that is appended to the binary name of the target class to form the name of its dispatcher
+     */
+    public static final String SUFFIX = "$$EasyAsyncDispatcher";
+
+    /**
+     * Gets the number of the annotated methods that the dispatcher handles
+     * @return The number of the annotated methods
+     */
+    public int getJobCount();
+
+    /**
+     * Gets the annotation of an annotated method
+     * @param index The index of the annotated method
+     * @return The annotation
+     */
+    public BackgroundJob getJob(int index);
+
+    /**
+     * Gets the name of an annotated method
+     * @param index The index of the annotated method
+     * @return The name of the method
+     */
+    public String getMethodName(int index);
+
+    /**
+     * Gets the number of the parameters of an annotated method
+     * @param index The index of the annotated method
+     * @return The number of the parameters, zero, one or two
+     */
+    public int getParameterCount(int index);
+
+    /**
+     * Invokes an annotated method in the target
+     * @param target The target Activity
+     * @param index The index of the annotated method
+     * @param callbacks The callbacks that will be passed in the method
+     * @param args The arguments that will be passed
+     */
+    public void dispatch(Object target, int index, EasyAsyncCallbacks callbacks, EasyAsyncResult args);
+}
@@ -0,0 +1,293 @@
+package gr.sieben.easyasync;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Holder Object that is used in the annotation method to preserve variables among the different
+ * asynchronous states.
+ * It has to be used as a parameter in the annotated method.
+ * <li>Generic P object can be set as a parameter object that is preserved in the asynchronous states</li>
+ * <li>Generic R object can be set as a result object that is preserver in the asynchronous states</li>
+ * <p>
+ * Full Quick Example:
+ * <pre><code>
+ * {@literal @}BackgroundJob(id="demoid")
+ * public void asyncMethod(EasyAsyncCallbacks callbacks, EasyAsyncResult<Object, String> args) {
+ *      if(callbacks == EasyAsyncCallbacks.BEFORE_EXECUTE) {
+ *          args.setParameter(parameter);
+ *      } if(callbacks == EasyAsyncCallbacks.ON_BACKGROUND) {
+ *          args.setResult(parameter.toString());
+ *      } else if(callbacks == EasyAsyncCallbacks.AFTER_EXECUTE) {
+ *          show(args.getResult());
+ *      }
+ * }
+ * </code></pre>
+ * </p>
+ * <p>
+ * Each run of a background job gets its own EasyAsyncResult. The objects are recycled when the run is replaced
+ * by a new one or when the library is destroyed, so do not keep a reference to it outside of the annotated method.
+ * </p>
+ */
+public class EasyAsyncResult<P, R>{
+
+    //bounded pool of recycled objects, the same way as android.os.Message
+    private static final Object sPoolSync = new Object();
+    private static final int MAX_POOL_SIZE = 10;
+    private static EasyAsyncResult sPool;
+    private static int sPoolSize = 0;
+
+    private EasyAsyncResult next;
+
+    /**
+     * Returns an EasyAsyncResult from the recycled pool or creates a new one if the pool is empty.
+     * @return An EasyAsyncResult with no parameter and no result
+     */
+    static EasyAsyncResult obtain() {
+        synchronized (sPoolSync) {
+            if(sPool != null) {
+                EasyAsyncResult result = sPool;
+                sPool = result.next;
+                result.next = null;
+                sPoolSize--;
+                return result;
+            }
+        }
+        return new EasyAsyncResult();
+    }
+
+    /**
+     * Clears the object and returns it to the recycled pool. It must not be used after this call.
+     */
+    void recycle() {
+        callbackOnConfigurationChange = true;
+        parameter = null;
+        result = null;
+        error = null;
+        progress = null;
+        progressThrottle = null;
+        items = null;
+        itemStream = null;
+        cancellationToken = null;
+        synchronized (this) {
+            dependencyResults = null;
+        }
+        synchronized (sPoolSync) {
+            if(sPoolSize < MAX_POOL_SIZE) {
+                next = sPool;
+                sPool = this;
+                sPoolSize++;
+            }
+        }
+    }
+
+    private boolean callbackOnConfigurationChange;
+
+    /**
+     * Sets whether the callback should be invoked when a configuration change has occurred in the activity.
+     * The callback is invoked if the background job has completed and an orientation change has occurred.
+     * The value applies only to the current run of the background job.
+     * <b><i>Default value is set to </i></b><code>true</code>
+     * @param callbackOnConfigurationChange The argument to set
+     */
+    public void setCallbackInConfigurationChange(boolean callbackOnConfigurationChange) {
+        this.callbackOnConfigurationChange = callbackOnConfigurationChange;
+    }
+
+    /**
+     * Gets whether the callback should be called in a configuration change in the activity.
+     * @return The current value
+     */
+    public boolean isCallbackOnConfigurationChangeEnabled() {
+        return callbackOnConfigurationChange;
+    }
+
+    /**
+     * This is used internally in the project. DO NOT MANUALLY CREATE, USE THE PARAMETER IN THE ANNOTATED METHOD.
+     * See documentation for more details.
+     */
+    public EasyAsyncResult() {
+        callbackOnConfigurationChange = true;
+    }
+
+    private P parameter;
+
+    /**
+     * Getter for the parameter object
+     * @return Type P object
+     */
+    @SuppressWarnings("unused") //this is used only within the annotated method
+    public P getParameter() {
+        return parameter;
+    }
+
+    /**
+     * Setter for the parameter object
+     * @param parameter The parameter that needs to be retained across asynchronous states
+     */
+    @SuppressWarnings("unused") //this is used only within the annotated method
+    public void setParameter(P parameter) {
+        this.parameter = parameter;
+    }
+
+    private R result;
+
+    /**
+     * Getter for the result object
+     * @return Type R object
+     */
+    @SuppressWarnings("unused") //this is used only within the annotated method
+    public R getResult() {
+        return result;
+    }
+
+    /**
+     * Setter for the result object
+     * @param result The parameter that needs to be retained across asynchronous states
+     */
+    @SuppressWarnings("unused") //this is used only within the annotated method
+    public void setResult(R result) {
+        this.result = result;
+    }
+
+    private Throwable error;
+
+    /**
+     * Getter for the exception that has ended the run. It is set in {@link gr.sieben.easyasync.EasyAsyncCallbacks#CANCELLED}
+     * when {@link gr.sieben.easyasync.EasyAsyncCallbacks#ON_BACKGROUND} of the run, or of a background job that it depends on,
+     * has thrown an exception.
+     * @return The exception or null if the run has not failed
+     */
+    @SuppressWarnings("unused") //this is used only within the annotated method
+    public Throwable getError() {
+        return error;
+    }
+
+    //sets the exception of a failed run before its last callback
+    void setError(Throwable error) {
+        this.error = error;
+    }
+
+    private volatile Object progress;
+    private volatile ProgressThrottle progressThrottle;
+
+    /**
+     * Publishes the progress of the background job. Must be called in {@link gr.sieben.easyasync.EasyAsyncCallbacks#ON_BACKGROUND}.
+     * The annotated method is invoked with {@link gr.sieben.easyasync.EasyAsyncCallbacks#ON_PROGRESS} in the main thread
+     * at most once in every {@link gr.sieben.easyasync.BackgroundJob#progressInterval()}, with the latest published value.
+     * It is cheap to call it in a tight loop.
+     * @param progress The progress object
+     */
+    @SuppressWarnings("unused") //this is used only within the annotated method
+    public void publishProgress(Object progress) {
+        ProgressThrottle throttle = progressThrottle;
+        if(throttle != null)
+            throttle.publish(progress);
+    }
+
+    /**
+     * Getter for the progress object that is delivered in {@link gr.sieben.easyasync.EasyAsyncCallbacks#ON_PROGRESS}
+     * @param <T> The type of the progress object
+     * @return The latest delivered progress object
+     */
+    @SuppressWarnings({"unused", "unchecked"}) //this is used only within the annotated method
+    public <T> T getProgress() {
+        return (T) progress;
+    }
+
+    //sets the progress that is delivered in the main thread
+    void setProgress(Object progress) {
+        this.progress = progress;
+    }
+
+    //sets the throttle of the current run
+    void setProgressThrottle(ProgressThrottle progressThrottle) {
+        this.progressThrottle = progressThrottle;
+    }
+
+    private List<Object> items;
+    private volatile ItemStream itemStream;
+
+    /**
+     * Emits an item of a streaming background job. Must be called in {@link gr.sieben.easyasync.EasyAsyncCallbacks#ON_BACKGROUND}.
+     * The annotated method is invoked with {@link gr.sieben.easyasync.EasyAsyncCallbacks#ON_ITEM} in the main thread with
+     * the items that have been emitted since the previous batch. At most {@link gr.sieben.easyasync.BackgroundJob#itemBuffer()}
+     * items wait for the main thread, when the buffer is full this call blocks until the main thread has taken them.
+     * @param item The item
+     * @throws java.util.concurrent.CancellationException If the run is cancelled while waiting, which ends the run as cancelled
+     */
+    @SuppressWarnings("unused") //this is used only within the annotated method
+    public void emit(Object item) {
+        ItemStream stream = itemStream;
+        if(stream != null)
+            stream.emit(item);
+    }
+
+    /**
+     * Getter for the batch of items that is delivered in {@link gr.sieben.easyasync.EasyAsyncCallbacks#ON_ITEM}, in the
+     * order that they have been emitted. The list belongs to the annotated method.
+     * @param <T> The type of the items
+     * @return The items of the batch, or null outside of {@link gr.sieben.easyasync.EasyAsyncCallbacks#ON_ITEM}
+     */
+    @SuppressWarnings({"unused", "unchecked"}) //this is used only within the annotated method
+    public <T> List<T> getItems() {
+        return (List<T>) items;
+    }
+
+    //sets the batch of items that is delivered in the main thread
+    void setItems(List<Object> items) {
+        this.items = items;
+    }
+
+    //sets the item stream of the current run
+    void setItemStream(ItemStream itemStream) {
+        this.itemStream = itemStream;
+    }
+
+    private volatile CancellationToken cancellationToken;
+
+    /**
+     * Getter for the cancellation token of the run. Check it in {@link gr.sieben.easyasync.EasyAsyncCallbacks#ON_BACKGROUND}
+     * or register hooks on it to stop a long running job when the run is cancelled or times out.
+     * @return The token of the run, or null if these arguments do not belong to a started run such as the
+     * arguments of a cached result
+     */
+    @SuppressWarnings("unused") //this is used only within the annotated method
+    public CancellationToken getCancellationToken() {
+        return cancellationToken;
+    }
+
+    //sets the token of the current run
+    void setCancellationToken(CancellationToken cancellationToken) {
+        this.cancellationToken = cancellationToken;
+    }
+
+    private Map<String, Object> dependencyResults; //guarded by this
+
+    /**
+     * Getter for the result of a background job that this one depends on, see {@link gr.sieben.easyasync.BackgroundJob#dependsOn()}.
+     * Available from {@link gr.sieben.easyasync.EasyAsyncCallbacks#ON_BACKGROUND} onwards.
+     * @param id The id of the background job that this one depends on
+     * @param <T> The type of the result
+     * @return The result that the background job has set in its background phase or null
+     */
+    @SuppressWarnings({"unused", "unchecked"}) //this is used only within the annotated method
+    public synchronized <T> T getDependencyResult(String id) {
+        return dependencyResults == null ? null : (T) dependencyResults.get(id);
+    }
+
+    //sets the result of a dependency, in the thread of its background phase
+    synchronized void putDependencyResult(String id, Object result) {
+        if(dependencyResults == null)
+            dependencyResults = new HashMap<String, Object>(4);
+        dependencyResults.put(id, result);
+    }
+
+    @Override
+    public String toString() {
+        //it is part of the message of a failed background phase, so it must not throw when nothing has been set
+        return "parameter of type "+(parameter == null ? "null" : parameter.getClass().toString())+
+                " and result of "+(result == null ? "null" : result.getClass().toString());
+    }
+}
@@ -0,0 +1,649 @@
+package gr.sieben.easyasync;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Task that is used for the asynchronous calls, in the same way as an {@link android.os.AsyncTask}.
+ * Each instance is used for each run of a background job. {@link gr.sieben.easyasync.EasyAsyncCallbacks#BEFORE_EXECUTE}
+ * is invoked in the main thread when the task starts, {@link gr.sieben.easyasync.EasyAsyncCallbacks#ON_BACKGROUND} in
+ * the executor and the last callback is posted back to the main thread.
+ * <p>
+ * A task may depend on other tasks. It is submitted to its executor only when the background phase of all of
+ * them has completed, directly from the background thread of the last one, and their results are handed to
+ * its arguments.
+ * </p>
+ */
+class EasyAsyncTask implements Runnable {
+
+    //states of the task, changed atomically because the background thread and the main thread race for them
+    private static final int PENDING = 0;
+    private static final int RUNNING = 1;
+    private static final int BACKGROUND_DONE = 2;
+    private static final int COMPLETED = 3;
+    private static final int CANCELLED = 4;
+
+    private final AtomicInteger state = new AtomicInteger(PENDING);
+    private Thread runner; //the thread of the background phase while it runs, guarded by this
+    private volatile Object backgroundResult; //the result of the background phase, handed to the dependents
+    private volatile Throwable failure; //the exception or the timeout that has ended the run, set with the transition to cancelled
+    private volatile boolean failed; //the background phase of this run has thrown, already reported with onError
+
+    private boolean completed;
+
+    /**
+     * Whether the async task has completed its task
+     * @return True if completed, false otherwise
+     */
+    public boolean isCompleted() {
+        return completed;
+    }
+
+    private boolean started;
+    /**
+     * Whether the async task has started its task
+     * @return True if started, false otherwise
+     */
+    public boolean hasStarted() {
+        return started;
+    }
+
+    private String id; //the background job id
+
+    /**
+     * Getter for the id of the background job in the annotated method
+     * @return The id of the annotated method
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Setter for the id of the background job in the annotated method
+     * @param id The id of the annotated method
+     */
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    private Object key; //the caller supplied key of the run, null if none
+
+    /**
+     * Getter for the caller supplied key of the run
+     * @return The key or null
+     */
+    public Object getKey() {
+        return key;
+    }
+
+    /**
+     * Setter for the caller supplied key of the run
+     * @param key The key or null
+     */
+    public void setKey(Object key) {
+        this.key = key;
+    }
+
+    private final List<JobListener> listeners = new ArrayList<JobListener>(1);
+
+    /**
+     * Attaches the listener of a request to the run. Must be called in the main thread before the run has finished.
+     * @param listener The listener to attach, ignored if null
+     */
+    public void addListener(JobListener listener) {
+        if(listener instanceof JobHandle && batch == null)
+            addHandle((JobHandle) listener);
+        else if(listener != null)
+            listeners.add(listener);
+    }
+
+    private List<JobHandle> handles; //completed with the background phase, guarded by this
+
+    //completes the handle with the background phase, right away if it has already finished
+    private void addHandle(JobHandle handle) {
+        synchronized (this) {
+            int current = state.get();
+            if(current == PENDING || current == RUNNING) {
+                if(handles == null)
+                    handles = new ArrayList<JobHandle>(1);
+                handles.add(handle);
+                return;
+            }
+        }
+        completeHandle(handle, hasBackgroundResult());
+    }
+
+    @SuppressWarnings("unchecked")
+    private void completeHandle(JobHandle handle, boolean succeeded) {
+        Throwable error = failure;
+        if(succeeded)
+            handle.complete(backgroundResult, null);
+        else if(error != null)
+            handle.complete(null, error);
+        else
+            handle.complete(null, new CancellationException("The background job " + id + " has been cancelled"));
+    }
+
+    //notifies the requests that are attached to the run
+    private void notifyListeners(EasyAsyncCallbacks state) {
+        for(int i = 0; i < listeners.size(); i++) {
+            listeners.get(i).onJobFinished(id, state, args);
+        }
+        listeners.clear();
+    }
+
+    private JobBatch batch; //the keys of the run of a batched background job, null if it is not batched
+
+    /**
+     * Getter for the keys of the run of a batched background job
+     * @return The batch or null if the run is not batched
+     */
+    public JobBatch getBatch() {
+        return batch;
+    }
+
+    /**
+     * Makes this the run of a batch. The last callback is fanned out to each key of the batch instead of the listeners.
+     * @param batch The closed batch
+     */
+    public void setBatch(JobBatch batch) {
+        this.batch = batch;
+    }
+
+    private EasyAsyncResult args; //the arguments of this run of the background job
+
+    /**
+     * Getter for the arguments that are passed through the different async states of this run
+     * @return The arguments of the run
+     */
+    public EasyAsyncResult getArgs() {
+        return args;
+    }
+
+    /**
+     * Setter for the arguments that are passed through the different async states of this run
+     * @param args The arguments of the run
+     */
+    public void setArgs(EasyAsyncResult args) {
+        this.args = args;
+    }
+
+    private final CancellationToken cancellationToken = new CancellationToken();
+    private long timeout; //the time in milliseconds that the background phase may take, zero for no timeout
+    private boolean timedOut; //accessed in the main thread
+
+    /**
+     * Setter for the time that the background phase may take before the run is cancelled with
+     * {@link gr.sieben.easyasync.EasyAsyncCallbacks#TIMED_OUT}
+     * @param timeout The timeout in milliseconds, zero or negative for no timeout
+     */
+    public void setTimeout(long timeout) {
+        this.timeout = timeout;
+    }
+
+    private RetryPolicy retryPolicy; //null when the background job is not retried
+    private int attempts; //the attempts of the background phase, each one happens after the previous one
+
+    /**
+     * Setter for the retry settings of the background phase
+     * @param retryPolicy The retry settings or null to never retry
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
+    private long progressInterval;
+
+    /**
+     * Setter for the minimum interval between two progress callbacks
+     * @param progressInterval The interval in milliseconds
+     */
+    public void setProgressInterval(long progressInterval) {
+        this.progressInterval = progressInterval;
+    }
+
+    private ProgressThrottle progressThrottle;
+
+    private int itemBuffer;
+
+    /**
+     * Setter for the maximum number of emitted items that wait for the main thread
+     * @param itemBuffer The number of items
+     */
+    public void setItemBuffer(int itemBuffer) {
+        this.itemBuffer = itemBuffer;
+    }
+
+    private ItemStream itemStream;
+
+    private JobMetricsListener metrics; //null when the metrics are not recorded
+    private volatile long submittedAt; //the time in nanoseconds that the task has been submitted to its executor
+
+    /**
+     * Setter for the listener of the metrics of the run
+     * @param metrics The listener or null
+     */
+    public void setMetricsListener(JobMetricsListener metrics) {
+        this.metrics = metrics;
+    }
+
+    private boolean finished; //whether the last callback of the run has been invoked
+    private boolean released; //whether the run has been replaced and its arguments can be recycled
+
+    /**
+     * Whether the last callback of the run, after execute or cancelled, has been invoked
+     * @return True if finished, false otherwise
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * Takes the arguments of the completed run, the caller owns them from now on
+     * @return The arguments of the run
+     */
+    public EasyAsyncResult takeArgs() {
+        EasyAsyncResult taken = args;
+        args = null;
+        return taken;
+    }
+
+    /**
+     * Releases the arguments of the run. They are recycled now if the run has finished or when it finishes.
+     * Must be called in the main thread.
+     */
+    public void release() {
+        released = true;
+        recycleIfReleased();
+    }
+
+    private void recycleIfReleased() {
+        if(released && finished && args != null) {
+            //a timed out background phase may still be using the arguments, so they are left to the garbage collector
+            if(!timedOut)
+                args.recycle();
+            args = null;
+            if(batch != null)
+                batch.recycle();
+        }
+    }
+
+    private AsyncTaskCallbacks callbacks;
+
+    /**
+     * Setters for the asynchronous callbacks.
+     * @param callbacks The interface related callbacks
+     */
+    public void setCallbacks(AsyncTaskCallbacks callbacks) {
+        this.callbacks = callbacks;
+    }
+
+    private MainThreadExecutor mainThread;
+    private Executor finisherExecutor; //posts the last callback to the main thread, directly or coalesced
+
+    /**
+     * Setter for the main thread that the callbacks other than the background phase are invoked in
+     * @param mainThread The main thread of the platform
+     * @param finisherExecutor The executor that posts the last callback to the main thread
+     */
+    public void setMainThread(MainThreadExecutor mainThread, Executor finisherExecutor) {
+        this.mainThread = mainThread;
+        this.finisherExecutor = finisherExecutor;
+    }
+
+    private Executor executor;
+    private int priority;
+    private JobGroup group; //null when the background job does not belong to a limited group
+
+    /**
+     * Setter for the group that limits the concurrency of the background job
+     * @param group The group or null
+     */
+    public void setGroup(JobGroup group) {
+        this.group = group;
+    }
+
+    private ResultStore resultStore; //null when the result of the run is not persisted
+    private volatile byte[] persistedBytes; //the result converted in the background thread, null if it can not be
+
+    /**
+     * Setter for the store that the result of the run is persisted in. The result is converted to bytes right after the
+     * background phase, before the main thread can change it.
+     * @param resultStore The store or null
+     */
+    public void setResultStore(ResultStore resultStore) {
+        this.resultStore = resultStore;
+    }
+
+    /**
+     * The result of a completed run converted to bytes for the store of {@link #setResultStore(ResultStore)}
+     * @return The bytes or null if the result is not persisted
+     */
+    public byte[] getPersistedBytes() {
+        return persistedBytes;
+    }
+
+    //the dependencies that have not finished their background phase, plus one that is released when the task starts
+    private final AtomicInteger pendingDependencies = new AtomicInteger(1);
+    private List<EasyAsyncTask> dependents; //guarded by this
+
+    /**
+     * Makes the task wait for the background phase of another task. Must be called in the main thread before
+     * {@link #start(java.util.concurrent.Executor, int)}. If the other task is cancelled this task is cancelled too, if it
+     * fails this task fails with its exception.
+     * @param upstream The task to wait for
+     */
+    public void addDependency(EasyAsyncTask upstream) {
+        pendingDependencies.incrementAndGet();
+        if(!upstream.addDependent(this)) {
+            //the background phase of the upstream task has already finished
+            onDependencyFinished(upstream, upstream.hasBackgroundResult());
+        }
+    }
+
+    //registers a dependent task, returns false if the background phase has already finished
+    private synchronized boolean addDependent(EasyAsyncTask dependent) {
+        int current = state.get();
+        if(current != PENDING && current != RUNNING) {
+            return false;
+        }
+        if(dependents == null)
+            dependents = new ArrayList<EasyAsyncTask>(2);
+        dependents.add(dependent);
+        return true;
+    }
+
+    //whether the background phase has completed without being cancelled
+    private boolean hasBackgroundResult() {
+        int current = state.get();
+        return current == BACKGROUND_DONE || current == COMPLETED;
+    }
+
+    //notifies the dependents and the handles that the background phase has finished, in the background thread
+    private void notifyDependents(boolean succeeded) {
+        List<EasyAsyncTask> toNotify;
+        List<JobHandle> toComplete;
+        synchronized (this) {
+            toNotify = dependents;
+            dependents = null;
+            toComplete = handles;
+            handles = null;
+        }
+        if(toComplete != null) {
+            for(int i = 0; i < toComplete.size(); i++) {
+                completeHandle(toComplete.get(i), succeeded);
+            }
+        }
+        if(toNotify != null) {
+            for(int i = 0; i < toNotify.size(); i++) {
+                toNotify.get(i).onDependencyFinished(this, succeeded);
+            }
+        }
+    }
+
+    //called when the background phase of a dependency has finished
+    private void onDependencyFinished(EasyAsyncTask upstream, boolean succeeded) {
+        if(!succeeded) {
+            cancel(false, upstream.failure);
+            return;
+        }
+        args.putDependencyResult(upstream.id, upstream.backgroundResult);
+        releaseDependency();
+    }
+
+    //the task is submitted by whoever releases the last pending dependency
+    private void releaseDependency() {
+        if(pendingDependencies.decrementAndGet() == 0 && state.get() == PENDING) {
+            submit();
+        }
+    }
+
+    //submits the background phase to the queue of the executor, through the queue of its group if it has one
+    private void submit() {
+        if(metrics != null)
+            submittedAt = System.nanoTime();
+        if(group != null)
+            group.submit(this, executor, priority);
+        else
+            executor.execute(new PriorityExecutor.PrioritizedRunnable(this, priority));
+    }
+
+    //submits the next attempt after the backoff, in the main thread
+    private final Runnable retry = new Runnable() {
+        @Override
+        public void run() {
+            mainThread.remove(timeoutCallback); //the timeout of the failed attempt
+            if(state.get() == PENDING)
+                submit();
+        }
+    };
+
+    //schedules the next attempt of a failed background phase, returns false if the run has been cancelled in the meantime
+    private boolean scheduleRetry(RuntimeException error) {
+        long delay = retryPolicy.delayMillis(attempts);
+        if(!state.compareAndSet(RUNNING, PENDING))
+            return false;
+        if(metrics != null)
+            metrics.onRetry(id, attempts, delay, error);
+        //the wait is a message of the main thread, so the thread of the executor serves the next job meanwhile
+        mainThread.executeDelayed(retry, delay);
+        return true;
+    }
+
+    /**
+     * Starts the task. {@link gr.sieben.easyasync.EasyAsyncCallbacks#BEFORE_EXECUTE} is invoked in the calling thread,
+     * which must be the main thread, and the task is submitted to the executor when its dependencies have finished.
+     * @param executor The executor that the background job is executed on
+     * @param priority The priority of the background job in the queue of the executor
+     */
+    public void start(Executor executor, int priority) {
+        this.executor = executor;
+        this.priority = priority;
+        progressThrottle = new ProgressThrottle(id, callbacks, args, progressInterval, mainThread);
+        args.setProgressThrottle(progressThrottle);
+        itemStream = new ItemStream(id, callbacks, args, itemBuffer, mainThread, cancellationToken);
+        args.setItemStream(itemStream);
+        args.setCancellationToken(cancellationToken);
+        started = true;
+        completed = false;
+        long deliveredAt = metrics == null ? 0 : System.nanoTime();
+        callbacks.onResponse(id, EasyAsyncCallbacks.BEFORE_EXECUTE, args);
+        if(metrics != null)
+            metrics.onMainThreadCallback(id, EasyAsyncCallbacks.BEFORE_EXECUTE, System.nanoTime() - deliveredAt);
+        releaseDependency();
+    }
+
+    /**
+     * Cancels the task. If it is waiting it never runs, if it is running its thread may be interrupted and if its
+     * background phase has finished the result is not delivered. {@link gr.sieben.easyasync.EasyAsyncCallbacks#CANCELLED}
+     * is invoked in the main thread instead of {@link gr.sieben.easyasync.EasyAsyncCallbacks#AFTER_EXECUTE}. The cancellation
+     * token of the run is cancelled in the calling thread.
+     * @param mayInterruptIfRunning True if the thread of the background phase should be interrupted
+     * @return True if the task has been cancelled, false if it has already completed or been cancelled
+     */
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return cancel(mayInterruptIfRunning, null);
+    }
+
+    //cancels the task, with the exception that has made it fail or null for a plain cancellation
+    private boolean cancel(boolean mayInterruptIfRunning, Throwable error) {
+        while(true) {
+            int current = state.get();
+            if(current == COMPLETED || current == CANCELLED) {
+                return false;
+            }
+            if(moveToCancelled(current, error)) {
+                cancellationToken.cancel(false);
+                if(current == PENDING) {
+                    //the background phase never runs, so nobody else posts the last callback
+                    notifyDependents(false);
+                    finisherExecutor.execute(finisher);
+                } else if(current == RUNNING && mayInterruptIfRunning) {
+                    interruptRunner();
+                }
+                return true;
+            }
+        }
+    }
+
+    //the exception is set with the state so that a handle that is added in the meantime sees both, see addHandle
+    private synchronized boolean moveToCancelled(int from, Throwable error) {
+        if(!state.compareAndSet(from, CANCELLED))
+            return false;
+        failure = error;
+        return true;
+    }
+
+    //interrupts the thread of the background phase, the lock keeps the interruption from reaching the next job of the thread
+    private synchronized void interruptRunner() {
+        if(runner != null)
+            runner.interrupt();
+    }
+
+    //cancels the background phase when it takes longer than the timeout, in the main thread
+    private final Runnable timeoutCallback = new Runnable() {
+        @Override
+        public void run() {
+            //the handles and the dependents fail with the timeout
+            if(!moveToCancelled(RUNNING, new TimeoutException("The background job " + id + " has timed out after " +
+                    timeout + "ms"))) {
+                return; //finished or cancelled in the meantime
+            }
+            timedOut = true;
+            cancellationToken.cancel(true);
+            interruptRunner();
+            Thread thread;
+            synchronized (EasyAsyncTask.this) {
+                thread = runner;
+            }
+            //the thread of a blocked job is given up so that the executor keeps serving its queue
+            if(thread != null && executor instanceof PriorityExecutor)
+                ((PriorityExecutor) executor).detach(thread);
+            //and so is its slot in the group, the next waiting run of the group starts
+            if(group != null)
+                group.timedOut(EasyAsyncTask.this);
+            notifyDependents(false);
+            //the last callback is delivered now instead of when the background phase returns, which may be never
+            finisher.run();
+        }
+    };
+
+    /**
+     * Whether the task has been cancelled
+     * @return True if cancelled, false otherwise
+     */
+    public boolean isCancelled() {
+        return state.get() == CANCELLED;
+    }
+
+    /**
+     * The background phase, invoked by the executor
+     */
+    @Override
+    public void run() {
+        if(!state.compareAndSet(PENDING, RUNNING)) {
+            return; //cancelled while waiting
+        }
+        synchronized (this) {
+            runner = Thread.currentThread();
+        }
+        attempts++;
+        long startedAt = 0;
+        if(metrics != null) {
+            startedAt = System.nanoTime();
+            metrics.onQueueWait(id, startedAt - submittedAt);
+        }
+        if(timeout > 0)
+            mainThread.executeDelayed(timeoutCallback, timeout);
+        EasyAsyncResult runArgs = args; //the field is cleared in the main thread when a timed out run is recycled
+        try {
+            callbacks.onResponse(id, EasyAsyncCallbacks.ON_BACKGROUND, runArgs);
+        } catch (Throwable e) {
+            //a job that gives up cooperatively after the cancellation ends as cancelled below, anything else fails,
+            //an error too, otherwise the run would stay running and every later start would attach to it
+            if(!isCancellation(e) || !cancellationToken.isCancelled()) {
+                if(e instanceof RuntimeException && retryPolicy != null && retryPolicy.shouldRetry(attempts, e)
+                        && scheduleRetry((RuntimeException) e))
+                    return;
+                //the run ends as cancelled with the exception, unless it has been cancelled or timed out in the meantime
+                if(moveToCancelled(RUNNING, e)) {
+                    failed = true;
+                    if(metrics != null)
+                        metrics.onError(id, e);
+                }
+                notifyDependents(false);
+                finisherExecutor.execute(finisher);
+                return; //delivered with getError, so it is not reported again to the handler of the thread
+            }
+        } finally {
+            synchronized (this) {
+                runner = null;
+            }
+            Thread.interrupted(); //a cancellation must not leak into the next job of the worker
+        }
+        if(metrics != null)
+            metrics.onBackground(id, System.nanoTime() - startedAt);
+        backgroundResult = runArgs.getResult();
+        if(resultStore != null)
+            persistedBytes = resultStore.toBytes(id, backgroundResult);
+        notifyDependents(state.compareAndSet(RUNNING, BACKGROUND_DONE));
+        finisherExecutor.execute(finisher);
+    }
+
+    /*
+    whether the exception is a cancellation, or the interruption that the cancellation of the run has caused, also when
+    the annotated method has wrapped it in an exception of its own
+     */
+    private static boolean isCancellation(Throwable error) {
+        for(Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if(cause instanceof CancellationException || cause instanceof InterruptedException)
+                return true;
+        }
+        return false;
+    }
+
+    //delivers the last callback in the main thread
+    private final Runnable finisher = new Runnable() {
+        @Override
+        public void run() {
+            if(finished) {
+                return; //already delivered when the run timed out
+            }
+            mainThread.remove(timeoutCallback);
+            mainThread.remove(retry);
+            if(progressThrottle != null)
+                progressThrottle.stop();
+            EasyAsyncCallbacks last = timedOut ? EasyAsyncCallbacks.TIMED_OUT : EasyAsyncCallbacks.CANCELLED;
+            Throwable error = failure;
+            if(state.compareAndSet(BACKGROUND_DONE, COMPLETED)) {
+                last = EasyAsyncCallbacks.AFTER_EXECUTE;
+                completed = true;
+            } else {
+                if(error != null && !timedOut)
+                    args.setError(error); //the failure of this run or of a run that it depends on
+                //a failure of the background phase of this run has already been reported with onError
+                if(metrics != null && !failed)
+                    metrics.onCancelled(id, timedOut || error instanceof TimeoutException);
+            }
+            //the items that are still buffered come before the result, a cancelled run drops them
+            if(itemStream != null)
+                itemStream.stop(completed);
+            long deliveredAt = metrics == null ? 0 : System.nanoTime();
+            if(batch != null) {
+                batch.fanOut(id, callbacks, last, args);
+            } else {
+                callbacks.onResponse(id, last, args);
+                notifyListeners(last);
+            }
+            if(metrics != null)
+                metrics.onMainThreadCallback(id, last, System.nanoTime() - deliveredAt);
+            finished = true;
+            callbacks.onFinished(id, EasyAsyncTask.this);
+            recycleIfReleased();
+        }
+    };
+}
@@ -0,0 +1,150 @@
+package gr.sieben.easyasync;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link gr.sieben.easyasync.MainThreadExecutor} for the JVM. A single daemon thread runs the runnables in order of the
+ * time they are due and then in the order they were posted, the same way as the message queue of the android main thread.
+ * The runnables that are posted with {@linkplain #executeWhenIdle(Runnable)} run when no other runnable is due.
+ * An exception of a runnable is passed to the uncaught exception handler of the thread and the loop continues.
+ */
+public class EventLoop implements MainThreadExecutor {
+
+    /**
+     * The interval of the frames, the loop has no display so it uses the interval of a 60Hz display
+     */
+    public static final long FRAME_INTERVAL_MILLIS = 16;
+
+    private static final class Message implements Comparable<Message> {
+        final Runnable runnable;
+        final long when;
+        final long sequence;
+
+        Message(Runnable runnable, long when, long sequence) {
+            this.runnable = runnable;
+            this.when = when;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Message other) {
+            if(when != other.when)
+                return when < other.when ? -1 : 1;
+            return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+        }
+    }
+
+    private final long origin = System.nanoTime();
+    private final PriorityQueue<Message> queue = new PriorityQueue<Message>(); //guarded by itself
+    private final ArrayDeque<Runnable> idle = new ArrayDeque<Runnable>(); //guarded by queue
+    private long sequence;
+    private final Thread thread;
+
+    /**
+     * Creates the loop and starts its thread
+     * @param name The name of the thread
+     */
+    public EventLoop(String name) {
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                loop();
+            }
+        }, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Whether the calling thread is the thread of the loop
+     * @return True if called in the loop, false otherwise
+     */
+    public boolean isLoopThread() {
+        return Thread.currentThread() == thread;
+    }
+
+    @Override
+    public void execute(Runnable runnable) {
+        enqueue(runnable, elapsedMillis());
+    }
+
+    @Override
+    public void executeDelayed(Runnable runnable, long delayMillis) {
+        enqueue(runnable, elapsedMillis() + Math.max(delayMillis, 0));
+    }
+
+    @Override
+    public void executeOnNextFrame(Runnable runnable) {
+        long now = elapsedMillis();
+        enqueue(runnable, now - now % FRAME_INTERVAL_MILLIS + FRAME_INTERVAL_MILLIS);
+    }
+
+    @Override
+    public void executeWhenIdle(Runnable runnable) {
+        synchronized (queue) {
+            idle.add(runnable);
+            queue.notify();
+        }
+    }
+
+    @Override
+    public void remove(Runnable runnable) {
+        synchronized (queue) {
+            for(Iterator<Runnable> iterator = idle.iterator(); iterator.hasNext(); ) {
+                if(iterator.next() == runnable)
+                    iterator.remove();
+            }
+            for(Iterator<Message> iterator = queue.iterator(); iterator.hasNext(); ) {
+                if(iterator.next().runnable == runnable)
+                    iterator.remove();
+            }
+        }
+    }
+
+    @Override
+    public long elapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - origin);
+    }
+
+    private void enqueue(Runnable runnable, long when) {
+        synchronized (queue) {
+            queue.add(new Message(runnable, when, sequence++));
+            queue.notify();
+        }
+    }
+
+    private void loop() {
+        while(true) {
+            Runnable next;
+            synchronized (queue) {
+                while(true) {
+                    Message head = queue.peek();
+                    long now = elapsedMillis();
+                    if(head != null && head.when <= now) {
+                        next = queue.poll().runnable;
+                        break;
+                    }
+                    if(!idle.isEmpty()) {
+                        next = idle.poll();
+                        break;
+                    }
+                    try {
+                        queue.wait(head == null ? 0 : head.when - now);
+                    } catch (InterruptedException e) {
+                        //the loop is only stopped with the process
+                    }
+                }
+            }
+            try {
+                next.run();
+            } catch (RuntimeException e) {
+                Thread.UncaughtExceptionHandler handler = thread.getUncaughtExceptionHandler();
+                if(handler != null)
+                    handler.uncaughtException(thread, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package gr.sieben.easyasync;
+
+/**
+ * The executors that a {@link gr.sieben.easyasync.BackgroundJob} can be executed on.
+ * <li><b>SERIAL</b> The background job is queued in a shared serial executor, one job after the other in order of priority.
+ * This is the default value.</li>
+ * <li><b>PARALLEL</b> The background job is executed in a shared pool of threads that is sized to the number of the available cores,
+ * in order of priority. Use it for jobs that are bound by the CPU.</li>
+ * <li><b>IO</b> The background job is executed in a shared elastic pool for jobs that block on IO, in order of priority. The pool grows
+ * and shrinks with the measured blocking time of its jobs and their latency in the queue, within the bounds of
+ * {@linkplain gr.sieben.easyasync.EasyAsyncCore#setIoPoolBounds(int, int)}.</li>
+ * <li><b>NAMED</b> The background job is executed in the executor that has been registered with
+ * {@linkplain gr.sieben.easyasync.EasyAsyncCore#registerExecutor(String, java.util.concurrent.Executor)} under the name
+ * specified in {@link gr.sieben.easyasync.BackgroundJob#pool()}.</li>
+ * <li><b>VIRTUAL</b> The background job is executed in a new virtual thread for each run when the JDK supports virtual threads,
+ * from Java 21, so that blocking jobs do not hold a thread of a pool. Otherwise, for example on android, it is executed
+ * in the shared pool of <b>IO</b>. The priority does not apply to virtual threads.</li>
+ */
+public enum ExecutorType {
+    SERIAL, PARALLEL, NAMED, VIRTUAL, IO
+}
@@ -0,0 +1,78 @@
+package gr.sieben.easyasync;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Delivers the callbacks that are posted to the main thread in as few messages as possible. The callbacks are collected
+ * in a lock free queue from any thread and one message drains them in the main thread. A drain stops when its time budget
+ * has been spent and the callbacks that are left are drained at the next frame, so a burst of finishing runs does not
+ * take a whole frame.
+ */
+class FrameCoalescer implements Executor, Runnable {
+
+    private final MainThreadExecutor mainThread;
+    private final ConcurrentLinkedQueue<Runnable> queue = new ConcurrentLinkedQueue<Runnable>();
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private volatile long budgetNanos;
+
+    /**
+     * @param mainThread The main thread that drains the callbacks
+     * @param budgetMillis The time in milliseconds that a drain may take
+     */
+    FrameCoalescer(MainThreadExecutor mainThread, long budgetMillis) {
+        this.mainThread = mainThread;
+        setBudget(budgetMillis);
+    }
+
+    /**
+     * Sets the time that a drain may take. At least one callback is delivered in every drain.
+     * @param budgetMillis The time in milliseconds
+     */
+    void setBudget(long budgetMillis) {
+        budgetNanos = TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+    }
+
+    /**
+     * Queues the callback and schedules a drain if none is scheduled
+     * @param callback The callback to deliver in the main thread
+     */
+    @Override
+    public void execute(Runnable callback) {
+        queue.offer(callback);
+        if(scheduled.compareAndSet(false, true))
+            mainThread.execute(this);
+    }
+
+    /**
+     * Drains the queue in the main thread until it is empty or the budget has been spent. An exception of a callback
+     * is thrown to the main thread like without coalescing, and the callbacks that are left are drained with the next message.
+     */
+    @Override
+    public void run() {
+        long start = System.nanoTime();
+        long budget = budgetNanos;
+        boolean carriedOver = false;
+        try {
+            Runnable callback;
+            while((callback = queue.poll()) != null) {
+                callback.run();
+                if(System.nanoTime() - start >= budget && !queue.isEmpty()) {
+                    mainThread.executeOnNextFrame(this); //still scheduled, the rest carries over
+                    carriedOver = true;
+                    return;
+                }
+            }
+        } finally {
+            if(!carriedOver) {
+                scheduled.set(false);
+                //a callback that is queued after the last poll but before the flag is cleared would wait for the next one,
+                //and after an exception the rest of the queue would wait forever
+                if(!queue.isEmpty() && scheduled.compareAndSet(false, true))
+                    mainThread.execute(this);
+            }
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package gr.sieben.easyasync;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Hands the items that are emitted in the background thread of a run to the main thread in batches. The items that have
+ * not been delivered yet are bounded: the background thread waits when the buffer is full until the main thread takes
+ * it, so a slow consumer slows the producer down instead of letting the items pile up in memory.
+ */
+class ItemStream implements Runnable {
+
+    private final String id;
+    private final AsyncTaskCallbacks callbacks;
+    private final EasyAsyncResult args;
+    private final int capacity;
+    private final MainThreadExecutor mainThread;
+    private final CancellationToken cancellationToken;
+
+    //guarded by this
+    private List<Object> buffer;
+    private boolean scheduled;
+    private boolean stopped;
+    private boolean hooked;
+
+    //wakes up a background thread that waits for room when the run is cancelled
+    private final Runnable wakeUp = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (ItemStream.this) {
+                ItemStream.this.notifyAll();
+            }
+        }
+    };
+
+    ItemStream(String id, AsyncTaskCallbacks callbacks, EasyAsyncResult args, int capacity, MainThreadExecutor mainThread,
+               CancellationToken cancellationToken) {
+        this.id = id;
+        this.callbacks = callbacks;
+        this.args = args;
+        this.capacity = Math.max(1, capacity);
+        this.mainThread = mainThread;
+        this.cancellationToken = cancellationToken;
+        buffer = new ArrayList<Object>(Math.min(this.capacity, 16));
+    }
+
+    /**
+     * Adds an item to the buffer and schedules a delivery in the main thread if none is scheduled. Waits while the
+     * buffer is full.
+     * @param item The item
+     * @throws java.util.concurrent.CancellationException If the run is cancelled or the thread is interrupted while waiting
+     */
+    public void emit(Object item) {
+        boolean schedule;
+        synchronized (this) {
+            while(buffer.size() >= capacity && !stopped && !cancellationToken.isCancelled()) {
+                if(!hooked) {
+                    hooked = true;
+                    cancellationToken.register(wakeUp);
+                    continue; //the token may have been cancelled before the hook was registered
+                }
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new CancellationException("Interrupted while waiting for the main thread to take the items");
+                }
+            }
+            if(stopped || cancellationToken.isCancelled())
+                throw new CancellationException("The background job has been cancelled");
+            buffer.add(item);
+            schedule = !scheduled;
+            scheduled = true;
+        }
+        if(schedule)
+            mainThread.execute(this);
+    }
+
+    /**
+     * Stops the delivery of the items. Must be called in the main thread before the last callback of the run.
+     * @param flush True to deliver the items that are still buffered first, false to drop them
+     */
+    public void stop(boolean flush) {
+        mainThread.remove(this);
+        if(flush)
+            run();
+        boolean unhook;
+        synchronized (this) {
+            stopped = true;
+            buffer.clear();
+            notifyAll();
+            unhook = hooked; //no hook is registered once the stream has stopped
+        }
+        if(unhook)
+            cancellationToken.unregister(wakeUp);
+    }
+
+    @Override
+    public void run() {
+        List<Object> batch;
+        synchronized (this) {
+            scheduled = false;
+            if(stopped || buffer.isEmpty())
+                return;
+            batch = buffer;
+            buffer = new ArrayList<Object>(Math.min(capacity, 16));
+            notifyAll(); //the buffer has room again
+        }
+        args.setItems(batch);
+        try {
+            callbacks.onResponse(id, EasyAsyncCallbacks.ON_ITEM, args);
+        } finally {
+            args.setItems(null);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package gr.sieben.easyasync;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The keys of the requests of a batched background job, see {@link gr.sieben.easyasync.BackgroundJob#batchSize()}.
+ * The keys are collected in the main thread until the batch is full or its linger time has passed, then one run
+ * executes the background job for all of them and its result is fanned out to each key.
+ * Accessed in the main thread, except the keys that are read in the background phase.
+ */
+final class JobBatch {
+
+    //the listeners of each key in the order of the requests, a key without listeners has an empty list
+    private final LinkedHashMap<Object, List<JobListener>> members = new LinkedHashMap<Object, List<JobListener>>();
+    //the arguments of each key after the fan out, until the controller takes them
+    private final HashMap<Object, EasyAsyncResult> memberArgs = new HashMap<Object, EasyAsyncResult>();
+    private int priority = EasyAsyncCore.DEFAULT_PRIORITY;
+    private List<Object> keys;
+
+    /**
+     * Adds the request of a key to the batch. Requests with the same key share one member.
+     * @param key The caller supplied key
+     * @param listener The listener of the request or null
+     * @param priority The priority of the request, the batch runs with the highest one
+     */
+    void add(Object key, JobListener listener, int priority) {
+        List<JobListener> listeners = members.get(key);
+        if(listeners == null) {
+            listeners = new ArrayList<JobListener>(1);
+            members.put(key, listeners);
+        }
+        if(listener != null)
+            listeners.add(listener);
+        this.priority = Math.max(this.priority, priority);
+    }
+
+    /**
+     * Attaches the listener of a request to a key that is already in the batch
+     * @param key The caller supplied key
+     * @param listener The listener of the request or null
+     */
+    void addListener(Object key, JobListener listener) {
+        if(listener != null)
+            members.get(key).add(listener);
+    }
+
+    boolean contains(Object key) {
+        return members.containsKey(key);
+    }
+
+    int size() {
+        return members.size();
+    }
+
+    int getPriority() {
+        return priority;
+    }
+
+    /**
+     * Closes the batch to new keys
+     * @return The keys of the batch in the order of the requests
+     */
+    List<Object> close() {
+        keys = Collections.unmodifiableList(new ArrayList<Object>(members.keySet()));
+        return keys;
+    }
+
+    List<Object> getKeys() {
+        return keys;
+    }
+
+    /**
+     * Delivers the last callback of the run to each key. Each key gets its own arguments with the key as the
+     * parameter and, when the run has completed, its entry of the result map as the result.
+     * @param id The id of the background job
+     * @param callbacks The callbacks of the run
+     * @param state {@link gr.sieben.easyasync.EasyAsyncCallbacks#AFTER_EXECUTE} or {@link gr.sieben.easyasync.EasyAsyncCallbacks#CANCELLED}
+     * @param args The arguments of the run
+     */
+    @SuppressWarnings("unchecked")
+    void fanOut(String id, AsyncTaskCallbacks callbacks, EasyAsyncCallbacks state, EasyAsyncResult args) {
+        Object result = args.getResult();
+        Map<Object, Object> results = result instanceof Map ? (Map<Object, Object>) result : null;
+        for(Map.Entry<Object, List<JobListener>> member : members.entrySet()) {
+            EasyAsyncResult single = EasyAsyncResult.obtain();
+            single.setParameter(member.getKey());
+            single.setError(args.getError());
+            if(state == EasyAsyncCallbacks.AFTER_EXECUTE && results != null)
+                single.setResult(results.get(member.getKey()));
+            memberArgs.put(member.getKey(), single);
+            callbacks.onResponse(id, state, single);
+            List<JobListener> listeners = member.getValue();
+            for(int i = 0; i < listeners.size(); i++) {
+                listeners.get(i).onJobFinished(id, state, single);
+            }
+            listeners.clear();
+        }
+    }
+
+    /**
+     * Takes the arguments of a key after the fan out, the caller owns them from now on
+     * @param key The caller supplied key
+     * @return The arguments of the key or null
+     */
+    EasyAsyncResult takeArgs(Object key) {
+        return memberArgs.remove(key);
+    }
+
+    /**
+     * Recycles the arguments of the keys that have not been taken
+     */
+    void recycle() {
+        for(EasyAsyncResult single : memberArgs.values()) {
+            single.recycle();
+        }
+        memberArgs.clear();
+    }
+}
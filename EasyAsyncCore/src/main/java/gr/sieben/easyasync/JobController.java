@@ -0,0 +1,353 @@
+package gr.sieben.easyasync;
+
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+import gr.sieben.easyasync.exceptions.EasyAsyncRuntimeException;
+
+/**
+ * The lifecycle of the runs of the background jobs of an {@link gr.sieben.easyasync.EasyAsyncCore}: starting, deduplicating,
+ * batching, cancelling and caching them. It is accessed in the main thread.
+ */
+class JobController implements AsyncTaskCallbacks {
+
+    private final EasyAsyncCore core;
+    //the background jobs whose persisted result is delivered when the store has read its file, accessed in the main thread
+    private final Set<String> awaitingStore = new HashSet<String>();
+
+    JobController(EasyAsyncCore core) {
+        this.core = core;
+    }
+
+    /**
+     * Method that starts the respective AsyncTask for the background job specified
+     * @param id The id to be started
+     * @param key The caller supplied key of the run or null
+     * @param listener The listener of the request or null
+     * @param priority The priority of the run or {@link EasyAsyncCore#DEFAULT_PRIORITY} to use the priority of the annotation
+     * @param isForced True if it has to be restarted, false otherwise
+     */
+    public void startAsync(String id, Object key, JobListener listener, int priority, boolean isForced) {
+        ObjectHolder holder = core.mAnnotatedMethods.get(id);
+        EasyAsyncTask asyncTask = key == null ? holder.getAsyncTask() : holder.getKeyedTask(key);
+        boolean isRunning = asyncTask != null && !asyncTask.isFinished();
+        //a keyed request attaches to the run in flight even when forced, so concurrent requests share one run
+        if(isRunning && (!isForced || key != null)) {
+            if(asyncTask.getBatch() != null)
+                asyncTask.getBatch().addListener(key, listener);
+            else
+                asyncTask.addListener(listener);
+            return;
+        }
+        JobBatch openBatch = holder.getOpenBatch();
+        if(key != null && openBatch != null && openBatch.contains(key)) {
+            openBatch.addListener(key, listener);
+            return;
+        }
+        if(!isForced) {
+            //a fresh cached result is delivered as though the background job has just finished
+            ResultCache.Entry cached = core.getResultCache().get(new JobKey(id, key));
+            boolean refresh = false;
+            if(cached == null && key == null) {
+                cached = restorePersisted(holder, id, true);
+                refresh = cached != null && cached.isStale(core.getMainThread().elapsedMillis());
+            }
+            if(cached != null) {
+                deliverCached(id, listener, cached);
+                if(!refresh)
+                    return;
+            }
+        }
+        if(priority == EasyAsyncCore.DEFAULT_PRIORITY)
+            priority = holder.getJob().annotation.priority();
+        checkDependencies(id, holder);
+        if(key != null && holder.getJob().annotation.batchSize() > 0) {
+            addToBatch(holder, id, key, listener, priority);
+        } else {
+            startTask(holder, id, key, listener, priority);
+        }
+    }
+
+    //delivers a cached result as though the background job has just finished
+    private void deliverCached(String id, JobListener listener, ResultCache.Entry cached) {
+        JobMetricsListener metrics = core.getMetricsListener();
+        long deliveredAt = metrics == null ? 0 : System.nanoTime();
+        onResponse(id, EasyAsyncCallbacks.AFTER_EXECUTE, cached.args);
+        if(listener != null)
+            listener.onJobFinished(id, EasyAsyncCallbacks.AFTER_EXECUTE, cached.args);
+        if(metrics != null)
+            metrics.onMainThreadCallback(id, EasyAsyncCallbacks.AFTER_EXECUTE, System.nanoTime() - deliveredAt);
+    }
+
+    /*
+    moves the result that a previous process has persisted to the result cache, a stale one is cached as stale. The main
+    thread does not wait for the store to read its file: when it has not been read yet the background job is executed,
+    and if deliverWhenLoaded is set the persisted result is delivered to its run when the read finishes
+     */
+    private ResultCache.Entry restorePersisted(ObjectHolder holder, final String id, boolean deliverWhenLoaded) {
+        final ResultStore store = core.getResultStore();
+        if(store == null || !holder.getJob().annotation.persist())
+            return null;
+        boolean loaded = store.isLoaded(); //checked before the take, so that a read that finishes in between is not missed
+        ResultStore.Restored restored = store.take(id);
+        if(restored == null) {
+            if(!loaded && deliverWhenLoaded && awaitingStore.add(id)) {
+                store.afterLoad(new Runnable() {
+                    @Override
+                    public void run() {
+                        core.getMainThread().execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                deliverPersisted(store, id);
+                            }
+                        });
+                    }
+                });
+            }
+            return null;
+        }
+        return cachePersisted(holder, id, restored);
+    }
+
+    //delivers the persisted result to the run that has been started before the file was read, unless it has finished first
+    private void deliverPersisted(ResultStore store, String id) {
+        awaitingStore.remove(id);
+        ObjectHolder holder = core.mAnnotatedMethods.get(id);
+        if(holder == null || store != core.getResultStore())
+            return; //destroyed or replaced in the meantime
+        EasyAsyncTask asyncTask = holder.getAsyncTask();
+        if(asyncTask == null || asyncTask.isFinished())
+            return; //a completed run has already delivered a fresher result and replaced the persisted one
+        ResultStore.Restored restored = store.take(id);
+        if(restored != null)
+            deliverCached(id, null, cachePersisted(holder, id, restored));
+    }
+
+    //caches a persisted result with what is left of its time to live
+    private ResultCache.Entry cachePersisted(ObjectHolder holder, String id, ResultStore.Restored restored) {
+        EasyAsyncResult args = EasyAsyncResult.obtain();
+        args.setResult(restored.result);
+        //the clock of the time to live does not survive the process, so the age is taken from the wall clock
+        long ttl = holder.getJob().annotation.cacheTtl();
+        long age = Math.max(0, System.currentTimeMillis() - restored.storedAt);
+        return core.getResultCache().put(new JobKey(id, null), args, ttl < 0 ? ttl : Math.max(0, ttl - age));
+    }
+
+    //collects the key in the open batch of the background job, the batch runs when it is full or its linger time has passed
+    private void addToBatch(final ObjectHolder holder, final String id, Object key, JobListener listener, int priority) {
+        BackgroundJob annotation = holder.getJob().annotation;
+        JobBatch batch = holder.getOpenBatch();
+        if(batch == null) {
+            final JobBatch newBatch = new JobBatch();
+            holder.setOpenBatch(newBatch);
+            core.getMainThread().executeDelayed(new Runnable() {
+                @Override
+                public void run() {
+                    //the batch may have been filled up or the library destroyed in the meantime
+                    if(holder.getOpenBatch() == newBatch && core.mAnnotatedMethods.get(id) == holder)
+                        startBatch(holder, id, newBatch);
+                }
+            }, annotation.batchLinger());
+            batch = newBatch;
+        }
+        batch.add(key, listener, priority);
+        if(batch.size() >= annotation.batchSize())
+            startBatch(holder, id, batch);
+    }
+
+    //starts one run for all the keys of the batch, each key is in flight until the run has finished
+    private void startBatch(ObjectHolder holder, String id, JobBatch batch) {
+        checkDependencies(id, holder); //the registry may have changed while the batch lingered
+        holder.setOpenBatch(null);
+        EasyAsyncResult args = EasyAsyncResult.obtain();
+        args.setParameter(batch.close());
+        EasyAsyncTask asyncTask = createTask(holder, id, null, args);
+        asyncTask.setBatch(batch);
+        for(Object key : batch.getKeys()) {
+            holder.putKeyedTask(key, asyncTask);
+        }
+        addDependencies(asyncTask, holder, batch.getPriority());
+        asyncTask.start(core.getExecutor(holder), batch.getPriority());
+    }
+
+    //creates a run of the background job with its own arguments
+    private EasyAsyncTask createTask(ObjectHolder holder, String id, Object key, EasyAsyncResult args) {
+        EasyAsyncTask asyncTask = new EasyAsyncTask();
+        asyncTask.setCallbacks(this);
+        asyncTask.setMainThread(core.getMainThread(), core.getFinisherExecutor());
+        asyncTask.setId(id);
+        asyncTask.setKey(key);
+        asyncTask.setArgs(args);
+        asyncTask.setProgressInterval(holder.getJob().annotation.progressInterval());
+        asyncTask.setItemBuffer(holder.getJob().annotation.itemBuffer());
+        asyncTask.setTimeout(holder.getJob().annotation.timeout());
+        asyncTask.setRetryPolicy(holder.getJob().retryPolicy);
+        asyncTask.setGroup(core.getGroup(holder.getJob().annotation.group()));
+        asyncTask.setMetricsListener(core.getMetricsListener());
+        return asyncTask;
+    }
+
+    //creates and starts a new run of the background job, after the runs of the background jobs it depends on
+    private EasyAsyncTask startTask(ObjectHolder holder, String id, Object key, JobListener listener, int priority) {
+        Executor executor = core.getExecutor(holder);
+        EasyAsyncTask previousTask = key == null ? holder.getAsyncTask() : holder.getKeyedTask(key);
+        //each run gets its own arguments, the arguments of the replaced run are recycled when it finishes
+        EasyAsyncResult args = EasyAsyncResult.obtain();
+        if(key != null)
+            args.setParameter(key);
+        EasyAsyncTask asyncTask = createTask(holder, id, key, args);
+        asyncTask.addListener(listener);
+        if(key == null && holder.getJob().annotation.persist())
+            asyncTask.setResultStore(core.getResultStore());
+        if(key == null) {
+            holder.setAsyncTask(asyncTask);
+            if(previousTask != null)
+                previousTask.release();
+        } else {
+            holder.putKeyedTask(key, asyncTask);
+        }
+        addDependencies(asyncTask, holder, priority);
+        asyncTask.start(executor, priority);
+        return asyncTask;
+    }
+
+    /*
+    checks that the background jobs that the background job depends on, directly or through others, are declared,
+    before a run is started or replaces the previous one, so that a missing one does not leave half started runs behind
+     */
+    private void checkDependencies(String id, ObjectHolder holder) {
+        Set<String> visited = new HashSet<String>();
+        LinkedList<ObjectHolder> toCheck = new LinkedList<ObjectHolder>();
+        visited.add(id);
+        toCheck.add(holder);
+        while(!toCheck.isEmpty()) {
+            ObjectHolder current = toCheck.removeFirst();
+            for(String dependency : current.getJob().annotation.dependsOn()) {
+                if(!visited.add(dependency))
+                    continue;
+                ObjectHolder dependencyHolder = core.mAnnotatedMethods.get(dependency);
+                if(dependencyHolder == null) {
+                    throw new EasyAsyncRuntimeException("Method with id="+current.getJob().id+" depends on id="+dependency+
+                            " which is not declared in any of the target Activity");
+                }
+                toCheck.add(dependencyHolder);
+            }
+        }
+    }
+
+    //makes the run wait for the background jobs it depends on, starting the ones that are neither running nor cached
+    private void addDependencies(EasyAsyncTask asyncTask, ObjectHolder holder, int priority) {
+        for(String dependency : holder.getJob().annotation.dependsOn()) {
+            ObjectHolder dependencyHolder = core.mAnnotatedMethods.get(dependency); //declared, see checkDependencies
+            EasyAsyncTask upstream = dependencyHolder.getAsyncTask();
+            if(upstream == null || upstream.isFinished()) {
+                ResultCache.Entry cached = core.getResultCache().get(new JobKey(dependency, null));
+                if(cached == null) {
+                    cached = restorePersisted(dependencyHolder, dependency, false);
+                    if(cached != null && cached.isStale(core.getMainThread().elapsedMillis()))
+                        cached = null;
+                }
+                if(cached != null) {
+                    asyncTask.getArgs().putDependencyResult(dependency, cached.args.getResult());
+                    continue;
+                }
+                //the dependency inherits the priority of the run that waits for it when that is higher
+                int dependencyPriority = Math.max(priority, dependencyHolder.getJob().annotation.priority());
+                upstream = startTask(dependencyHolder, dependency, null, null, dependencyPriority);
+            }
+            asyncTask.addDependency(upstream);
+        }
+    }
+
+    /**
+     * Cancels the runs of the background job that have not finished, with or without a key. The keys that are
+     * collected in an open batch are started and cancelled, so that each of them is notified.
+     * @param id The id of the AsyncTask to cancel
+     */
+    public void cancelAsync(String id) {
+        ObjectHolder holder = core.mAnnotatedMethods.get(id);
+        if(holder == null) {
+            return; //never declared or already destroyed
+        }
+        if(holder.getOpenBatch() != null)
+            startBatch(holder, id, holder.getOpenBatch());
+        EasyAsyncTask asyncTask = holder.getAsyncTask();
+        if(asyncTask != null)
+            asyncTask.cancel(true);
+        for(EasyAsyncTask keyedTask : holder.getKeyedTasks()) {
+            keyedTask.cancel(true);
+        }
+    }
+
+    /**
+     * The callback that is called from the AsyncTask that indicates a change in its state.
+     * @param id The id of the background job
+     * @param easyAsyncCallbacks The callbackMethod that indicates the current state
+     * @param args The arguments of the run of the background job
+     */
+    @Override
+    public void onResponse(String id, EasyAsyncCallbacks easyAsyncCallbacks, EasyAsyncResult args) {
+        core.invokeMethod(id, easyAsyncCallbacks, args);
+    }
+
+    /**
+     * The callback that is called from the AsyncTask when it has finished. The arguments of a completed current run
+     * of the background job are moved to the result cache.
+     * @param id The id of the background job
+     * @param asyncTask The finished AsyncTask
+     */
+    @Override
+    public void onFinished(String id, EasyAsyncTask asyncTask) {
+        ObjectHolder holder = core.mAnnotatedMethods.get(id);
+        if(holder == null) {
+            return;
+        }
+        JobBatch batch = asyncTask.getBatch();
+        if(batch != null) {
+            //each key of a completed batch is cached on its own, the rest of the arguments are recycled
+            for(Object key : batch.getKeys()) {
+                if(holder.removeKeyedTask(key, asyncTask) && asyncTask.isCompleted())
+                    core.getResultCache().put(new JobKey(id, key), batch.takeArgs(key),
+                            holder.getJob().annotation.cacheTtl());
+            }
+            asyncTask.release();
+            return;
+        }
+        Object key = asyncTask.getKey();
+        if(key == null ? holder.getAsyncTask() != asyncTask : !holder.removeKeyedTask(key, asyncTask)) {
+            return; //the run has been replaced, its arguments are recycled when it is released
+        }
+        if(asyncTask.isCompleted()) {
+            ResultStore store = core.getResultStore();
+            byte[] persisted = asyncTask.getPersistedBytes();
+            if(store != null && persisted != null)
+                store.write(id, persisted);
+            core.getResultCache().put(new JobKey(id, key), asyncTask.takeArgs(),
+                    holder.getJob().annotation.cacheTtl());
+        } else if(key != null) {
+            asyncTask.release(); //a cancelled keyed run is not kept anywhere
+        }
+    }
+
+    /**
+     * Method that is called when the targets have been registered again after a configuration change. Invokes methods with a
+     * EasyAsyncCallbacks.AFTER_EXECUTE when the AsyncTask has already been completed, its result is still cached
+     * and the arguments of its run have set the callbackConfigurationChange to true.
+     */
+    public void replayCompleted() {
+        ResultCache resultCache = core.getResultCache();
+        for(Map.Entry<String, ObjectHolder> entry : core.mAnnotatedMethods.entrySet()) {
+            EasyAsyncTask asyncTask = entry.getValue().getAsyncTask();
+            if(asyncTask == null || !asyncTask.hasStarted() || !asyncTask.isCompleted()) {
+                continue;
+            }
+            ResultCache.Entry cached = resultCache.peek(new JobKey(entry.getKey(), null));
+            if(cached != null && cached.args.isCallbackOnConfigurationChangeEnabled()) {
+                onResponse(entry.getKey(), EasyAsyncCallbacks.AFTER_EXECUTE, cached.args);
+            }
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package gr.sieben.easyasync;
+
+import java.lang.reflect.Method;
+
+/**
+ * Immutable description of a {@link gr.sieben.easyasync.BackgroundJob} annotated method.
+ * It is created once per class and shared by all the instances of the class.
+ */
+final class JobDescriptor {
+    final String id;
+    final BackgroundJob annotation;
+    final String methodName;
+    final Method annotatedMethod; //null when a generated dispatcher is used
+    final EasyAsyncDispatcher dispatcher; //null when reflection is used
+    final int dispatchIndex;
+    final AnnotatedMethodType methodType;
+    final RetryPolicy retryPolicy; //null when the background job is not retried
+
+    JobDescriptor(BackgroundJob annotation, String methodName, Method annotatedMethod, EasyAsyncDispatcher dispatcher,
+                  int dispatchIndex, AnnotatedMethodType methodType) {
+        this.id = annotation.id();
+        this.annotation = annotation;
+        this.methodName = methodName;
+        this.annotatedMethod = annotatedMethod;
+        this.dispatcher = dispatcher;
+        this.dispatchIndex = dispatchIndex;
+        this.methodType = methodType;
+        this.retryPolicy = RetryPolicy.create(annotation);
+    }
+}
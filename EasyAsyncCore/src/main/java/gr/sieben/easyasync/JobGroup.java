@@ -0,0 +1,212 @@
+package gr.sieben.easyasync;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A group of background jobs that share a maximum concurrency and a bounded queue, see
+ * {@linkplain gr.sieben.easyasync.EasyAsyncCore#setGroupLimit(String, int, int, OverflowPolicy)}. A run holds a slot of the
+ * group while its background phase runs on the executor of its background job, the rest wait in the queue of the group
+ * in order of priority and the {@link gr.sieben.easyasync.OverflowPolicy} decides what happens when the queue is full.
+ * Like in {@link gr.sieben.easyasync.PriorityExecutor} the priority of a waiting run grows by one level for every aging
+ * interval it waits. A run that times out gives its slot up right away, even if its thread never returns.
+ */
+class JobGroup {
+
+    //a run that waits for a slot of the group
+    private static final class Waiting {
+        final EasyAsyncTask task;
+        final Executor executor;
+        final int priority;
+        final long enqueuedAt = System.nanoTime();
+        final AtomicBoolean released = new AtomicBoolean(); //the slot is freed once, by the timeout or by the return
+
+        Waiting(EasyAsyncTask task, Executor executor, int priority) {
+            this.task = task;
+            this.executor = executor;
+            this.priority = priority;
+        }
+    }
+
+    //all guarded by this
+    private int maxConcurrency;
+    private int maxQueued;
+    private OverflowPolicy policy;
+    private int running;
+    private final LinkedList<Waiting> queue = new LinkedList<Waiting>(); //in order of arrival
+    private final Map<EasyAsyncTask, Waiting> holders = new HashMap<EasyAsyncTask, Waiting>(); //the runs holding a slot
+
+    private volatile long agingInterval;
+
+    JobGroup(int maxConcurrency, int maxQueued, OverflowPolicy policy, long agingInterval) {
+        this.agingInterval = agingInterval;
+        configure(maxConcurrency, maxQueued, policy);
+    }
+
+    /**
+     * Sets the aging interval of the waiting runs
+     * @param agingInterval The time in milliseconds that raises the priority of a waiting run by one level, zero or
+     *                      negative to disable the aging
+     */
+    void setAgingInterval(long agingInterval) {
+        this.agingInterval = agingInterval;
+    }
+
+    /**
+     * Changes the limits of the group, the runs that already hold a slot are not affected
+     */
+    void configure(int maxConcurrency, int maxQueued, OverflowPolicy policy) {
+        Waiting next;
+        synchronized (this) {
+            this.maxConcurrency = Math.max(1, maxConcurrency);
+            this.maxQueued = Math.max(0, maxQueued);
+            this.policy = policy == null ? OverflowPolicy.REJECT : policy;
+            next = takeNextLocked();
+        }
+        //a raised limit lets the waiting runs in
+        while(next != null) {
+            dispatch(next);
+            synchronized (this) {
+                next = takeNextLocked();
+            }
+        }
+    }
+
+    /**
+     * Submits the background phase of a run to its executor when the group has a free slot, otherwise queues it
+     * or applies the overflow policy
+     * @param task The run
+     * @param executor The executor of the background job
+     * @param priority The priority of the run
+     */
+    void submit(EasyAsyncTask task, Executor executor, int priority) {
+        Waiting submitted = new Waiting(task, executor, priority);
+        Waiting dropped = null;
+        boolean dispatch = false;
+        synchronized (this) {
+            purgeCancelledLocked();
+            if(running < maxConcurrency && queue.isEmpty()) {
+                running++;
+                holders.put(task, submitted);
+                dispatch = true;
+            } else if(queue.size() < maxQueued) {
+                queue.add(submitted);
+            } else if(policy == OverflowPolicy.DROP_OLDEST && !queue.isEmpty()) {
+                dropped = queue.removeFirst();
+                queue.add(submitted);
+            } else if(policy == OverflowPolicy.REPLACE_SAME_ID) {
+                dropped = submitted;
+                for(int i = 0; i < queue.size(); i++) {
+                    if(queue.get(i).task.getId().equals(task.getId())) {
+                        dropped = queue.set(i, submitted);
+                        break;
+                    }
+                }
+            } else {
+                dropped = submitted;
+            }
+        }
+        if(dispatch)
+            dispatch(submitted);
+        if(dropped != null)
+            dropped.task.cancel(false);
+    }
+
+    /**
+     * The number of the runs that wait for a slot of the group
+     * @return The depth of the queue
+     */
+    synchronized int getQueueDepth() {
+        purgeCancelledLocked();
+        return queue.size();
+    }
+
+    /**
+     * The number of the runs that hold a slot of the group
+     * @return The number of the running background phases
+     */
+    synchronized int getRunningCount() {
+        return running;
+    }
+
+    /**
+     * Frees the slot of a run whose thread may never return, called in the main thread when the run times out
+     * @param task The run
+     */
+    void timedOut(EasyAsyncTask task) {
+        Waiting holder;
+        synchronized (this) {
+            holder = holders.get(task);
+        }
+        if(holder != null)
+            release(holder);
+    }
+
+    //runs the background phase on the executor of its background job and frees the slot when it returns
+    private void dispatch(final Waiting waiting) {
+        waiting.executor.execute(new PriorityExecutor.PrioritizedRunnable(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    waiting.task.run();
+                } finally {
+                    release(waiting);
+                }
+            }
+        }, waiting.priority));
+    }
+
+    //frees the slot of the run, unless its timeout has already freed it, and hands it to the next waiting run
+    private void release(Waiting holder) {
+        if(!holder.released.compareAndSet(false, true))
+            return;
+        Waiting next;
+        synchronized (this) {
+            running--;
+            if(holders.get(holder.task) == holder)
+                holders.remove(holder.task);
+            next = takeNextLocked();
+        }
+        if(next != null)
+            dispatch(next);
+    }
+
+    //takes the waiting run of the highest effective priority, the oldest first, if there is a free slot
+    private Waiting takeNextLocked() {
+        purgeCancelledLocked();
+        if(running >= maxConcurrency || queue.isEmpty())
+            return null;
+        Waiting next = null;
+        long nextPriority = Long.MIN_VALUE;
+        long now = System.nanoTime();
+        long interval = agingInterval;
+        for(Waiting waiting : queue) {
+            long effective = waiting.priority;
+            if(interval > 0)
+                effective += TimeUnit.NANOSECONDS.toMillis(now - waiting.enqueuedAt) / interval;
+            if(next == null || effective > nextPriority
+                    || (effective == nextPriority && waiting.enqueuedAt < next.enqueuedAt)) {
+                next = waiting;
+                nextPriority = effective;
+            }
+        }
+        queue.remove(next);
+        running++;
+        holders.put(next.task, next);
+        return next;
+    }
+
+    //runs that have been cancelled while waiting never run, so they give their place up
+    private void purgeCancelledLocked() {
+        Iterator<Waiting> iterator = queue.iterator();
+        while(iterator.hasNext()) {
+            if(iterator.next().task.isCancelled())
+                iterator.remove();
+        }
+    }
+}
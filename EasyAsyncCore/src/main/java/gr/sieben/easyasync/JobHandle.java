@@ -0,0 +1,346 @@
+package gr.sieben.easyasync;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The result of a request of a background job, see {@linkplain gr.sieben.easyasync.EasyAsyncCore#submit(String, Object)},
+ * or of a continuation of it. The result is composed without blocking with {@link #then(Continuation, java.util.concurrent.Executor)},
+ * {@link #combine(JobHandle, Combiner, java.util.concurrent.Executor)} and {@link #race(JobHandle[])}, each continuation
+ * runs on the executor that is passed to it.
+ * <p>
+ * A handle of a run completes as soon as the background phase of the run has returned, in the background thread, before
+ * {@link gr.sieben.easyasync.EasyAsyncCallbacks#AFTER_EXECUTE} is delivered. A continuation on a background executor therefore
+ * does not wait for the main thread. A cached result completes the handle in the main thread right away. A run that is cancelled
+ * completes the handle with a {@link java.util.concurrent.CancellationException}. A run that fails completes it with the exception
+ * of {@link gr.sieben.easyasync.EasyAsyncCallbacks#ON_BACKGROUND} and a run that times out with a
+ * {@link java.util.concurrent.TimeoutException}, which {@link #get()} throws as the cause of an
+ * {@link java.util.concurrent.ExecutionException}. An exception of a continuation completes the handles that depend on it with
+ * that exception.
+ * </p>
+ * <pre><code>
+ * EasyAsync.getInstance().&lt;Profile&gt;submit("profile")
+ *         .then(new JobHandle.Continuation&lt;Profile, Avatar&gt;() {
+ *             public Avatar apply(Profile profile) throws Exception {
+ *                 return decode(profile.avatarBytes());
+ *             }
+ *         }, EasyAsync.getInstance().getExecutor(ExecutorType.PARALLEL))
+ *         .whenComplete(new JobHandle.Callback&lt;Avatar&gt;() {
+ *             public void onComplete(Avatar avatar, Throwable error) {
+ *                 if(error == null)
+ *                     imageView.setImageBitmap(avatar.bitmap());
+ *             }
+ *         }, EasyAsync.getInstance().getMainThreadExecutor());
+ * </code></pre>
+ * The handle is a {@link java.util.concurrent.Future}, but never call {@link #get()} in the main thread.
+ * @param <R> The type of the result
+ */
+public final class JobHandle<R> implements Future<R>, JobListener {
+
+    /**
+     * A continuation of a result
+     * @param <R> The type of the result
+     * @param <T> The type of the result of the continuation
+     */
+    public interface Continuation<R, T> {
+        T apply(R result) throws Exception;
+    }
+
+    /**
+     * A continuation of the results of two handles
+     * @param <A> The type of the result of the first handle
+     * @param <B> The type of the result of the second handle
+     * @param <T> The type of the result of the continuation
+     */
+    public interface Combiner<A, B, T> {
+        T combine(A first, B second) throws Exception;
+    }
+
+    /**
+     * Receives the outcome of a handle
+     * @param <R> The type of the result
+     */
+    public interface Callback<R> {
+        /**
+         * Invoked once when the handle has completed
+         * @param result The result or null if the handle has failed
+         * @param error Null if the handle has succeeded, a {@link java.util.concurrent.CancellationException} if the run
+         *              has been cancelled, a {@link java.util.concurrent.TimeoutException} if it has timed out, or the
+         *              exception of the run or of a continuation
+         */
+        void onComplete(R result, Throwable error);
+    }
+
+    /**
+     * Runs the continuations in the thread that completes the handle, for example the background thread of the run.
+     * Use it only for continuations that return quickly.
+     */
+    public static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable runnable) {
+            runnable.run();
+        }
+    };
+
+    //guarded by this
+    private boolean done;
+    private R result;
+    private Throwable error;
+    private List<Runnable> continuations;
+
+    JobHandle() {}
+
+    /**
+     * Invoked in the main thread with the last callback of a cached result, a batched run or a run that the handle
+     * has not been attached to in the background
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public void onJobFinished(String id, EasyAsyncCallbacks callbacks, EasyAsyncResult args) {
+        if(callbacks == EasyAsyncCallbacks.AFTER_EXECUTE)
+            complete((R) args.getResult(), null);
+        else if(callbacks == EasyAsyncCallbacks.TIMED_OUT)
+            complete(null, new TimeoutException("The background job " + id + " has timed out"));
+        else if(args.getError() != null)
+            complete(null, args.getError());
+        else
+            complete(null, new CancellationException("The background job " + id + " has been cancelled"));
+    }
+
+    //completes the handle once and runs the continuations, returns false if it has already completed
+    boolean complete(R result, Throwable error) {
+        List<Runnable> toRun;
+        synchronized (this) {
+            if(done)
+                return false;
+            done = true;
+            this.result = result;
+            this.error = error;
+            toRun = continuations;
+            continuations = null;
+            notifyAll();
+        }
+        if(toRun != null) {
+            for(int i = 0; i < toRun.size(); i++) {
+                toRun.get(i).run();
+            }
+        }
+        return true;
+    }
+
+    //runs the continuation when the handle completes, in the calling thread if it has already completed
+    private void onDone(Runnable continuation) {
+        synchronized (this) {
+            if(!done) {
+                if(continuations == null)
+                    continuations = new ArrayList<Runnable>(1);
+                continuations.add(continuation);
+                return;
+            }
+        }
+        continuation.run();
+    }
+
+    /**
+     * Invokes the callback on the executor when the handle has completed
+     * @param callback The callback
+     * @param executor The executor that the callback is invoked on
+     */
+    public void whenComplete(final Callback<? super R> callback, final Executor executor) {
+        onDone(new Runnable() {
+            @Override
+            public void run() {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        R value;
+                        Throwable failure;
+                        synchronized (JobHandle.this) {
+                            value = result;
+                            failure = error;
+                        }
+                        callback.onComplete(value, failure);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Applies the continuation to the result on the executor. If this handle fails the continuation is skipped and
+     * the returned handle fails with the same exception.
+     * @param continuation The continuation
+     * @param executor The executor that the continuation runs on
+     * @param <T> The type of the result of the continuation
+     * @return The handle of the result of the continuation
+     */
+    public <T> JobHandle<T> then(final Continuation<? super R, ? extends T> continuation, Executor executor) {
+        final JobHandle<T> next = new JobHandle<T>();
+        whenComplete(new Callback<R>() {
+            @Override
+            public void onComplete(R value, Throwable failure) {
+                if(failure != null) {
+                    next.complete(null, failure);
+                    return;
+                }
+                T mapped;
+                try {
+                    mapped = continuation.apply(value);
+                } catch (Exception e) {
+                    next.complete(null, e);
+                    return;
+                }
+                next.complete(mapped, null);
+            }
+        }, executor);
+        return next;
+    }
+
+    /**
+     * Combines the result with the result of another handle on the executor when both have completed. If one of them
+     * fails the returned handle fails with its exception.
+     * @param other The other handle
+     * @param combiner The continuation of both results
+     * @param executor The executor that the continuation runs on
+     * @param <U> The type of the result of the other handle
+     * @param <T> The type of the result of the continuation
+     * @return The handle of the result of the continuation
+     */
+    public <U, T> JobHandle<T> combine(final JobHandle<U> other, final Combiner<? super R, ? super U, ? extends T> combiner,
+                                       final Executor executor) {
+        final JobHandle<T> next = new JobHandle<T>();
+        final AtomicInteger remaining = new AtomicInteger(2);
+        Runnable join = new Runnable() {
+            @Override
+            public void run() {
+                if(remaining.decrementAndGet() != 0)
+                    return;
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        Throwable failure = failureOf(JobHandle.this);
+                        if(failure == null)
+                            failure = failureOf(other);
+                        if(failure != null) {
+                            next.complete(null, failure);
+                            return;
+                        }
+                        T combined;
+                        try {
+                            combined = combiner.combine(JobHandle.this.resultNow(), other.resultNow());
+                        } catch (Exception e) {
+                            next.complete(null, e);
+                            return;
+                        }
+                        next.complete(combined, null);
+                    }
+                });
+            }
+        };
+        onDone(join);
+        other.onDone(join);
+        return next;
+    }
+
+    /**
+     * Completes with the result of the first handle that succeeds. It fails with the exception of the last handle
+     * only when all of them fail.
+     * @param handles The handles to race, at least one
+     * @param <R> The type of the result
+     * @return The handle of the first result
+     */
+    public static <R> JobHandle<R> race(JobHandle<? extends R>... handles) {
+        if(handles.length == 0)
+            throw new IllegalArgumentException("You have to specify at least one handle");
+        final JobHandle<R> first = new JobHandle<R>();
+        final AtomicInteger remaining = new AtomicInteger(handles.length);
+        for(final JobHandle<? extends R> handle : handles) {
+            handle.onDone(new Runnable() {
+                @Override
+                public void run() {
+                    Throwable failure = failureOf(handle);
+                    if(failure == null)
+                        first.complete(handle.resultNow(), null);
+                    else if(remaining.decrementAndGet() == 0)
+                        first.complete(null, failure);
+                }
+            });
+        }
+        return first;
+    }
+
+    private static Throwable failureOf(JobHandle<?> handle) {
+        synchronized (handle) {
+            return handle.error;
+        }
+    }
+
+    //the result of a completed handle
+    private synchronized R resultNow() {
+        return result;
+    }
+
+    /**
+     * Completes the handle as cancelled if it has not completed yet. The run of the background job is not cancelled,
+     * use {@linkplain gr.sieben.easyasync.EasyAsyncCore#cancel(String)} for that.
+     * @param mayInterruptIfRunning Ignored
+     * @return True if the handle has been cancelled
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return complete(null, new CancellationException("The handle has been cancelled"));
+    }
+
+    /**
+     * Whether the handle or its run has been cancelled. A run that has failed or timed out is not cancelled.
+     * @return True if the handle has completed with a {@link java.util.concurrent.CancellationException}
+     */
+    @Override
+    public synchronized boolean isCancelled() {
+        return done && error instanceof CancellationException;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return done;
+    }
+
+    @Override
+    public synchronized R get() throws InterruptedException, ExecutionException {
+        while(!done) {
+            wait();
+        }
+        return report();
+    }
+
+    @Override
+    public synchronized R get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while(!done) {
+            long remaining = deadline - System.nanoTime();
+            if(remaining <= 0)
+                throw new TimeoutException();
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return report();
+    }
+
+    //returns the result of a completed handle or throws its exception, guarded by this
+    private R report() throws ExecutionException {
+        if(error instanceof CancellationException) {
+            CancellationException cancelled = new CancellationException(error.getMessage());
+            cancelled.initCause(error);
+            throw cancelled;
+        }
+        if(error != null)
+            throw new ExecutionException(error);
+        return result;
+    }
+}
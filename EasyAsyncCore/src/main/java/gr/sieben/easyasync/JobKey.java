@@ -0,0 +1,35 @@
+package gr.sieben.easyasync;
+
+/**
+ * Immutable key of a run of a background job, the job id and an optional caller supplied key.
+ * Runs with equal keys are deduplicated and share their cached result.
+ */
+final class JobKey {
+    final String id;
+    final Object key; //null for the runs that are started without a key
+
+    JobKey(String id, Object key) {
+        this.id = id;
+        this.key = key;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if(this == o)
+            return true;
+        if(!(o instanceof JobKey))
+            return false;
+        JobKey other = (JobKey) o;
+        return id.equals(other.id) && (key == null ? other.key == null : key.equals(other.key));
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * id.hashCode() + (key == null ? 0 : key.hashCode());
+    }
+
+    @Override
+    public String toString() {
+        return key == null ? id : id + "[" + key + "]";
+    }
+}
@@ -0,0 +1,19 @@
+package gr.sieben.easyasync;
+
+/**
+ * Listener of a single request of a background job, see {@linkplain gr.sieben.easyasync.EasyAsyncCore#start(String, Object, JobListener)}.
+ * All the requests that are attached to the same run receive the same result. It is invoked in the <u>main</u> thread,
+ * after the annotated method.
+ */
+public interface JobListener {
+
+    /**
+     * Invoked when the run that the request is attached to has finished
+     * @param id The id of the background job
+     * @param callbacks {@link gr.sieben.easyasync.EasyAsyncCallbacks#AFTER_EXECUTE} when the run has completed or
+     *                  {@link gr.sieben.easyasync.EasyAsyncCallbacks#CANCELLED} when it has been cancelled or
+     *                  {@link gr.sieben.easyasync.EasyAsyncCallbacks#TIMED_OUT} when it has timed out
+     * @param args The shared arguments of the run, do not keep a reference to them
+     */
+    public void onJobFinished(String id, EasyAsyncCallbacks callbacks, EasyAsyncResult args);
+}
@@ -0,0 +1,122 @@
+package gr.sieben.easyasync;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The metrics of one background job that are recorded by a {@link gr.sieben.easyasync.JobMetricsRecorder}.
+ * The histograms and the counters are updated without locks while the background job runs.
+ */
+public final class JobMetrics {
+
+    private final String id;
+    private final LatencyHistogram queueWait = new LatencyHistogram();
+    private final LatencyHistogram background = new LatencyHistogram();
+    private final LatencyHistogram mainThread = new LatencyHistogram();
+    final AtomicLong cancelled = new AtomicLong();
+    final AtomicLong timedOut = new AtomicLong();
+    final AtomicLong errors = new AtomicLong();
+    final AtomicLong retries = new AtomicLong();
+    final AtomicLong cacheHits = new AtomicLong();
+    final AtomicLong cacheMisses = new AtomicLong();
+
+    JobMetrics(String id) {
+        this.id = id;
+    }
+
+    /**
+     * Getter for the id of the background job
+     * @return The id of the annotated method
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Gets the times that the runs have waited in the queue of their executor
+     * @return The histogram of the queue wait
+     */
+    public LatencyHistogram getQueueWait() {
+        return queueWait;
+    }
+
+    /**
+     * Gets the durations of {@link gr.sieben.easyasync.EasyAsyncCallbacks#ON_BACKGROUND}
+     * @return The histogram of the background phase
+     */
+    public LatencyHistogram getBackground() {
+        return background;
+    }
+
+    /**
+     * Gets the times spent in the main thread by {@link gr.sieben.easyasync.EasyAsyncCallbacks#BEFORE_EXECUTE} and
+     * the last callback of each run
+     * @return The histogram of the main thread callbacks
+     */
+    public LatencyHistogram getMainThread() {
+        return mainThread;
+    }
+
+    /**
+     * Gets the number of the runs that have been cancelled, including the ones that have timed out
+     * @return The cancellation count
+     */
+    public long getCancelledCount() {
+        return cancelled.get();
+    }
+
+    /**
+     * Gets the number of the runs that have been cancelled because their timeout, or the timeout of a run that they
+     * depend on, has passed
+     * @return The timeout count
+     */
+    public long getTimedOutCount() {
+        return timedOut.get();
+    }
+
+    /**
+     * Gets the number of the runs whose background phase has thrown an exception
+     * @return The error count
+     */
+    public long getErrorCount() {
+        return errors.get();
+    }
+
+    /**
+     * Gets the number of the failed attempts that have been retried
+     * @return The retry count
+     */
+    public long getRetryCount() {
+        return retries.get();
+    }
+
+    /**
+     * Gets the number of the requests that have been served by a fresh cached result
+     * @return The cache hit count
+     */
+    public long getCacheHitCount() {
+        return cacheHits.get();
+    }
+
+    /**
+     * Gets the number of the requests that have found no fresh cached result
+     * @return The cache miss count
+     */
+    public long getCacheMissCount() {
+        return cacheMisses.get();
+    }
+
+    /**
+     * Clears the histograms and the counters
+     */
+    public void reset() {
+        queueWait.reset();
+        background.reset();
+        mainThread.reset();
+        cancelled.set(0);
+        timedOut.set(0);
+        errors.set(0);
+        retries.set(0);
+        cacheHits.set(0);
+        cacheMisses.set(0);
+    }
+}
@@ -0,0 +1,72 @@
+package gr.sieben.easyasync;
+
+/**
+ * Listener of the metrics of the background jobs, see {@linkplain gr.sieben.easyasync.EasyAsyncCore#setMetricsListener(JobMetricsListener)}.
+ * It is invoked in the thread where each event happens, the <u>main</u> thread or a <u>background</u> thread, so it must
+ * be thread safe and return quickly. The times are passed as primitives, nothing is allocated for an event.
+ * {@link gr.sieben.easyasync.JobMetricsRecorder} records the events in fixed bucket histograms per background job.
+ */
+public interface JobMetricsListener {
+
+    /**
+     * Invoked in the background thread when a run leaves the queue of its executor
+     * @param id The id of the background job
+     * @param nanos The time that the run has waited in the queue in nanoseconds
+     */
+    public void onQueueWait(String id, long nanos);
+
+    /**
+     * Invoked in the background thread when {@link gr.sieben.easyasync.EasyAsyncCallbacks#ON_BACKGROUND} has returned,
+     * normally or by giving up after it has been cancelled
+     * @param id The id of the background job
+     * @param nanos The duration of the background phase in nanoseconds
+     */
+    public void onBackground(String id, long nanos);
+
+    /**
+     * Invoked in the main thread after {@link gr.sieben.easyasync.EasyAsyncCallbacks#BEFORE_EXECUTE} or the last callback
+     * of a run has been delivered, including the listeners of the run and the replay of a cached result
+     * @param id The id of the background job
+     * @param callbacks The callback that has been delivered
+     * @param nanos The time spent in the main thread in nanoseconds
+     */
+    public void onMainThreadCallback(String id, EasyAsyncCallbacks callbacks, long nanos);
+
+    /**
+     * Invoked in the main thread when a run has finished without completing
+     * @param id The id of the background job
+     * @param timedOut True if the run has been cancelled because its timeout, or the timeout of a run that it depends on,
+     * has passed
+     */
+    public void onCancelled(String id, boolean timedOut);
+
+    /**
+     * Invoked in the background thread when {@link gr.sieben.easyasync.EasyAsyncCallbacks#ON_BACKGROUND} has thrown an exception
+     * @param id The id of the background job
+     * @param error The exception that is thrown
+     */
+    public void onError(String id, Throwable error);
+
+    /**
+     * Invoked in the background thread when {@link gr.sieben.easyasync.EasyAsyncCallbacks#ON_BACKGROUND} has thrown an exception
+     * and the run is retried, see {@link gr.sieben.easyasync.BackgroundJob#maxAttempts()}. The last failed attempt is
+     * reported with {@linkplain #onError(String, Throwable)} instead.
+     * @param id The id of the background job
+     * @param attempt The number of the attempt that has failed, starting from 1
+     * @param delayMillis The delay before the next attempt in milliseconds
+     * @param error The exception that is thrown
+     */
+    public void onRetry(String id, int attempt, long delayMillis, Throwable error);
+
+    /**
+     * Invoked when a request has been served by a fresh cached result
+     * @param id The id of the background job
+     */
+    public void onCacheHit(String id);
+
+    /**
+     * Invoked when a request has found no fresh cached result
+     * @param id The id of the background job
+     */
+    public void onCacheMiss(String id);
+}
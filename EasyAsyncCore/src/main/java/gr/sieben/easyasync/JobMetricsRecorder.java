@@ -0,0 +1,102 @@
+package gr.sieben.easyasync;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link gr.sieben.easyasync.JobMetricsListener} that records the metrics of each background job in
+ * fixed bucket histograms and counters. Only the first event of a background job allocates its
+ * {@link gr.sieben.easyasync.JobMetrics}, the rest are recorded without locks or allocations.
+ * <pre><code>
+ * JobMetricsRecorder recorder = new JobMetricsRecorder();
+ * EasyAsync.getInstance().setMetricsListener(recorder);
+ * //...
+ * double p99 = recorder.getMetrics("demoid").getBackground().getPercentileMillis(99);
+ * </code></pre>
+ */
+public class JobMetricsRecorder implements JobMetricsListener {
+
+    private final ConcurrentHashMap<String, JobMetrics> metrics = new ConcurrentHashMap<String, JobMetrics>();
+
+    /**
+     * Gets the metrics of a background job
+     * @param id The id of the background job
+     * @return The metrics or null if nothing has been recorded for it
+     */
+    public JobMetrics getMetrics(String id) {
+        return metrics.get(id);
+    }
+
+    /**
+     * Gets the metrics of all the background jobs that have recorded something
+     * @return The metrics, a live view
+     */
+    public Collection<JobMetrics> getAllMetrics() {
+        return Collections.unmodifiableCollection(metrics.values());
+    }
+
+    /**
+     * Clears the metrics of all the background jobs
+     */
+    public void reset() {
+        for(JobMetrics jobMetrics : metrics.values()) {
+            jobMetrics.reset();
+        }
+    }
+
+    //gets the metrics of the background job, creating them on its first event
+    private JobMetrics metricsOf(String id) {
+        JobMetrics jobMetrics = metrics.get(id);
+        if(jobMetrics == null) {
+            JobMetrics created = new JobMetrics(id);
+            jobMetrics = metrics.putIfAbsent(id, created);
+            if(jobMetrics == null)
+                jobMetrics = created;
+        }
+        return jobMetrics;
+    }
+
+    @Override
+    public void onQueueWait(String id, long nanos) {
+        metricsOf(id).getQueueWait().record(nanos);
+    }
+
+    @Override
+    public void onBackground(String id, long nanos) {
+        metricsOf(id).getBackground().record(nanos);
+    }
+
+    @Override
+    public void onMainThreadCallback(String id, EasyAsyncCallbacks callbacks, long nanos) {
+        metricsOf(id).getMainThread().record(nanos);
+    }
+
+    @Override
+    public void onCancelled(String id, boolean timedOut) {
+        JobMetrics jobMetrics = metricsOf(id);
+        jobMetrics.cancelled.incrementAndGet();
+        if(timedOut)
+            jobMetrics.timedOut.incrementAndGet();
+    }
+
+    @Override
+    public void onError(String id, Throwable error) {
+        metricsOf(id).errors.incrementAndGet();
+    }
+
+    @Override
+    public void onRetry(String id, int attempt, long delayMillis, Throwable error) {
+        metricsOf(id).retries.incrementAndGet();
+    }
+
+    @Override
+    public void onCacheHit(String id) {
+        metricsOf(id).cacheHits.incrementAndGet();
+    }
+
+    @Override
+    public void onCacheMiss(String id) {
+        metricsOf(id).cacheMisses.incrementAndGet();
+    }
+}
@@ -0,0 +1,122 @@
+package gr.sieben.easyasync;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of durations with fixed buckets of powers of two microseconds. Bucket 0 holds the durations below one
+ * microsecond, bucket i the durations from 2<sup>i-1</sup> up to 2<sup>i</sup> microseconds and the last bucket
+ * everything longer. Recording is lock free and allocates nothing, so it can be called from any thread.
+ * The values that are read while recording is in progress may be off by the values being recorded.
+ */
+public final class LatencyHistogram {
+
+    /**
+     * The number of the buckets, the last one starts at about 18 minutes
+     */
+    public static final int BUCKET_COUNT = 32;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * Records a duration
+     * @param nanos The duration in nanoseconds, negative durations are recorded as zero
+     */
+    public void record(long nanos) {
+        if(nanos < 0)
+            nanos = 0;
+        buckets.incrementAndGet(bucketOf(nanos));
+        count.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+        long max;
+        while(nanos > (max = maxNanos.get()) && !maxNanos.compareAndSet(max, nanos)) {
+            //another thread has raised the maximum in the meantime, check again
+        }
+    }
+
+    //the index of the bucket of a duration, the number of the significant bits of the microseconds
+    private static int bucketOf(long nanos) {
+        int bucket = 64 - Long.numberOfLeadingZeros(nanos / 1000);
+        return bucket < BUCKET_COUNT ? bucket : BUCKET_COUNT - 1;
+    }
+
+    /**
+     * Gets the number of the recorded durations
+     * @return The count
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Gets the number of the recorded durations of a bucket
+     * @param bucket The index of the bucket, from 0 to {@link #BUCKET_COUNT} - 1
+     * @return The count of the bucket
+     */
+    public long getBucketCount(int bucket) {
+        return buckets.get(bucket);
+    }
+
+    /**
+     * Gets the exclusive upper bound of a bucket
+     * @param bucket The index of the bucket, from 0 to {@link #BUCKET_COUNT} - 1
+     * @return The upper bound in nanoseconds or {@link Long#MAX_VALUE} for the last bucket
+     */
+    public static long getBucketUpperBoundNanos(int bucket) {
+        return bucket == BUCKET_COUNT - 1 ? Long.MAX_VALUE : (1L << bucket) * 1000;
+    }
+
+    /**
+     * Gets the average of the recorded durations
+     * @return The average in milliseconds or zero if nothing has been recorded
+     */
+    public double getAverageMillis() {
+        long current = count.get();
+        return current == 0 ? 0 : totalNanos.get() / 1e6 / current;
+    }
+
+    /**
+     * Gets the longest recorded duration
+     * @return The maximum in milliseconds
+     */
+    public double getMaxMillis() {
+        return maxNanos.get() / 1e6;
+    }
+
+    /**
+     * Gets an upper estimate of a percentile, the upper bound of the bucket that holds it but never more than the maximum
+     * @param percentile The percentile from 0 to 100, for example 99
+     * @return The estimate in milliseconds or zero if nothing has been recorded
+     */
+    public double getPercentileMillis(double percentile) {
+        long total = 0;
+        for(int i = 0; i < BUCKET_COUNT; i++) {
+            total += buckets.get(i);
+        }
+        if(total == 0)
+            return 0;
+        long rank = (long) Math.ceil(total * Math.min(Math.max(percentile, 0), 100) / 100);
+        long seen = 0;
+        for(int i = 0; i < BUCKET_COUNT; i++) {
+            seen += buckets.get(i);
+            if(seen >= rank && seen > 0)
+                return Math.min(getBucketUpperBoundNanos(i), maxNanos.get()) / 1e6;
+        }
+        return getMaxMillis();
+    }
+
+    /**
+     * Clears the recorded durations
+     */
+    public void reset() {
+        for(int i = 0; i < BUCKET_COUNT; i++) {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        totalNanos.set(0);
+        maxNanos.set(0);
+    }
+}
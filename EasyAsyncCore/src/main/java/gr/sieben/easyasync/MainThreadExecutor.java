@@ -0,0 +1,51 @@
+package gr.sieben.easyasync;
+
+import java.util.concurrent.Executor;
+
+/**
+ * The main thread of the platform, where {@link gr.sieben.easyasync.EasyAsyncCallbacks#BEFORE_EXECUTE}, the progress and
+ * the last callback of each run are invoked and where the library must be called from. The runnables must run one at a
+ * time, in the order they are due. On android it is the main looper, on the JVM an {@link gr.sieben.easyasync.EventLoop}.
+ */
+public interface MainThreadExecutor extends Executor {
+
+    /**
+     * Runs the runnable in the main thread after the runnables that are already due
+     * @param runnable The runnable to run
+     */
+    @Override
+    public void execute(Runnable runnable);
+
+    /**
+     * Runs the runnable in the main thread when the delay has passed
+     * @param runnable The runnable to run
+     * @param delayMillis The delay in milliseconds
+     */
+    public void executeDelayed(Runnable runnable, long delayMillis);
+
+    /**
+     * Runs the runnable in the main thread at the next frame, or after the interval of a frame where there are no
+     * frames. Must be called in the main thread.
+     * @param runnable The runnable to run
+     */
+    public void executeOnNextFrame(Runnable runnable);
+
+    /**
+     * Runs the runnable in the main thread once there are no messages that are due, so that it does not delay
+     * the work that is already queued. Must be called in the main thread.
+     * @param runnable The runnable to run
+     */
+    public void executeWhenIdle(Runnable runnable);
+
+    /**
+     * Removes the pending executions of the runnable
+     * @param runnable The runnable that has been executed
+     */
+    public void remove(Runnable runnable);
+
+    /**
+     * The clock of the timeouts, the progress interval and the time to live of the cached results
+     * @return The time in milliseconds since an arbitrary origin, it never goes back
+     */
+    public long elapsedMillis();
+}
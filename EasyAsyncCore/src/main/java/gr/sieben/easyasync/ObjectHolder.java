@@ -0,0 +1,212 @@
+package gr.sieben.easyasync;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Holder that is used and cached and holds all the necessary information
+ */
+class ObjectHolder {
+
+    /**
+     * Immutable snapshot of the target activity, the annotated method and its type. It is replaced as a whole
+     * so that a background thread never sees a half updated holder during a configuration change.
+     */
+    static final class Binding {
+        final TargetReference target;
+        final JobDescriptor job;
+
+        Binding(TargetReference target, JobDescriptor job) {
+            this.target = target;
+            this.job = job;
+        }
+    }
+
+    /**
+     * Reference to a registered target that is shared by the bindings of its annotated methods. A weakly held target
+     * is enqueued when it has been collected, so that the holders that are still bound to it are cleared.
+     */
+    static final class TargetReference extends WeakReference<Object> {
+        private final Object strongTarget; //keeps the target reachable when it is not weakly held
+        final List<ObjectHolder> holders = new ArrayList<ObjectHolder>(); //guarded by the registry lock
+
+        /**
+         * @param target The registered target
+         * @param queue The queue of the collected targets or null to hold the target strongly
+         */
+        TargetReference(Object target, ReferenceQueue<Object> queue) {
+            super(target, queue);
+            strongTarget = queue == null ? target : null;
+        }
+    }
+
+    private volatile Binding binding;
+    //the last binding before the target was detached, used by the background jobs that are still running
+    private volatile Binding detachedBinding;
+
+    /**
+     * Binds the holder to the target activity and its annotated method
+     * @param binding The new binding
+     */
+    public void bind(Binding binding) {
+        this.job = binding.job;
+        this.binding = binding;
+        detachedBinding = null;
+    }
+
+    /**
+     * Clears the binding of the target activity. This has to be done in a configuration change.
+     */
+    public void unbind() {
+        Binding current = binding;
+        if(current != null)
+            detachedBinding = current;
+        binding = null;
+    }
+
+    /**
+     * Clears the bindings to a target that has been collected
+     * @param target The reference of the collected target
+     */
+    public void clear(TargetReference target) {
+        Binding current = binding;
+        if(current != null && current.target == target)
+            binding = null;
+        current = detachedBinding;
+        if(current != null && current.target == target)
+            detachedBinding = null;
+    }
+
+    /**
+     * Gets the current binding of the holder
+     * @param includeDetached True if the last binding should be returned when the target is detached
+     * @return The binding or null if there is none
+     */
+    public Binding getBinding(boolean includeDetached) {
+        Binding current = binding;
+        if(current == null && includeDetached)
+            return detachedBinding;
+        return current;
+    }
+
+    /**
+     * Gets the name of the annotated method that will be invoked.
+     * @return The name of the annotated method
+     */
+    public String getMethodName() {
+        Binding current = binding;
+        return current == null ? null : current.job.methodName;
+    }
+
+    private EasyAsyncTask asyncTask;
+
+    /**
+     * Getter for the AsyncTask that is connected to the specific background job.
+     * @return The related EasyAsyncTask
+     */
+    public EasyAsyncTask getAsyncTask() {
+        return asyncTask;
+    }
+
+    /**
+     * Setter for the AsyncTask that is connected to the specific background job.
+     * @param asyncTask The related EasyAsyncTask
+     */
+    public void setAsyncTask(EasyAsyncTask asyncTask) {
+        this.asyncTask = asyncTask;
+    }
+
+    /**
+     * Getter for the target activity that the annotated methods reside
+     * @return The Activity as an object
+     */
+    public Object getTarget() {
+        Binding current = binding;
+        return current == null ? null : current.target.get();
+    }
+
+    /**
+     * Getter for the annotated method type as an enumerator
+     * @return The method type
+     */
+    public AnnotatedMethodType getMethodType() {
+        Binding current = binding;
+        return current == null ? null : current.job.methodType;
+    }
+
+    /**
+     * The runs that are started with a caller supplied key and have not completed yet. Accessed in the main thread.
+     */
+    private final HashMap<Object, EasyAsyncTask> keyedTasks = new HashMap<Object, EasyAsyncTask>();
+
+    /**
+     * Gets the running AsyncTask of the given key
+     * @param key The caller supplied key
+     * @return The AsyncTask or null if there is none running
+     */
+    public EasyAsyncTask getKeyedTask(Object key) {
+        return keyedTasks.get(key);
+    }
+
+    /**
+     * Sets the running AsyncTask of the given key
+     * @param key The caller supplied key
+     * @param asyncTask The AsyncTask
+     */
+    public void putKeyedTask(Object key, EasyAsyncTask asyncTask) {
+        keyedTasks.put(key, asyncTask);
+    }
+
+    /**
+     * Removes the AsyncTask of the given key if it is still the running one
+     * @param key The caller supplied key
+     * @param asyncTask The AsyncTask that has finished
+     * @return True if it was removed, false otherwise
+     */
+    public boolean removeKeyedTask(Object key, EasyAsyncTask asyncTask) {
+        if(keyedTasks.get(key) != asyncTask)
+            return false;
+        keyedTasks.remove(key);
+        return true;
+    }
+
+    /**
+     * Gets all the running AsyncTasks that are started with a key
+     * @return The running keyed AsyncTasks
+     */
+    public Collection<EasyAsyncTask> getKeyedTasks() {
+        return keyedTasks.values();
+    }
+
+    private JobBatch openBatch; //the batch that collects keys, accessed in the main thread
+
+    /**
+     * Gets the batch that is still collecting the keys of a batched background job
+     * @return The open batch or null
+     */
+    public JobBatch getOpenBatch() {
+        return openBatch;
+    }
+
+    /**
+     * Sets the batch that is collecting the keys of a batched background job
+     * @param openBatch The open batch or null when it has been closed
+     */
+    public void setOpenBatch(JobBatch openBatch) {
+        this.openBatch = openBatch;
+    }
+
+    private volatile JobDescriptor job;
+
+    /**
+     * Getter for the descriptor of the background job. Unlike the binding it is kept when the target is detached.
+     * @return The descriptor of the annotated method
+     */
+    public JobDescriptor getJob() {
+        return job;
+    }
+}
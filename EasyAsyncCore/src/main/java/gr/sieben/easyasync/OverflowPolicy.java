@@ -0,0 +1,14 @@
+package gr.sieben.easyasync;
+
+/**
+ * What happens to a run of a background job of a group when the queue of the group is full, see
+ * {@linkplain gr.sieben.easyasync.EasyAsyncCore#setGroupLimit(String, int, int, OverflowPolicy)}. A run that is dropped ends
+ * as cancelled, the annotated method is invoked with {@link gr.sieben.easyasync.EasyAsyncCallbacks#CANCELLED}.
+ * <li><b>REJECT</b> The new run is dropped. This is the default value.</li>
+ * <li><b>DROP_OLDEST</b> The run that has waited the longest in the queue is dropped and the new run is queued.</li>
+ * <li><b>REPLACE_SAME_ID</b> A waiting run of the same background job is dropped and the new run takes its place in the queue.
+ * If there is none the new run is dropped.</li>
+ */
+public enum OverflowPolicy {
+    REJECT, DROP_OLDEST, REPLACE_SAME_ID
+}
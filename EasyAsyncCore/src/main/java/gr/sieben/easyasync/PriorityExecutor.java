@@ -0,0 +1,290 @@
+package gr.sieben.easyasync;
+
+import java.util.LinkedList;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executor with a maximum number of threads that runs the waiting runnables in order of priority, the highest first.
+ * The maximum is fixed unless an {@link AdaptivePoolSizer} adjusts it to the measured runnables.
+ * Runnables of equal priority run in the order they were submitted. To avoid starvation the effective priority of a
+ * waiting runnable grows by one level for every aging interval it waits, so low priority work runs eventually.
+ * The threads are created when needed and they stop after they have been idle for the keep alive time.
+ * A thread whose runnable does not return can be detached, then a new thread takes its place.
+ * The threads are daemon threads with {@link #THREAD_PRIORITY}, so they neither keep the process alive nor compete
+ * with the main thread for the cores.
+ */
+class PriorityExecutor implements Executor {
+
+    private static final long KEEP_ALIVE_MILLIS = 30000;
+
+    /**
+     * The priority of the threads, below the normal priority of the main thread. On android it is mapped to
+     * {@code Process.THREAD_PRIORITY_BACKGROUND}.
+     */
+    static final int THREAD_PRIORITY = Thread.NORM_PRIORITY - 1;
+
+    /**
+     * A runnable with the priority that it is submitted with
+     */
+    static final class PrioritizedRunnable implements Runnable {
+        final Runnable runnable;
+        final int priority;
+        long sequence;
+        long enqueuedAt;
+
+        PrioritizedRunnable(Runnable runnable, int priority) {
+            this.runnable = runnable;
+            this.priority = priority;
+        }
+
+        @Override
+        public void run() {
+            runnable.run();
+        }
+    }
+
+    private final String name;
+    private final QueueWaitStats waitStats;
+    private AdaptivePoolSizer sizer; //null when the number of the threads is fixed
+    private volatile long agingInterval;
+
+    private final Object lock = new Object();
+    //waiting runnables in buckets of priority, guarded by the lock
+    private final TreeMap<Integer, LinkedList<PrioritizedRunnable>> buckets = new TreeMap<Integer, LinkedList<PrioritizedRunnable>>();
+    private int waiting;
+    private int maxThreads;
+    private int threads;
+    private int idleThreads;
+    private long sequence;
+    private final AtomicInteger threadCount = new AtomicInteger(1);
+
+    /**
+     * @param name The name prefix of the threads
+     * @param maxThreads The maximum number of the threads
+     * @param agingInterval The time in milliseconds that raises the priority of a waiting runnable by one level
+     * @param waitStats The statistics that record the time waiting in the queue
+     */
+    PriorityExecutor(String name, int maxThreads, long agingInterval, QueueWaitStats waitStats) {
+        this.name = name;
+        this.maxThreads = maxThreads;
+        this.agingInterval = agingInterval;
+        this.waitStats = waitStats;
+    }
+
+    /**
+     * Sets the aging interval of the waiting runnables
+     * @param agingInterval The time in milliseconds that raises the priority of a waiting runnable by one level
+     */
+    void setAgingInterval(long agingInterval) {
+        this.agingInterval = agingInterval;
+    }
+
+    /**
+     * The aging interval of the waiting runnables
+     * @return The time in milliseconds that raises the priority of a waiting runnable by one level
+     */
+    long getAgingInterval() {
+        return agingInterval;
+    }
+
+    /**
+     * Makes the maximum number of the threads follow the sizer, which measures every runnable that runs
+     * @param sizer The sizer of the pool
+     */
+    void setSizer(AdaptivePoolSizer sizer) {
+        synchronized (lock) {
+            this.sizer = sizer;
+        }
+    }
+
+    /**
+     * Changes the maximum number of the threads. Extra threads stop when they finish their runnable and
+     * new threads are started for the waiting runnables.
+     * @param maxThreads The maximum number of the threads, at least one
+     */
+    void setMaxThreads(int maxThreads) {
+        int toStart = 0;
+        synchronized (lock) {
+            this.maxThreads = Math.max(1, maxThreads);
+            while(threads < this.maxThreads && waiting - idleThreads - toStart > 0) {
+                threads++;
+                toStart++;
+            }
+            if(threads > this.maxThreads)
+                lock.notifyAll(); //idle extra threads stop now
+        }
+        for(int i = 0; i < toStart; i++) {
+            new Worker().start();
+        }
+    }
+
+    /**
+     * Gets the maximum number of the threads
+     * @return The maximum number of the threads
+     */
+    int getMaxThreads() {
+        synchronized (lock) {
+            return maxThreads;
+        }
+    }
+
+    /**
+     * Executes the runnable with the priority of a {@link PrioritizedRunnable} or with the normal priority otherwise
+     * @param runnable The runnable to execute
+     */
+    @Override
+    public void execute(Runnable runnable) {
+        PrioritizedRunnable prioritized = runnable instanceof PrioritizedRunnable ? (PrioritizedRunnable) runnable
+                : new PrioritizedRunnable(runnable, BackgroundJob.PRIORITY_NORMAL);
+        boolean startThread = false;
+        synchronized (lock) {
+            prioritized.sequence = sequence++;
+            prioritized.enqueuedAt = System.nanoTime();
+            LinkedList<PrioritizedRunnable> bucket = buckets.get(prioritized.priority);
+            if(bucket == null) {
+                bucket = new LinkedList<PrioritizedRunnable>();
+                buckets.put(prioritized.priority, bucket);
+            }
+            bucket.add(prioritized);
+            waiting++;
+            if(idleThreads > 0) {
+                lock.notify();
+            } else if(threads < maxThreads) {
+                threads++;
+                startThread = true;
+            }
+        }
+        if(startThread) {
+            new Worker().start();
+        }
+    }
+
+    /**
+     * Gives up a thread of the executor whose runnable does not return, such as a timed out background job blocked
+     * in a socket read. It no longer counts towards the maximum number of the threads, so a new thread serves the
+     * queue, and it stops when its runnable finally returns. Threads of other executors are ignored.
+     * @param thread The thread to detach
+     */
+    void detach(Thread thread) {
+        boolean startThread = false;
+        synchronized (lock) {
+            if(!(thread instanceof Worker) || ((Worker) thread).getExecutor() != this || ((Worker) thread).detached) {
+                return;
+            }
+            ((Worker) thread).detached = true;
+            threads--;
+            if(waiting > 0 && idleThreads == 0 && threads < maxThreads) {
+                threads++;
+                startThread = true;
+            }
+        }
+        if(startThread) {
+            new Worker().start();
+        }
+    }
+
+    /**
+     * Gets the number of the runnables that wait in the queue
+     * @return The number of the waiting runnables
+     */
+    int getQueueSize() {
+        synchronized (lock) {
+            return waiting;
+        }
+    }
+
+    //removes the waiting runnable with the highest effective priority, must be called while holding the lock
+    private PrioritizedRunnable poll(long now) {
+        PrioritizedRunnable next = null;
+        long nextPriority = Long.MIN_VALUE;
+        long interval = agingInterval;
+        //only the head of each bucket is a candidate because it has waited the longest in its priority
+        for(LinkedList<PrioritizedRunnable> bucket : buckets.values()) {
+            PrioritizedRunnable head = bucket.peek();
+            long effective = head.priority;
+            if(interval > 0)
+                effective += TimeUnit.NANOSECONDS.toMillis(now - head.enqueuedAt) / interval;
+            if(effective > nextPriority || (effective == nextPriority && head.sequence < next.sequence)) {
+                next = head;
+                nextPriority = effective;
+            }
+        }
+        if(next != null) {
+            LinkedList<PrioritizedRunnable> bucket = buckets.get(next.priority);
+            bucket.poll();
+            if(bucket.isEmpty())
+                buckets.remove(next.priority);
+            waiting--;
+        }
+        return next;
+    }
+
+    private class Worker extends Thread {
+        private boolean detached; //guarded by the lock
+
+        Worker() {
+            super(name + " #" + threadCount.getAndIncrement());
+            //otherwise the thread inherits them from the thread that submits, usually the main thread
+            setDaemon(true);
+            setPriority(THREAD_PRIORITY);
+        }
+
+        PriorityExecutor getExecutor() {
+            return PriorityExecutor.this;
+        }
+
+        @Override
+        public void run() {
+            while(true) {
+                PrioritizedRunnable next;
+                AdaptivePoolSizer measured;
+                synchronized (lock) {
+                    if(detached) {
+                        return; //already replaced and no longer counted
+                    }
+                    long idleSince = System.nanoTime();
+                    while(waiting == 0 || threads > maxThreads) {
+                        if(threads > maxThreads) {
+                            threads--; //the pool has shrunk
+                            return;
+                        }
+                        long idle = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - idleSince);
+                        if(idle >= KEEP_ALIVE_MILLIS) {
+                            threads--;
+                            return;
+                        }
+                        idleThreads++;
+                        try {
+                            lock.wait(KEEP_ALIVE_MILLIS - idle);
+                        } catch (InterruptedException e) {
+                            //the worker is only stopped by the keep alive time
+                        } finally {
+                            idleThreads--;
+                        }
+                    }
+                    next = poll(System.nanoTime());
+                    measured = sizer;
+                }
+                long startedAt = System.nanoTime();
+                if(waitStats != null)
+                    waitStats.record(next.priority, startedAt - next.enqueuedAt);
+                long cpuAt = measured == null ? 0 : AdaptivePoolSizer.currentThreadCpuTime();
+                try {
+                    next.run();
+                } catch (Throwable e) {
+                    //the exception or error belongs to the runnable, the worker keeps serving the queue
+                    Thread.UncaughtExceptionHandler handler = Thread.currentThread().getUncaughtExceptionHandler();
+                    if(handler != null)
+                        handler.uncaughtException(Thread.currentThread(), e);
+                }
+                if(measured != null) {
+                    long cpu = cpuAt < 0 ? -1 : AdaptivePoolSizer.currentThreadCpuTime() - cpuAt;
+                    measured.onRun(startedAt - next.enqueuedAt, System.nanoTime() - startedAt, cpu);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package gr.sieben.easyasync;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Coalesces the progress that is published in the background thread of a run. Only the latest value is kept and
+ * at most one message is posted in the main thread for every interval, however often the progress is published.
+ */
+class ProgressThrottle implements Runnable {
+
+    //marks that there is no new progress to deliver
+    private static final Object NONE = new Object();
+
+    private final String id;
+    private final AsyncTaskCallbacks callbacks;
+    private final EasyAsyncResult args;
+    private final long interval;
+    private final MainThreadExecutor mainThread;
+
+    private final AtomicReference<Object> latest = new AtomicReference<Object>(NONE);
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private volatile long lastDelivery;
+    private volatile boolean stopped;
+
+    ProgressThrottle(String id, AsyncTaskCallbacks callbacks, EasyAsyncResult args, long interval, MainThreadExecutor mainThread) {
+        this.id = id;
+        this.callbacks = callbacks;
+        this.args = args;
+        this.interval = interval;
+        this.mainThread = mainThread;
+    }
+
+    /**
+     * Keeps the progress and schedules a delivery in the main thread if none is scheduled
+     * @param progress The progress object
+     */
+    public void publish(Object progress) {
+        latest.set(progress);
+        if(!stopped && scheduled.compareAndSet(false, true)) {
+            long now = mainThread.elapsedMillis();
+            mainThread.executeDelayed(this, Math.max(0, lastDelivery + interval - now));
+        }
+    }
+
+    /**
+     * Stops the delivery of the progress. Must be called in the main thread before the last callback of the run.
+     */
+    public void stop() {
+        stopped = true;
+        mainThread.remove(this);
+    }
+
+    @Override
+    public void run() {
+        scheduled.set(false);
+        Object progress = latest.getAndSet(NONE);
+        if(stopped || progress == NONE) {
+            return;
+        }
+        lastDelivery = mainThread.elapsedMillis();
+        args.setProgress(progress);
+        callbacks.onResponse(id, EasyAsyncCallbacks.ON_PROGRESS, args);
+    }
+}
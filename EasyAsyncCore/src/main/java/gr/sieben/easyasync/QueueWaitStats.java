@@ -0,0 +1,48 @@
+package gr.sieben.easyasync;
+
+import java.util.HashMap;
+
+/**
+ * Records the time that the background jobs wait in the queue before they run, per priority.
+ */
+class QueueWaitStats {
+
+    private static final class Stats {
+        long count;
+        long totalNanos;
+        long maxNanos;
+    }
+
+    private final HashMap<Integer, Stats> stats = new HashMap<Integer, Stats>();
+
+    /**
+     * Records the time that a background job has waited in the queue
+     * @param priority The priority of the background job
+     * @param waitNanos The time waiting in nanoseconds
+     */
+    synchronized void record(int priority, long waitNanos) {
+        Stats current = stats.get(priority);
+        if(current == null) {
+            current = new Stats();
+            stats.put(priority, current);
+        }
+        current.count++;
+        current.totalNanos += waitNanos;
+        current.maxNanos = Math.max(current.maxNanos, waitNanos);
+    }
+
+    synchronized long getCount(int priority) {
+        Stats current = stats.get(priority);
+        return current == null ? 0 : current.count;
+    }
+
+    synchronized double getAverageMillis(int priority) {
+        Stats current = stats.get(priority);
+        return current == null || current.count == 0 ? 0 : current.totalNanos / 1e6 / current.count;
+    }
+
+    synchronized double getMaxMillis(int priority) {
+        Stats current = stats.get(priority);
+        return current == null ? 0 : current.maxNanos / 1e6;
+    }
+}
@@ -0,0 +1,171 @@
+package gr.sieben.easyasync;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of the results of the completed background jobs. Each entry has the time to live of its background job and
+ * the cache is bounded in least recently used order, by the number of the entries or by their estimated size.
+ * The arguments of the evicted entries are recycled.
+ */
+class ResultCache {
+
+    /**
+     * A cached result of a background job
+     */
+    static final class Entry {
+        final EasyAsyncResult args;
+        final long storedAt;
+        final long ttl;
+        final int size;
+
+        Entry(EasyAsyncResult args, long storedAt, long ttl, int size) {
+            this.args = args;
+            this.storedAt = storedAt;
+            this.ttl = ttl;
+            this.size = size;
+        }
+
+        /**
+         * Whether the time to live of the entry has passed. A negative time to live never expires.
+         * @param now The current time in milliseconds
+         * @return True if stale, false otherwise
+         */
+        boolean isStale(long now) {
+            return ttl >= 0 && now - storedAt >= ttl;
+        }
+    }
+
+    static final int DEFAULT_MAX_SIZE = 64;
+
+    private final MainThreadExecutor clock; //the clock of the time to live
+
+    /**
+     * @param clock The main thread of the platform, its clock measures the time to live
+     */
+    ResultCache(MainThreadExecutor clock) {
+        this.clock = clock;
+    }
+
+    //access ordered map, the eldest entry is the least recently used
+    private final LinkedHashMap<JobKey, Entry> map = new LinkedHashMap<JobKey, Entry>(16, 0.75f, true);
+    private int maxSize = DEFAULT_MAX_SIZE;
+    private ResultSizeEstimator estimator;
+    private int size;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private volatile JobMetricsListener metricsListener;
+
+    /**
+     * Sets the listener that is notified of the hits and the misses per background job
+     * @param metricsListener The listener or null
+     */
+    void setMetricsListener(JobMetricsListener metricsListener) {
+        this.metricsListener = metricsListener;
+    }
+
+    /**
+     * Sets the bound of the cache. Without an estimator each entry has a size of one.
+     * @param maxSize The maximum size of the cache
+     * @param estimator The estimator of the size of the results or null to count the entries
+     */
+    synchronized void setMaxSize(int maxSize, ResultSizeEstimator estimator) {
+        if(estimator != this.estimator) {
+            //the sizes of the entries are not comparable between different estimators
+            evictAll();
+        }
+        this.maxSize = maxSize;
+        this.estimator = estimator;
+        trimToSize(maxSize);
+    }
+
+    /**
+     * Gets a fresh entry and counts a hit, or counts a miss if the entry is missing or stale.
+     * A stale entry is kept until it is replaced so that it can still be replayed in a configuration change.
+     * @param jobKey The key of the run
+     * @return The fresh entry or null
+     */
+    synchronized Entry get(JobKey jobKey) {
+        Entry entry = map.get(jobKey);
+        JobMetricsListener listener = metricsListener;
+        if(entry == null || entry.isStale(clock.elapsedMillis())) {
+            missCount.incrementAndGet();
+            if(listener != null)
+                listener.onCacheMiss(jobKey.id);
+            return null;
+        }
+        hitCount.incrementAndGet();
+        if(listener != null)
+            listener.onCacheHit(jobKey.id);
+        return entry;
+    }
+
+    /**
+     * Gets an entry, fresh or stale, without counting a hit or a miss
+     * @param jobKey The key of the run
+     * @return The entry or null
+     */
+    synchronized Entry peek(JobKey jobKey) {
+        return map.get(jobKey);
+    }
+
+    /**
+     * Caches the arguments of a completed run, the cache owns them from now on
+     * @param jobKey The key of the run
+     * @param args The arguments of the completed run
+     * @param ttl The time to live in milliseconds, negative for no expiration
+     * @return The new entry
+     */
+    synchronized Entry put(JobKey jobKey, EasyAsyncResult args, long ttl) {
+        int entrySize = estimator == null ? 1 : estimator.sizeOf(jobKey.id, args.getResult());
+        Entry entry = new Entry(args, clock.elapsedMillis(), ttl, entrySize);
+        Entry previous = map.put(jobKey, entry);
+        size += entrySize;
+        if(previous != null) {
+            size -= previous.size;
+            if(previous.args != args)
+                previous.args.recycle();
+        }
+        trimToSize(maxSize);
+        return entry;
+    }
+
+    /**
+     * Evicts the least recently used entries until the size of the cache is not greater than the given size
+     * @param targetSize The target size
+     */
+    synchronized void trimToSize(int targetSize) {
+        Iterator<Map.Entry<JobKey, Entry>> iterator = map.entrySet().iterator();
+        while(size > targetSize && iterator.hasNext()) {
+            Entry entry = iterator.next().getValue();
+            iterator.remove();
+            size -= entry.size;
+            entry.args.recycle();
+        }
+    }
+
+    /**
+     * Evicts half of the cache in least recently used order
+     */
+    synchronized void trimToHalf() {
+        trimToSize(size / 2);
+    }
+
+    /**
+     * Evicts all the entries
+     */
+    synchronized void evictAll() {
+        trimToSize(-1);
+    }
+
+    long getHitCount() {
+        return hitCount.get();
+    }
+
+    long getMissCount() {
+        return missCount.get();
+    }
+}
@@ -0,0 +1,30 @@
+package gr.sieben.easyasync;
+
+import java.io.IOException;
+
+/**
+ * Converts the results of the background jobs to bytes and back for a {@link gr.sieben.easyasync.ResultStore}.
+ * {@link #toBytes(String, Object)} is invoked in the background thread of the run that has produced the result and
+ * {@link #fromBytes(String, byte[])} in the thread of the store. {@link gr.sieben.easyasync.SerializableResultSerializer} uses the java
+ * serialization, implement this interface to use a faster or a version tolerant format.
+ */
+public interface ResultSerializer {
+
+    /**
+     * Converts the result of a background job to bytes
+     * @param id The id of the background job
+     * @param result The result object, may be null
+     * @return The bytes of the result
+     * @throws IOException If the result can not be converted, then it is not persisted
+     */
+    public byte[] toBytes(String id, Object result) throws IOException;
+
+    /**
+     * Converts the bytes that have been persisted back to the result of a background job
+     * @param id The id of the background job
+     * @param bytes The bytes of the result
+     * @return The result object
+     * @throws IOException If the bytes can not be converted, then the result is dropped
+     */
+    public Object fromBytes(String id, byte[] bytes) throws IOException;
+}
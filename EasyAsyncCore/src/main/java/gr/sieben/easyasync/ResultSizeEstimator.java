@@ -0,0 +1,16 @@
+package gr.sieben.easyasync;
+
+/**
+ * Estimates the size of a cached result so that the result cache can be bounded by size instead of by entries.
+ * See {@linkplain gr.sieben.easyasync.EasyAsyncCore#setResultCacheMaxSize(int, ResultSizeEstimator)}.
+ */
+public interface ResultSizeEstimator {
+
+    /**
+     * Estimates the size of the result of a background job, in user defined units
+     * @param id The id of the background job
+     * @param result The result object, may be null
+     * @return The size of the result, must not be negative
+     */
+    public int sizeOf(String id, Object result);
+}
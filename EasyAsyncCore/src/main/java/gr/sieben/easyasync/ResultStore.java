@@ -0,0 +1,355 @@
+package gr.sieben.easyasync;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+
+/**
+ * Persistent tier of the results of the background jobs that are annotated with {@link gr.sieben.easyasync.BackgroundJob#persist()},
+ * so that a cold start can deliver the result of the previous process instead of executing the background job again.
+ * See {@linkplain gr.sieben.easyasync.EasyAsyncCore#setResultStore(ResultStore)}.
+ * <p>
+ * The results are appended to a log file with a checksum per record and the latest record of each background job wins.
+ * All the file operations are made in a thread of the store: when it is created the store reads the file and keeps the
+ * latest results in memory, so that they are handed to the main thread without reading the file in it. The main thread
+ * never waits for the read: a background job that is started before it has finished is executed as usual, and its
+ * persisted result is delivered when the read finishes if the run has not finished first. The results are converted
+ * to bytes in the background thread of their run, before the main thread sees them. A record that is cut short,
+ * for example because the process has been killed while writing, ends the log and is truncated. When the file grows
+ * over the maximum size it is compacted to the latest results, the oldest ones are evicted first.
+ * </p>
+ */
+public class ResultStore {
+
+    /**
+     * A persisted result that has been read from the file
+     */
+    static final class Restored {
+        final Object result;
+        final long storedAt; //the wall clock time in milliseconds that the result has been persisted
+
+        Restored(Object result, long storedAt) {
+            this.result = result;
+            this.storedAt = storedAt;
+        }
+    }
+
+    //the position of the latest record of a background job in the file, accessed in the thread of the store
+    private static final class Location {
+        final long offset;
+        final int length;
+        final long storedAt;
+
+        Location(long offset, int length, long storedAt) {
+            this.offset = offset;
+            this.length = length;
+            this.storedAt = storedAt;
+        }
+    }
+
+    private static final int HEADER_SIZE = 8; //the length of the body and its checksum
+
+    private final File file;
+    private final ResultSerializer serializer;
+    private final long maxBytes;
+    private final ExecutorService thread;
+
+    //accessed in the thread of the store
+    private RandomAccessFile log;
+    private final Map<String, Location> locations = new HashMap<String, Location>();
+
+    //the results that have been read and not taken yet, and the background jobs that have been written since, guarded by this
+    private final Map<String, Restored> restored = new HashMap<String, Restored>();
+    private final Set<String> written = new HashSet<String>();
+    private boolean loaded; //whether the file has been read, guarded by this
+
+    /**
+     * Creates the store and starts reading the file in its thread
+     * @param file The file of the store, it is created if it does not exist
+     * @param serializer The serializer of the results
+     * @param maxBytes The maximum size of the file in bytes
+     */
+    public ResultStore(File file, ResultSerializer serializer, long maxBytes) {
+        if(file == null || serializer == null)
+            throw new IllegalArgumentException("You have to specify both a file and a serializer");
+        this.file = file;
+        this.serializer = serializer;
+        this.maxBytes = maxBytes;
+        thread = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread storeThread = new Thread(runnable, "EasyAsync store");
+                storeThread.setDaemon(true);
+                return storeThread;
+            }
+        });
+        thread.execute(new Runnable() {
+            @Override
+            public void run() {
+                open();
+            }
+        });
+    }
+
+    /**
+     * Takes the persisted result of a background job, without waiting for the file to be read
+     * @param id The id of the background job
+     * @return The result or null if there is none or the file has not been read yet
+     */
+    synchronized Restored take(String id) {
+        return restored.remove(id);
+    }
+
+    /**
+     * Whether the file has been read, so that {@link #take(String)} finds every persisted result
+     * @return True if the file has been read
+     */
+    synchronized boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Runs the runnable in the thread of the store after the file has been read
+     * @param runnable The runnable
+     */
+    void afterLoad(Runnable runnable) {
+        thread.execute(runnable); //the read is the first task of the thread
+    }
+
+    /**
+     * Waits until the file has been read and the writes that have been queued so far are in the file. The library
+     * never calls it, it is for the tests.
+     * @throws InterruptedException If the thread is interrupted while waiting
+     */
+    void sync() throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(1);
+        thread.execute(new Runnable() {
+            @Override
+            public void run() {
+                done.countDown();
+            }
+        });
+        done.await();
+    }
+
+    /**
+     * Converts a result to the bytes that are persisted, in the background thread of its run, so that the main thread
+     * can not change it while it is converted
+     * @param id The id of the background job
+     * @param result The result of the run
+     * @return The bytes or null if the serializer can not convert the result, then it is not persisted
+     */
+    byte[] toBytes(String id, Object result) {
+        try {
+            return serializer.toBytes(id, result);
+        } catch (IOException e) {
+            return null; //the store is a cache, the background job is executed again in the next process
+        }
+    }
+
+    /**
+     * Persists the result of a completed run in the thread of the store
+     * @param id The id of the background job
+     * @param payload The bytes of the result, see {@link #toBytes(String, Object)}
+     */
+    void write(final String id, final byte[] payload) {
+        synchronized (this) {
+            //an older result that is read after this must not be handed out
+            restored.remove(id);
+            written.add(id);
+        }
+        final long storedAt = System.currentTimeMillis();
+        thread.execute(new Runnable() {
+            @Override
+            public void run() {
+                append(id, payload, storedAt);
+            }
+        });
+    }
+
+    /**
+     * Deletes all the persisted results
+     */
+    public void clear() {
+        synchronized (this) {
+            restored.clear();
+        }
+        thread.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    locations.clear();
+                    if(log != null)
+                        log.setLength(0);
+                } catch (IOException e) {
+                    closeQuietly();
+                }
+            }
+        });
+    }
+
+    //reads the log and keeps the latest result of each background job, in the thread of the store
+    private void open() {
+        try {
+            read();
+        } finally {
+            synchronized (this) {
+                loaded = true;
+            }
+        }
+    }
+
+    private void read() {
+        Map<String, byte[]> latest = new HashMap<String, byte[]>();
+        try {
+            File parent = file.getParentFile();
+            if(parent != null && !parent.exists())
+                parent.mkdirs();
+            log = new RandomAccessFile(file, "rw");
+            long length = log.length();
+            long offset = 0;
+            while(offset + HEADER_SIZE <= length) {
+                log.seek(offset);
+                int bodyLength = log.readInt();
+                int checksum = log.readInt();
+                if(bodyLength <= 0 || offset + HEADER_SIZE + bodyLength > length)
+                    break;
+                byte[] body = new byte[bodyLength];
+                log.readFully(body);
+                if(checksum(body) != checksum)
+                    break;
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+                long storedAt = in.readLong();
+                String id = in.readUTF();
+                byte[] payload = new byte[in.available()];
+                in.readFully(payload);
+                locations.put(id, new Location(offset, HEADER_SIZE + bodyLength, storedAt));
+                latest.put(id, payload);
+                offset += HEADER_SIZE + bodyLength;
+            }
+            if(offset < length)
+                log.setLength(offset); //the torn tail of a killed process
+        } catch (IOException e) {
+            closeQuietly();
+            return;
+        }
+        for(Map.Entry<String, byte[]> entry : latest.entrySet()) {
+            Object result;
+            try {
+                result = serializer.fromBytes(entry.getKey(), entry.getValue());
+            } catch (IOException e) {
+                continue; //for example a result of a class that has changed, it is executed again
+            }
+            synchronized (this) {
+                if(!written.contains(entry.getKey()))
+                    restored.put(entry.getKey(), new Restored(result, locations.get(entry.getKey()).storedAt));
+            }
+        }
+    }
+
+    //appends a record of the result and compacts the log when it is full, in the thread of the store
+    private void append(String id, byte[] payload, long storedAt) {
+        if(log == null)
+            return;
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(payload.length + id.length() + 16);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeLong(storedAt);
+            out.writeUTF(id);
+            out.write(payload);
+            out.close();
+            byte[] body = bytes.toByteArray();
+            long offset = log.length();
+            log.seek(offset);
+            log.writeInt(body.length);
+            log.writeInt(checksum(body));
+            log.write(body);
+            locations.put(id, new Location(offset, HEADER_SIZE + body.length, storedAt));
+            if(log.length() > maxBytes)
+                compact();
+        } catch (IOException e) {
+            //the store is a cache, a result that can not be persisted is executed again in the next process
+        }
+    }
+
+    //rewrites the latest records, newest first, into three quarters of the maximum size, in the thread of the store
+    private void compact() throws IOException {
+        List<Map.Entry<String, Location>> newestFirst = new ArrayList<Map.Entry<String, Location>>(locations.entrySet());
+        Collections.sort(newestFirst, new Comparator<Map.Entry<String, Location>>() {
+            @Override
+            public int compare(Map.Entry<String, Location> first, Map.Entry<String, Location> second) {
+                long a = first.getValue().storedAt;
+                long b = second.getValue().storedAt;
+                return a > b ? -1 : (a == b ? 0 : 1);
+            }
+        });
+        File compacted = new File(file.getPath() + ".compact");
+        RandomAccessFile out = new RandomAccessFile(compacted, "rw");
+        Map<String, Location> kept = new HashMap<String, Location>();
+        long budget = maxBytes - maxBytes / 4;
+        try {
+            out.setLength(0);
+            long offset = 0;
+            for(Map.Entry<String, Location> entry : newestFirst) {
+                Location location = entry.getValue();
+                if(offset + location.length > budget)
+                    continue; //evicted, a smaller and older one may still fit
+                byte[] record = new byte[location.length];
+                log.seek(location.offset);
+                log.readFully(record);
+                out.write(record);
+                kept.put(entry.getKey(), new Location(offset, location.length, location.storedAt));
+                offset += location.length;
+            }
+        } finally {
+            out.close();
+        }
+        log.close();
+        log = null;
+        if(!compacted.renameTo(file)) {
+            //a platform that does not replace on rename
+            if(!file.delete() || !compacted.renameTo(file)) {
+                locations.clear();
+                return;
+            }
+        }
+        log = new RandomAccessFile(file, "rw");
+        locations.clear();
+        locations.putAll(kept);
+    }
+
+    private static int checksum(byte[] body) {
+        CRC32 crc = new CRC32();
+        crc.update(body, 0, body.length);
+        return (int) crc.getValue();
+    }
+
+    private void closeQuietly() {
+        if(log != null) {
+            try {
+                log.close();
+            } catch (IOException e) {
+                //nothing to do
+            }
+            log = null;
+        }
+        locations.clear();
+    }
+}
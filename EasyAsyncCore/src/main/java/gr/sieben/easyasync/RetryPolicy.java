@@ -0,0 +1,75 @@
+package gr.sieben.easyasync;
+
+import java.util.Random;
+
+/**
+ * Immutable retry settings of a {@link gr.sieben.easyasync.BackgroundJob}, see {@link gr.sieben.easyasync.BackgroundJob#maxAttempts()}.
+ * The delay before each retry grows exponentially from the base delay up to the cap and a random part of it, the
+ * jitter, is taken off so that the runs that have failed together do not retry together.
+ */
+final class RetryPolicy {
+
+    private static final Random RANDOM = new Random();
+
+    final int maxAttempts;
+    private final long baseDelay;
+    private final long maxDelay;
+    private final double jitter;
+    private final Class<? extends Throwable>[] retryOn;
+
+    private RetryPolicy(BackgroundJob annotation) {
+        maxAttempts = annotation.maxAttempts();
+        baseDelay = Math.max(0, annotation.retryDelay());
+        maxDelay = Math.max(baseDelay, annotation.retryMaxDelay());
+        jitter = Math.min(1, Math.max(0, annotation.retryJitter()));
+        retryOn = annotation.retryOn();
+    }
+
+    /**
+     * Creates the retry settings of the annotation
+     * @param annotation The annotation of the background job
+     * @return The retry settings or null if the background job is not retried
+     */
+    static RetryPolicy create(BackgroundJob annotation) {
+        return annotation.maxAttempts() > 1 ? new RetryPolicy(annotation) : null;
+    }
+
+    /**
+     * Whether a failed attempt is retried
+     * @param attempt The number of the attempt that has failed, starting from 1
+     * @param error The exception of the attempt
+     * @return True if there are attempts left and the exception or one of its causes is retryable
+     */
+    boolean shouldRetry(int attempt, Throwable error) {
+        if(attempt >= maxAttempts)
+            return false;
+        if(retryOn.length == 0)
+            return true;
+        //the exceptions of the annotated method reach the task wrapped
+        for(Throwable cause = error; cause != null; cause = cause.getCause() == cause ? null : cause.getCause()) {
+            for(Class<? extends Throwable> type : retryOn) {
+                if(type.isInstance(cause))
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Computes the delay before the next attempt
+     * @param attempt The number of the attempt that has failed, starting from 1
+     * @return The delay in milliseconds
+     */
+    long delayMillis(int attempt) {
+        long delay = baseDelay;
+        for(int i = 1; i < attempt && delay < maxDelay; i++) {
+            delay <<= 1;
+        }
+        delay = Math.min(delay, maxDelay);
+        double random;
+        synchronized (RANDOM) {
+            random = RANDOM.nextDouble();
+        }
+        return delay - (long) (delay * jitter * random);
+    }
+}
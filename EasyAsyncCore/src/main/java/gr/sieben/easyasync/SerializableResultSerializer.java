@@ -0,0 +1,38 @@
+package gr.sieben.easyasync;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/**
+ * {@link gr.sieben.easyasync.ResultSerializer} that uses the java serialization. The results of the persisted
+ * background jobs must be {@link java.io.Serializable}.
+ */
+public class SerializableResultSerializer implements ResultSerializer {
+
+    @Override
+    public byte[] toBytes(String id, Object result) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        try {
+            out.writeObject(result);
+        } finally {
+            out.close();
+        }
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public Object fromBytes(String id, byte[] bytes) throws IOException {
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes));
+        try {
+            return in.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException("The class of the result of " + id + " is missing: " + e.getMessage());
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package gr.sieben.easyasync;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Executor that runs each runnable on a new virtual thread. Virtual threads are available from Java 21, they are
+ * looked up with reflection so that the library still runs on older JDKs and on android, see {@link #create(String)}.
+ */
+final class VirtualThreadExecutor implements Executor {
+
+    private final ThreadFactory factory;
+
+    private VirtualThreadExecutor(ThreadFactory factory) {
+        this.factory = factory;
+    }
+
+    /**
+     * Creates the executor if the JDK supports virtual threads
+     * @param name The name prefix of the threads
+     * @return The executor or null if virtual threads are not supported
+     */
+    static Executor create(String name) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, name + " #", 1L);
+            //the factory of the builder, unlike the builder itself, is safe to use from many threads
+            return new VirtualThreadExecutor((ThreadFactory) builderClass.getMethod("factory").invoke(builder));
+        } catch (Exception e) {
+            return null;
+        } catch (LinkageError e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void execute(Runnable runnable) {
+        factory.newThread(runnable).start();
+    }
+}
@@ -0,0 +1,85 @@
+package gr.sieben.easyasync;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The resize rules of {@link gr.sieben.easyasync.AdaptivePoolSizer}, fed with the measurements of a single window. A run
+ * that has lasted longer than the window ends it on its own, so the window is as long as that run.
+ */
+public class AdaptivePoolSizerTest {
+
+    private static final int CORES = 2;
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+    private static final long BACKED_UP = TimeUnit.MILLISECONDS.toNanos(50); //longer than the target latency
+
+    private final PriorityExecutor pool = new PriorityExecutor("sized", CORES, 0, null);
+
+    private AdaptivePoolSizer sizer(int size, int minThreads, int maxThreads) {
+        pool.setMaxThreads(size);
+        return new AdaptivePoolSizer(pool, CORES, minThreads, maxThreads);
+    }
+
+    @Test
+    public void blockedRunsThatWaitMakeThePoolJumpToTheSizeThatKeepsTheCoresBusy() {
+        AdaptivePoolSizer sizer = sizer(2, 2, 64);
+        //blocked three quarters of the time: cores / (1 - 0.75)
+        sizer.onRun(BACKED_UP, SECOND, SECOND / 4);
+        assertEquals(8, pool.getMaxThreads());
+    }
+
+    @Test
+    public void blockedRunsThatDoNotWaitGrowThePoolOneThreadAtATime() {
+        AdaptivePoolSizer sizer = sizer(2, 2, 64);
+        sizer.onRun(0, SECOND, SECOND / 4);
+        assertEquals(3, pool.getMaxThreads());
+    }
+
+    @Test
+    public void poolLargerThanTheRunsNeedShrinksOneThreadAtATime() {
+        AdaptivePoolSizer sizer = sizer(16, 2, 64);
+        sizer.onRun(BACKED_UP, SECOND, SECOND / 2);
+        assertEquals(15, pool.getMaxThreads());
+    }
+
+    @Test
+    public void poolThatKeepsTheCoresBusyDoesNotGrowHoweverLongTheQueueIs() {
+        AdaptivePoolSizer sizer = sizer(2, 2, 64);
+        //a full window of runs that look blocked three quarters of the time but use the cores four times over
+        long wall = TimeUnit.MILLISECONDS.toNanos(100);
+        for(int i = 0; i < 32; i++) {
+            sizer.onRun(BACKED_UP, wall, wall / 4);
+        }
+        assertEquals(2, pool.getMaxThreads());
+    }
+
+    @Test
+    public void withoutTheCpuTimeThePoolGrowsByAQuarterWhileTheRunsWaitAndShrinksOtherwise() {
+        AdaptivePoolSizer sizer = sizer(8, 2, 64);
+        sizer.onRun(BACKED_UP, SECOND, -1);
+        assertEquals(10, pool.getMaxThreads());
+
+        sizer = sizer(8, 2, 64);
+        sizer.onRun(0, SECOND, -1);
+        assertEquals(7, pool.getMaxThreads());
+    }
+
+    @Test
+    public void sizeStaysWithinTheBounds() {
+        AdaptivePoolSizer sizer = sizer(8, 2, 9);
+        sizer.onRun(BACKED_UP, SECOND, -1);
+        assertEquals(9, pool.getMaxThreads());
+
+        sizer = sizer(2, 2, 64);
+        sizer.onRun(0, SECOND, -1);
+        assertEquals(2, pool.getMaxThreads());
+
+        sizer.setBounds(4, 6);
+        assertEquals(4, pool.getMaxThreads());
+        sizer.setBounds(1, 3);
+        assertEquals(3, pool.getMaxThreads());
+    }
+}
@@ -0,0 +1,198 @@
+package gr.sieben.easyasync;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * A job that gives up after its cancellation ends as cancelled, not as failed, and a timeout does not wait for the job
+ */
+public class CancellationTest {
+
+    private final CoreFixture fixture = new CoreFixture();
+    private final JobMetricsRecorder recorder = new JobMetricsRecorder();
+
+    @Before
+    public void setUp() throws Exception {
+        fixture.onMainThread(new Runnable() {
+            @Override
+            public void run() {
+                fixture.core.setMetricsListener(recorder);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        fixture.destroy();
+    }
+
+    public static class Jobs {
+        final CountDownLatch running = new CountDownLatch(1);
+        final CountDownLatch hooked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch finished = new CountDownLatch(1);
+        final CountDownLatch nextDelivered = new CountDownLatch(1);
+        final AtomicReference<EasyAsyncCallbacks> last = new AtomicReference<EasyAsyncCallbacks>();
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        volatile boolean tokenTimedOut;
+
+        private void onLast(EasyAsyncCallbacks callbacks, EasyAsyncResult<Object, Object> args) {
+            if(callbacks == EasyAsyncCallbacks.AFTER_EXECUTE || callbacks == EasyAsyncCallbacks.CANCELLED
+                    || callbacks == EasyAsyncCallbacks.TIMED_OUT) {
+                last.set(callbacks);
+                error.set(args.getError());
+                finished.countDown();
+            }
+        }
+
+        @BackgroundJob(id = "polling", cacheTtl = 0)
+        public void polling(EasyAsyncCallbacks callbacks, EasyAsyncResult<Object, Object> args) {
+            if(callbacks == EasyAsyncCallbacks.ON_BACKGROUND) {
+                running.countDown();
+                while(true) {
+                    args.getCancellationToken().throwIfCancelled();
+                    Thread.yield();
+                }
+            }
+            onLast(callbacks, args);
+        }
+
+        @BackgroundJob(id = "wrapping", cacheTtl = 0)
+        public void wrapping(EasyAsyncCallbacks callbacks, EasyAsyncResult<Object, Object> args) throws Exception {
+            if(callbacks == EasyAsyncCallbacks.ON_BACKGROUND) {
+                running.countDown();
+                try {
+                    release.await(CoreFixture.TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException("the download has been interrupted", e);
+                }
+            }
+            onLast(callbacks, args);
+        }
+
+        @BackgroundJob(id = "hooked", executor = ExecutorType.PARALLEL, cacheTtl = 0)
+        public void hooked(EasyAsyncCallbacks callbacks, EasyAsyncResult<Object, Object> args) {
+            if(callbacks == EasyAsyncCallbacks.ON_BACKGROUND) {
+                args.getCancellationToken().register(new Runnable() {
+                    @Override
+                    public void run() {
+                        hooked.countDown();
+                    }
+                });
+                running.countDown();
+                awaitIgnoringInterrupts(release);
+            }
+            onLast(callbacks, args);
+        }
+
+        @BackgroundJob(id = "stuck", timeout = 100, cacheTtl = 0)
+        public void stuck(EasyAsyncCallbacks callbacks, EasyAsyncResult<Object, Object> args) {
+            if(callbacks == EasyAsyncCallbacks.ON_BACKGROUND) {
+                running.countDown();
+                awaitIgnoringInterrupts(release); //like a socket read that does not react to the interruption
+                tokenTimedOut = args.getCancellationToken().isTimedOut();
+            }
+            onLast(callbacks, args);
+        }
+
+        @BackgroundJob(id = "next")
+        public void next(EasyAsyncCallbacks callbacks) {
+            if(callbacks == EasyAsyncCallbacks.AFTER_EXECUTE)
+                nextDelivered.countDown();
+        }
+    }
+
+    private static void awaitIgnoringInterrupts(CountDownLatch latch) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(CoreFixture.TIMEOUT_SECONDS);
+        while(latch.getCount() > 0 && System.nanoTime() < deadline) {
+            try {
+                latch.await(10, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                //ignored on purpose
+            }
+        }
+    }
+
+    private void cancel(final String id) throws Exception {
+        fixture.onMainThread(new Runnable() {
+            @Override
+            public void run() {
+                fixture.core.cancel(id);
+            }
+        });
+    }
+
+    @Test
+    public void jobThatThrowsAfterTheCancellationEndsAsCancelled() throws Exception {
+        Jobs jobs = new Jobs();
+        fixture.register(jobs);
+        fixture.start("polling", null);
+        CoreFixture.await(jobs.running);
+        cancel("polling");
+        CoreFixture.await(jobs.finished);
+
+        assertEquals(EasyAsyncCallbacks.CANCELLED, jobs.last.get());
+        assertNull(jobs.error.get());
+        assertEquals(0, recorder.getMetrics("polling").getErrorCount());
+        assertEquals(1, recorder.getMetrics("polling").getCancelledCount());
+    }
+
+    @Test
+    public void interruptionByTheCancellationIsNotAnError() throws Exception {
+        Jobs jobs = new Jobs();
+        fixture.register(jobs);
+        fixture.start("wrapping", null);
+        CoreFixture.await(jobs.running);
+        cancel("wrapping");
+        CoreFixture.await(jobs.finished);
+
+        assertEquals(EasyAsyncCallbacks.CANCELLED, jobs.last.get());
+        assertNull(jobs.error.get());
+        assertEquals(0, recorder.getMetrics("wrapping").getErrorCount());
+    }
+
+    @Test
+    public void cancellationRunsTheHooksOfTheToken() throws Exception {
+        Jobs jobs = new Jobs();
+        fixture.register(jobs);
+        fixture.start("hooked", null);
+        CoreFixture.await(jobs.running);
+        cancel("hooked");
+        CoreFixture.await(jobs.hooked);
+        jobs.release.countDown();
+        CoreFixture.await(jobs.finished);
+        assertEquals(EasyAsyncCallbacks.CANCELLED, jobs.last.get());
+    }
+
+    @Test
+    public void timeoutDeliversTimedOutWithoutWaitingAndFreesTheSerialQueue() throws Exception {
+        Jobs jobs = new Jobs();
+        fixture.register(jobs);
+        fixture.start("stuck", null);
+        CoreFixture.await(jobs.running);
+        fixture.start("next", null);
+
+        //both are delivered while the stuck job is still blocked
+        CoreFixture.await(jobs.finished);
+        CoreFixture.await(jobs.nextDelivered);
+        assertEquals(1, jobs.release.getCount());
+        assertEquals(EasyAsyncCallbacks.TIMED_OUT, jobs.last.get());
+        assertEquals(1, recorder.getMetrics("stuck").getTimedOutCount());
+
+        jobs.release.countDown();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(CoreFixture.TIMEOUT_SECONDS);
+        while(!jobs.tokenTimedOut && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertTrue(jobs.tokenTimedOut);
+    }
+}
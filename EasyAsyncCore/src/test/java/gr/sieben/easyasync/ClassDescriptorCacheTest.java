@@ -0,0 +1,81 @@
+package gr.sieben.easyasync;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * A configuration change only rebinds the new target to the descriptors that have been scanned for its class.
+ */
+public class ClassDescriptorCacheTest {
+
+    private final CoreFixture fixture = new CoreFixture();
+
+    @After
+    public void tearDown() throws Exception {
+        fixture.destroy();
+    }
+
+    public static class Screen {
+        final CountDownLatch delivered = new CountDownLatch(1);
+
+        @BackgroundJob(id = "load")
+        public void load(EasyAsyncCallbacks callbacks) {
+            if(callbacks == EasyAsyncCallbacks.AFTER_EXECUTE)
+                delivered.countDown();
+        }
+
+        @BackgroundJob(id = "save")
+        public void save() {
+        }
+    }
+
+    //detaches the target the same way as the retained fragment does during a configuration change
+    private void clearAnnotations() throws Exception {
+        fixture.onMainThread(new Runnable() {
+            @Override
+            public void run() {
+                fixture.core.clearAnnotations();
+            }
+        });
+    }
+
+    @Test
+    public void reattachReusesTheDescriptorsOfTheClass() throws Exception {
+        Screen first = new Screen();
+        fixture.register(first);
+        JobDescriptor load = fixture.core.mAnnotatedMethods.get("load").getJob();
+        JobDescriptor save = fixture.core.mAnnotatedMethods.get("save").getJob();
+
+        clearAnnotations();
+        Screen second = new Screen();
+        fixture.register(second);
+        assertSame(load, fixture.core.mAnnotatedMethods.get("load").getJob());
+        assertSame(save, fixture.core.mAnnotatedMethods.get("save").getJob());
+        assertSame(second, fixture.core.mAnnotatedMethods.get("load").getTarget());
+        assertEquals(2, fixture.core.mAnnotatedMethods.size());
+
+        //the callbacks reach the new target only
+        fixture.start("load", null);
+        CoreFixture.await(second.delivered);
+        assertEquals(1, first.delivered.getCount());
+    }
+
+    @Test
+    public void scopesShareTheDescriptorsOfTheClass() throws Exception {
+        fixture.register(new Screen());
+        final EasyAsyncCore[] scope = new EasyAsyncCore[1];
+        fixture.onMainThread(new Runnable() {
+            @Override
+            public void run() {
+                scope[0] = fixture.core.newScope();
+                scope[0].register(new Screen());
+            }
+        });
+        assertSame(fixture.core.mAnnotatedMethods.get("load").getJob(), scope[0].mAnnotatedMethods.get("load").getJob());
+    }
+}
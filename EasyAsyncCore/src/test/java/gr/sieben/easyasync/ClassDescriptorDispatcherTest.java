@@ -0,0 +1,109 @@
+package gr.sieben.easyasync;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * The generated dispatcher of a superclass is used for a subclass only when the subclass adds no annotated methods
+ */
+public class ClassDescriptorDispatcherTest {
+
+    private final CoreFixture fixture = new CoreFixture();
+
+    @After
+    public void tearDown() throws Exception {
+        fixture.destroy();
+    }
+
+    public static class Base {
+        @BackgroundJob(id = "base")
+        public void base(EasyAsyncCallbacks callbacks) {
+        }
+    }
+
+    //stands in for the dispatcher that the annotation processor generates for the base class
+    public static class Base$$EasyAsyncDispatcher implements EasyAsyncDispatcher {
+        @Override
+        public int getJobCount() {
+            return 1;
+        }
+
+        @Override
+        public BackgroundJob getJob(int index) {
+            try {
+                return Base.class.getMethod("base", EasyAsyncCallbacks.class).getAnnotation(BackgroundJob.class);
+            } catch (NoSuchMethodException e) {
+                throw new AssertionError(e);
+            }
+        }
+
+        @Override
+        public String getMethodName(int index) {
+            return "base";
+        }
+
+        @Override
+        public int getParameterCount(int index) {
+            return 1;
+        }
+
+        @Override
+        public void dispatch(Object target, int index, EasyAsyncCallbacks callbacks, EasyAsyncResult args) {
+            ((Base) target).base(callbacks);
+        }
+    }
+
+    public static class Plain extends Base {
+    }
+
+    //compiled without the annotation processor, like a subclass in another module
+    public static class Extended extends Base {
+        final CountDownLatch delivered = new CountDownLatch(1);
+
+        @BackgroundJob(id = "extended")
+        public void extended(EasyAsyncCallbacks callbacks) {
+            if(callbacks == EasyAsyncCallbacks.AFTER_EXECUTE)
+                delivered.countDown();
+        }
+    }
+
+    private static Set<String> ids(ClassDescriptor descriptor) {
+        Set<String> ids = new HashSet<String>();
+        for(JobDescriptor job : descriptor.jobs) {
+            ids.add(job.id);
+        }
+        return ids;
+    }
+
+    @Test
+    public void subclassWithoutAnnotatedMethodsUsesTheDispatcherOfItsSuperclass() {
+        ClassDescriptor descriptor = ClassDescriptor.create(Plain.class);
+        assertEquals(1, descriptor.jobs.length);
+        assertNotNull(descriptor.jobs[0].dispatcher);
+    }
+
+    @Test
+    public void subclassWithAnnotatedMethodsOfItsOwnIsScannedWithReflection() throws Exception {
+        ClassDescriptor descriptor = ClassDescriptor.create(Extended.class);
+        Set<String> expected = new HashSet<String>();
+        expected.add("base");
+        expected.add("extended");
+        assertEquals(expected, ids(descriptor));
+        for(JobDescriptor job : descriptor.jobs) {
+            assertNull(job.dispatcher);
+        }
+
+        Extended target = new Extended();
+        fixture.register(target);
+        fixture.start("extended", null);
+        CoreFixture.await(target.delivered);
+    }
+}
@@ -0,0 +1,85 @@
+package gr.sieben.easyasync;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A core on its own event loop for the tests. The library must be called from the main thread, so the calls of the
+ * tests are made with {@link #onMainThread(Runnable)}, which waits for them.
+ */
+class CoreFixture {
+
+    static final long TIMEOUT_SECONDS = 10;
+
+    final EventLoop mainThread = new EventLoop("test main");
+    final EasyAsyncCore core = new EasyAsyncCore(mainThread);
+
+    /**
+     * Runs the runnable in the main thread and waits for it, an exception of the runnable is rethrown
+     */
+    void onMainThread(final Runnable runnable) throws Exception {
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        mainThread.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    runnable.run();
+                } catch (Throwable e) {
+                    error.set(e);
+                } finally {
+                    done.countDown();
+                }
+            }
+        });
+        await(done);
+        if(error.get() instanceof Exception)
+            throw (Exception) error.get();
+        if(error.get() != null)
+            throw new AssertionError(error.get());
+    }
+
+    /**
+     * Waits until everything that has been posted to the main thread so far has run
+     */
+    void drainMainThread() throws Exception {
+        onMainThread(new Runnable() {
+            @Override
+            public void run() {
+            }
+        });
+    }
+
+    void register(final Object target) throws Exception {
+        onMainThread(new Runnable() {
+            @Override
+            public void run() {
+                core.register(target);
+            }
+        });
+    }
+
+    void start(final String id, final Object key) throws Exception {
+        onMainThread(new Runnable() {
+            @Override
+            public void run() {
+                core.start(id, key);
+            }
+        });
+    }
+
+    void destroy() throws Exception {
+        onMainThread(new Runnable() {
+            @Override
+            public void run() {
+                core.destroy();
+            }
+        });
+    }
+
+    static void await(CountDownLatch latch) throws InterruptedException {
+        if(!latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS))
+            throw new AssertionError("Timed out waiting for the background jobs");
+    }
+}
@@ -0,0 +1,151 @@
+package gr.sieben.easyasync;
+
+import gr.sieben.easyasync.exceptions.EasyAsyncRuntimeException;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * A target that is rejected at registration, for a cycle of dependencies or a duplicate id, leaves the registry as it was,
+ * and so does a start that is rejected for a dependency that is not declared
+ */
+public class DependencyRegistrationTest {
+
+    private final CoreFixture fixture = new CoreFixture();
+
+    @After
+    public void tearDown() throws Exception {
+        fixture.destroy();
+    }
+
+    public static class First {
+        @BackgroundJob(id = "first", dependsOn = "second")
+        public void first() {}
+    }
+
+    public static class CyclicSecond {
+        @BackgroundJob(id = "unrelated")
+        public void unrelated() {}
+
+        @BackgroundJob(id = "second", dependsOn = "first")
+        public void second() {}
+    }
+
+    public static class Second {
+        final CountDownLatch delivered = new CountDownLatch(1);
+
+        @BackgroundJob(id = "second")
+        public void second(EasyAsyncCallbacks callbacks) {
+            if(callbacks == EasyAsyncCallbacks.AFTER_EXECUTE)
+                delivered.countDown();
+        }
+    }
+
+    public static class Duplicate {
+        @BackgroundJob(id = "fresh")
+        public void fresh() {}
+
+        @BackgroundJob(id = "first")
+        public void first() {}
+    }
+
+    public static class Consumer {
+        final AtomicInteger availableRuns = new AtomicInteger();
+        final CountDownLatch delivered = new CountDownLatch(1);
+
+        @BackgroundJob(id = "available", cacheTtl = 0)
+        public void available(EasyAsyncCallbacks callbacks) {
+            if(callbacks == EasyAsyncCallbacks.ON_BACKGROUND)
+                availableRuns.incrementAndGet();
+        }
+
+        @BackgroundJob(id = "consumer", dependsOn = {"available", "missing"})
+        public void consumer(EasyAsyncCallbacks callbacks) {
+            if(callbacks == EasyAsyncCallbacks.AFTER_EXECUTE)
+                delivered.countDown();
+        }
+    }
+
+    public static class Missing {
+        @BackgroundJob(id = "missing")
+        public void missing() {}
+    }
+
+    private void assertRejected(Object target, String message) throws Exception {
+        try {
+            fixture.register(target);
+            fail("the target has been registered");
+        } catch (EasyAsyncRuntimeException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(message));
+        }
+    }
+
+    @Test
+    public void cycleIsRejectedBeforeAnyJobOfTheTargetIsBound() throws Exception {
+        fixture.register(new First());
+        assertRejected(new CyclicSecond(), "in a cycle");
+
+        assertNull(fixture.core.mAnnotatedMethods.get("unrelated"));
+        assertNull(fixture.core.mAnnotatedMethods.get("second"));
+
+        //the registry is usable with a target that completes the graph without a cycle
+        Second second = new Second();
+        fixture.register(second);
+        fixture.start("second", null);
+        CoreFixture.await(second.delivered);
+    }
+
+    @Test
+    public void duplicateIdIsRejectedBeforeAnyJobOfTheTargetIsBound() throws Exception {
+        First first = new First();
+        fixture.register(first);
+        assertRejected(new Duplicate(), "unique id");
+
+        assertNull(fixture.core.mAnnotatedMethods.get("fresh"));
+        assertSame(first, fixture.core.mAnnotatedMethods.get("first").getTarget());
+    }
+
+    @Test
+    public void reattachOfTheSameClassIsAccepted() throws Exception {
+        fixture.register(new First());
+        fixture.register(new Second());
+        fixture.onMainThread(new Runnable() {
+            @Override
+            public void run() {
+                fixture.core.clearAnnotations();
+            }
+        });
+        First again = new First();
+        fixture.register(again);
+        assertSame(again, fixture.core.mAnnotatedMethods.get("first").getTarget());
+    }
+
+    @Test
+    public void startWithAnUndeclaredDependencyStartsNothing() throws Exception {
+        Consumer consumer = new Consumer();
+        fixture.register(consumer);
+        try {
+            fixture.start("consumer", null);
+            fail("the dependency is not declared");
+        } catch (EasyAsyncRuntimeException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("id=missing"));
+        }
+        fixture.drainMainThread();
+        assertNull(fixture.core.mAnnotatedMethods.get("consumer").getAsyncTask());
+        assertNull(fixture.core.mAnnotatedMethods.get("available").getAsyncTask());
+
+        //no run that never started is left for the next start to attach to
+        fixture.register(new Missing());
+        fixture.start("consumer", null);
+        CoreFixture.await(consumer.delivered);
+        assertEquals(1, consumer.availableRuns.get());
+    }
+}
@@ -0,0 +1,83 @@
+package gr.sieben.easyasync;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The dispatch of the annotated methods holds no global lock: background bodies run at the same time and the
+ * callbacks of the main thread are not blocked by a background body that is still running.
+ */
+public class DispatchConcurrencyTest {
+
+    private final CoreFixture fixture = new CoreFixture();
+
+    @After
+    public void tearDown() throws Exception {
+        fixture.destroy();
+    }
+
+    public static class Jobs {
+        final CyclicBarrier bothRunning = new CyclicBarrier(2);
+        final CountDownLatch releaseSlow = new CountDownLatch(1);
+        final CountDownLatch slowRunning = new CountDownLatch(1);
+        final CountDownLatch fastDelivered = new CountDownLatch(1);
+        final CountDownLatch overlapped = new CountDownLatch(2);
+
+        @BackgroundJob(id = "together", executor = ExecutorType.NAMED, pool = "pool")
+        public void together(EasyAsyncCallbacks callbacks, EasyAsyncResult<Object, Object> args) throws Exception {
+            if(callbacks == EasyAsyncCallbacks.ON_BACKGROUND) {
+                //both bodies must be inside the annotated method at the same time to pass the barrier
+                bothRunning.await(CoreFixture.TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                overlapped.countDown();
+            }
+        }
+
+        @BackgroundJob(id = "slow", executor = ExecutorType.NAMED, pool = "pool")
+        public void slow(EasyAsyncCallbacks callbacks) throws Exception {
+            if(callbacks == EasyAsyncCallbacks.ON_BACKGROUND) {
+                slowRunning.countDown();
+                releaseSlow.await(CoreFixture.TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            }
+        }
+
+        @BackgroundJob(id = "fast", executor = ExecutorType.NAMED, pool = "pool")
+        public void fast(EasyAsyncCallbacks callbacks) {
+            if(callbacks == EasyAsyncCallbacks.AFTER_EXECUTE)
+                fastDelivered.countDown();
+        }
+    }
+
+    @Test
+    public void backgroundBodiesRunAtTheSameTime() throws Exception {
+        Jobs jobs = new Jobs();
+        fixture.core.registerExecutor("pool", Executors.newFixedThreadPool(4));
+        fixture.register(jobs);
+        fixture.start("together", 1);
+        fixture.start("together", 2);
+        CoreFixture.await(jobs.overlapped);
+    }
+
+    @Test
+    public void mainThreadCallbacksAreNotBlockedByABackgroundBody() throws Exception {
+        Jobs jobs = new Jobs();
+        fixture.core.registerExecutor("pool", Executors.newFixedThreadPool(4));
+        fixture.register(jobs);
+        fixture.start("slow", null);
+        CoreFixture.await(jobs.slowRunning);
+        //the slow body is still inside the annotated method while the fast job starts and delivers its result
+        long startedAt = System.nanoTime();
+        fixture.start("fast", null);
+        CoreFixture.await(jobs.fastDelivered);
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+        assertTrue("the slow body has been released", jobs.releaseSlow.getCount() == 1);
+        assertTrue("took " + elapsed + "ms", elapsed < 1000);
+        jobs.releaseSlow.countDown();
+    }
+}
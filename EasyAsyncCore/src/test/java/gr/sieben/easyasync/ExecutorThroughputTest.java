@@ -0,0 +1,103 @@
+package gr.sieben.easyasync;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Independent background jobs overlap on the parallel and the named executors and run one after the other on the
+ * serial executor.
+ */
+public class ExecutorThroughputTest {
+
+    private static final int JOBS = 8;
+    private static final long JOB_MILLIS = 100;
+
+    private final CoreFixture fixture = new CoreFixture();
+
+    @After
+    public void tearDown() throws Exception {
+        fixture.destroy();
+    }
+
+    public static class Jobs {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        volatile CountDownLatch finished;
+
+        void work(EasyAsyncCallbacks callbacks) {
+            if(callbacks == EasyAsyncCallbacks.ON_BACKGROUND) {
+                int now = running.incrementAndGet();
+                synchronized (maxRunning) {
+                    maxRunning.set(Math.max(maxRunning.get(), now));
+                }
+                try {
+                    Thread.sleep(JOB_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                running.decrementAndGet();
+            } else if(callbacks == EasyAsyncCallbacks.AFTER_EXECUTE) {
+                finished.countDown();
+            }
+        }
+
+        @BackgroundJob(id = "serial")
+        public void serial(EasyAsyncCallbacks callbacks, EasyAsyncResult<Object, Object> args) {
+            work(callbacks);
+        }
+
+        @BackgroundJob(id = "parallel", executor = ExecutorType.PARALLEL)
+        public void parallel(EasyAsyncCallbacks callbacks, EasyAsyncResult<Object, Object> args) {
+            work(callbacks);
+        }
+
+        @BackgroundJob(id = "named", executor = ExecutorType.NAMED, pool = "wide")
+        public void named(EasyAsyncCallbacks callbacks, EasyAsyncResult<Object, Object> args) {
+            work(callbacks);
+        }
+    }
+
+    //starts the runs with different keys, so that none of them is deduplicated, and returns the time they took
+    private long runAll(Jobs jobs, String id) throws Exception {
+        jobs.finished = new CountDownLatch(JOBS);
+        long startedAt = System.nanoTime();
+        for(int i = 0; i < JOBS; i++)
+            fixture.start(id, i);
+        CoreFixture.await(jobs.finished);
+        return (System.nanoTime() - startedAt) / 1000000;
+    }
+
+    @Test
+    public void namedPoolOverlapsIndependentJobs() throws Exception {
+        Jobs jobs = new Jobs();
+        fixture.core.registerExecutor("wide", Executors.newFixedThreadPool(JOBS));
+        fixture.register(jobs);
+        long elapsed = runAll(jobs, "named");
+        assertEquals(JOBS, jobs.maxRunning.get());
+        assertTrue("took " + elapsed + "ms", elapsed < JOBS * JOB_MILLIS / 2);
+    }
+
+    @Test
+    public void parallelPoolOverlapsUpToTheCores() throws Exception {
+        Jobs jobs = new Jobs();
+        fixture.register(jobs);
+        runAll(jobs, "parallel");
+        assertEquals(Math.min(JOBS, Runtime.getRuntime().availableProcessors()), jobs.maxRunning.get());
+    }
+
+    @Test
+    public void serialExecutorRunsOneJobAtATime() throws Exception {
+        Jobs jobs = new Jobs();
+        fixture.register(jobs);
+        long elapsed = runAll(jobs, "serial");
+        assertEquals(1, jobs.maxRunning.get());
+        assertTrue("took " + elapsed + "ms", elapsed >= JOBS * JOB_MILLIS);
+    }
+}
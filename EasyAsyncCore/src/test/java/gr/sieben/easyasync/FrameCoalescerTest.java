@@ -0,0 +1,79 @@
+package gr.sieben.easyasync;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The drains of {@link gr.sieben.easyasync.FrameCoalescer}: their order, their budget and the callbacks that throw
+ */
+public class FrameCoalescerTest {
+
+    private final EventLoop mainThread = new EventLoop("test main"); //a daemon thread, it ends with the tests
+    private final List<String> delivered = Collections.synchronizedList(new ArrayList<String>());
+
+    private Runnable record(final String name, final CountDownLatch done) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                delivered.add(name);
+                done.countDown();
+            }
+        };
+    }
+
+    @Test
+    public void callbacksRunInOrderAcrossTheFramesWhenTheBudgetIsSpent() throws Exception {
+        FrameCoalescer coalescer = new FrameCoalescer(mainThread, 0); //one callback per drain
+        CountDownLatch done = new CountDownLatch(3);
+        coalescer.execute(record("first", done));
+        coalescer.execute(record("second", done));
+        coalescer.execute(record("third", done));
+        CoreFixture.await(done);
+        assertEquals(Arrays.asList("first", "second", "third"), delivered);
+    }
+
+    @Test
+    public void callbackThatThrowsDoesNotStopTheOthers() throws Exception {
+        FrameCoalescer coalescer = new FrameCoalescer(mainThread, 1000);
+        CountDownLatch done = new CountDownLatch(1);
+        final CountDownLatch queued = new CountDownLatch(1);
+        //the callbacks are queued together, so that one drain meets the exception with a callback left
+        mainThread.execute(new Runnable() {
+            @Override
+            public void run() {
+                Thread.currentThread().setUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+                    @Override
+                    public void uncaughtException(Thread thread, Throwable error) {
+                        delivered.add(error.getMessage());
+                    }
+                });
+                try {
+                    queued.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        coalescer.execute(new Runnable() {
+            @Override
+            public void run() {
+                throw new IllegalStateException("thrown");
+            }
+        });
+        coalescer.execute(record("after the exception", done));
+        queued.countDown();
+        CoreFixture.await(done);
+
+        CountDownLatch later = new CountDownLatch(1);
+        coalescer.execute(record("next drain", later));
+        CoreFixture.await(later);
+        assertEquals(Arrays.asList("thrown", "after the exception", "next drain"), delivered);
+    }
+}
@@ -0,0 +1,242 @@
+package gr.sieben.easyasync;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * The backpressure of {@link gr.sieben.easyasync.ItemStream}: a full buffer blocks the producer, a cancellation, a
+ * timeout or an interruption wakes it up, and stopping the stream flushes or drops the buffered items
+ */
+public class ItemStreamTest {
+
+    //a main thread whose runnables run only when the test drains it
+    private static class QueuedMainThread implements MainThreadExecutor {
+        private final LinkedList<Runnable> queue = new LinkedList<Runnable>();
+
+        @Override
+        public synchronized void execute(Runnable runnable) {
+            queue.add(runnable);
+        }
+
+        @Override
+        public void executeDelayed(Runnable runnable, long delayMillis) {
+            execute(runnable);
+        }
+
+        @Override
+        public void executeOnNextFrame(Runnable runnable) {
+            execute(runnable);
+        }
+
+        @Override
+        public void executeWhenIdle(Runnable runnable) {
+            execute(runnable);
+        }
+
+        @Override
+        public synchronized void remove(Runnable runnable) {
+            queue.remove(runnable);
+        }
+
+        @Override
+        public long elapsedMillis() {
+            return 0;
+        }
+
+        void drain() {
+            while(true) {
+                Runnable next;
+                synchronized (this) {
+                    next = queue.poll();
+                }
+                if(next == null)
+                    return;
+                next.run();
+            }
+        }
+    }
+
+    private final QueuedMainThread mainThread = new QueuedMainThread();
+    private final CancellationToken token = new CancellationToken();
+    private final List<List<Object>> batches = Collections.synchronizedList(new ArrayList<List<Object>>());
+    private Thread producer;
+
+    private final AsyncTaskCallbacks callbacks = new AsyncTaskCallbacks() {
+        @Override
+        public void onResponse(String id, EasyAsyncCallbacks easyAsyncCallbacks, EasyAsyncResult args) {
+            if(easyAsyncCallbacks == EasyAsyncCallbacks.ON_ITEM)
+                batches.add(new ArrayList<Object>(args.<Object>getItems()));
+        }
+
+        @Override
+        public void onFinished(String id, EasyAsyncTask asyncTask) {
+        }
+    };
+
+    @After
+    public void tearDown() throws InterruptedException {
+        if(producer != null) {
+            producer.interrupt();
+            producer.join(CoreFixture.TIMEOUT_SECONDS * 1000);
+        }
+    }
+
+    private ItemStream stream(int capacity) {
+        return new ItemStream("items", callbacks, new EasyAsyncResult(), capacity, mainThread, token);
+    }
+
+    //emits the items in a background thread, counting the ones that have been accepted and keeping the exception
+    private void produce(final ItemStream stream, final int items, final AtomicInteger emitted,
+                         final AtomicReference<RuntimeException> error) {
+        producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for(int i = 0; i < items; i++) {
+                        stream.emit(i);
+                        emitted.incrementAndGet();
+                    }
+                } catch (RuntimeException e) {
+                    error.set(e);
+                }
+            }
+        }, "producer");
+        producer.start();
+    }
+
+    private void awaitBlocked() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + CoreFixture.TIMEOUT_SECONDS * 1000;
+        while(producer.getState() != Thread.State.WAITING) {
+            if(System.currentTimeMillis() > deadline || !producer.isAlive())
+                throw new AssertionError("The producer has not blocked, it is " + producer.getState());
+            Thread.sleep(1);
+        }
+    }
+
+    private void awaitFinished() throws InterruptedException {
+        producer.join(CoreFixture.TIMEOUT_SECONDS * 1000);
+        assertTrue("the producer is still blocked", !producer.isAlive());
+    }
+
+    @Test
+    public void fullBufferBlocksTheProducerUntilTheMainThreadTakesTheItems() throws Exception {
+        ItemStream stream = stream(2);
+        AtomicInteger emitted = new AtomicInteger();
+        AtomicReference<RuntimeException> error = new AtomicReference<RuntimeException>();
+        produce(stream, 5, emitted, error);
+
+        awaitBlocked();
+        assertEquals(2, emitted.get());
+        while(producer.isAlive()) {
+            mainThread.drain();
+            Thread.sleep(1);
+        }
+        mainThread.drain();
+        awaitFinished();
+
+        List<Object> delivered = new ArrayList<Object>();
+        for(List<Object> batch : batches) {
+            assertTrue(batch + " is over the capacity", batch.size() <= 2);
+            delivered.addAll(batch);
+        }
+        assertEquals(Arrays.<Object>asList(0, 1, 2, 3, 4), delivered);
+        assertEquals(null, error.get());
+    }
+
+    @Test
+    public void cancellationWakesTheBlockedProducer() throws Exception {
+        ItemStream stream = stream(1);
+        AtomicInteger emitted = new AtomicInteger();
+        AtomicReference<RuntimeException> error = new AtomicReference<RuntimeException>();
+        produce(stream, 2, emitted, error);
+        awaitBlocked();
+
+        token.cancel(false);
+        awaitFinished();
+        assertEquals(1, emitted.get());
+        assertTrue(String.valueOf(error.get()), error.get() instanceof CancellationException);
+    }
+
+    @Test
+    public void timeoutWakesTheBlockedProducer() throws Exception {
+        ItemStream stream = stream(1);
+        AtomicInteger emitted = new AtomicInteger();
+        AtomicReference<RuntimeException> error = new AtomicReference<RuntimeException>();
+        produce(stream, 2, emitted, error);
+        awaitBlocked();
+
+        token.cancel(true); //what the timeout of the run does
+        awaitFinished();
+        assertEquals(1, emitted.get());
+        assertTrue(String.valueOf(error.get()), error.get() instanceof CancellationException);
+        assertTrue(token.isTimedOut());
+    }
+
+    @Test
+    public void interruptionOfTheBlockedProducerEndsTheEmitAndKeepsTheInterruptedStatus() throws Exception {
+        final ItemStream stream = stream(1);
+        stream.emit("first");
+        final AtomicReference<Boolean> interrupted = new AtomicReference<Boolean>();
+        producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    stream.emit("second");
+                } catch (CancellationException e) {
+                    interrupted.set(Thread.currentThread().isInterrupted());
+                }
+            }
+        }, "producer");
+        producer.start();
+        awaitBlocked();
+
+        producer.interrupt();
+        awaitFinished();
+        assertEquals(Boolean.TRUE, interrupted.get());
+    }
+
+    @Test
+    public void stopWithFlushDeliversTheBufferedItemsOnce() throws Exception {
+        ItemStream stream = stream(4);
+        stream.emit("a");
+        stream.emit("b");
+
+        stream.stop(true);
+        mainThread.drain(); //the scheduled delivery has been removed
+        assertEquals(Collections.singletonList(Arrays.<Object>asList("a", "b")), batches);
+    }
+
+    @Test
+    public void stopWithoutFlushDropsTheItemsAndWakesTheProducer() throws Exception {
+        ItemStream stream = stream(1);
+        AtomicInteger emitted = new AtomicInteger();
+        AtomicReference<RuntimeException> error = new AtomicReference<RuntimeException>();
+        produce(stream, 2, emitted, error);
+        awaitBlocked();
+
+        stream.stop(false);
+        awaitFinished();
+        mainThread.drain();
+        assertEquals(Collections.<List<Object>>emptyList(), batches);
+        assertTrue(String.valueOf(error.get()), error.get() instanceof CancellationException);
+        try {
+            stream.emit("after the stop");
+            fail("the stream has been stopped");
+        } catch (CancellationException e) {
+            //expected
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package gr.sieben.easyasync;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The keyed requests of a batched background job are merged into one run and fanned out to each key
+ */
+public class JobBatchingTest {
+
+    private final CoreFixture fixture = new CoreFixture();
+
+    @After
+    public void tearDown() throws Exception {
+        fixture.destroy();
+    }
+
+    public static class Rows {
+        final List<List<Object>> runs = Collections.synchronizedList(new ArrayList<List<Object>>());
+        final Map<Object, Object> delivered = new ConcurrentHashMap<Object, Object>();
+        final Map<Object, Throwable> failed = new ConcurrentHashMap<Object, Throwable>();
+        volatile CountDownLatch finished;
+
+        @SuppressWarnings("unchecked")
+        private void background(EasyAsyncResult<Object, Object> args) {
+            List<Object> keys = (List<Object>) args.getParameter();
+            runs.add(new ArrayList<Object>(keys));
+            Map<Object, Object> results = new HashMap<Object, Object>();
+            for(Object key : keys) {
+                results.put(key, "row " + key);
+            }
+            args.setResult(results);
+        }
+
+        private void last(EasyAsyncCallbacks callbacks, EasyAsyncResult<Object, Object> args) {
+            if(callbacks == EasyAsyncCallbacks.AFTER_EXECUTE) {
+                delivered.put(args.getParameter(), args.getResult());
+                finished.countDown();
+            } else if(callbacks == EasyAsyncCallbacks.CANCELLED) {
+                failed.put(args.getParameter(), args.getError());
+                finished.countDown();
+            }
+        }
+
+        @BackgroundJob(id = "rows", batchSize = 10, batchLinger = 100)
+        public void rows(EasyAsyncCallbacks callbacks, EasyAsyncResult<Object, Object> args) {
+            if(callbacks == EasyAsyncCallbacks.ON_BACKGROUND)
+                background(args);
+            last(callbacks, args);
+        }
+
+        @BackgroundJob(id = "pairs", batchSize = 2, batchLinger = 60000)
+        public void pairs(EasyAsyncCallbacks callbacks, EasyAsyncResult<Object, Object> args) {
+            if(callbacks == EasyAsyncCallbacks.ON_BACKGROUND)
+                background(args);
+            last(callbacks, args);
+        }
+
+        @BackgroundJob(id = "broken", batchSize = 10)
+        public void broken(EasyAsyncCallbacks callbacks, EasyAsyncResult<Object, Object> args) {
+            if(callbacks == EasyAsyncCallbacks.ON_BACKGROUND)
+                throw new IllegalStateException("broken batch");
+            last(callbacks, args);
+        }
+    }
+
+    private void startAll(final String id, final Object... keys) throws Exception {
+        fixture.onMainThread(new Runnable() {
+            @Override
+            public void run() {
+                for(Object key : keys) {
+                    fixture.core.start(id, key, null);
+                }
+            }
+        });
+    }
+
+    @Test
+    public void requestsWithinTheLingerShareOneRun() throws Exception {
+        Rows rows = new Rows();
+        rows.finished = new CountDownLatch(3);
+        fixture.register(rows);
+        startAll("rows", 1, 2, 3);
+        CoreFixture.await(rows.finished);
+
+        assertEquals(Collections.singletonList(Arrays.<Object>asList(1, 2, 3)), rows.runs);
+        assertEquals("row 1", rows.delivered.get(1));
+        assertEquals("row 2", rows.delivered.get(2));
+        assertEquals("row 3", rows.delivered.get(3));
+    }
+
+    @Test
+    public void fullBatchRunsWithoutWaitingForTheLinger() throws Exception {
+        Rows rows = new Rows();
+        rows.finished = new CountDownLatch(2);
+        fixture.register(rows);
+        long startedAt = System.nanoTime();
+        startAll("pairs", 1, 2);
+        CoreFixture.await(rows.finished);
+
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt) < 5000);
+        assertEquals(Collections.singletonList(Arrays.<Object>asList(1, 2)), rows.runs);
+    }
+
+    @Test
+    public void eachKeyIsCachedOnItsOwn() throws Exception {
+        Rows rows = new Rows();
+        rows.finished = new CountDownLatch(2);
+        fixture.register(rows);
+        startAll("rows", 1, 2);
+        CoreFixture.await(rows.finished);
+
+        rows.delivered.clear();
+        rows.finished = new CountDownLatch(1);
+        startAll("rows", 2);
+        CoreFixture.await(rows.finished);
+
+        assertEquals("row 2", rows.delivered.get(2));
+        assertEquals("the cached key has not run again", 1, rows.runs.size());
+    }
+
+    @Test
+    public void failedBatchFailsEveryKey() throws Exception {
+        Rows rows = new Rows();
+        rows.finished = new CountDownLatch(2);
+        fixture.register(rows);
+        startAll("broken", "a", "b");
+        CoreFixture.await(rows.finished);
+
+        assertNotNull(rows.failed.get("a"));
+        assertNotNull(rows.failed.get("b"));
+    }
+}
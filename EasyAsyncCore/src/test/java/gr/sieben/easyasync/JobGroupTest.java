@@ -0,0 +1,274 @@
+package gr.sieben.easyasync;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The limits of the groups of background jobs: the maximum concurrency, the queue, its order, the aging, the overflow
+ * policies and the slot of a run that times out
+ */
+public class JobGroupTest {
+
+    private static final String GROUP = "limited";
+
+    private final CoreFixture fixture = new CoreFixture();
+    private final Jobs jobs = new Jobs();
+
+    @Before
+    public void setUp() throws Exception {
+        fixture.onMainThread(new Runnable() {
+            @Override
+            public void run() {
+                fixture.core.setIoPoolBounds(4, 8); //more threads than the group may use
+            }
+        });
+        fixture.register(jobs);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        jobs.gate.countDown();
+        fixture.destroy();
+    }
+
+    public static class Jobs {
+        final CountDownLatch gate = new CountDownLatch(1);
+        final AtomicInteger concurrent = new AtomicInteger();
+        final AtomicInteger maxConcurrent = new AtomicInteger();
+        final List<Object> started = Collections.synchronizedList(new ArrayList<Object>());
+        final List<Object> cancelled = Collections.synchronizedList(new ArrayList<Object>());
+        volatile CountDownLatch finished = new CountDownLatch(0);
+        final CountDownLatch hungReturned = new CountDownLatch(1);
+
+        private void run(EasyAsyncCallbacks callbacks, EasyAsyncResult<Object, Object> args) throws InterruptedException {
+            if(callbacks == EasyAsyncCallbacks.ON_BACKGROUND) {
+                started.add(args.getParameter());
+                int now = concurrent.incrementAndGet();
+                while(true) {
+                    int max = maxConcurrent.get();
+                    if(now <= max || maxConcurrent.compareAndSet(max, now))
+                        break;
+                }
+                try {
+                    CoreFixture.await(gate);
+                } finally {
+                    concurrent.decrementAndGet();
+                }
+            } else if(callbacks == EasyAsyncCallbacks.AFTER_EXECUTE) {
+                finished.countDown();
+            } else if(callbacks == EasyAsyncCallbacks.CANCELLED) {
+                cancelled.add(args.getParameter());
+                finished.countDown();
+            }
+        }
+
+        @BackgroundJob(id = "first", executor = ExecutorType.IO, group = GROUP, cacheTtl = 0)
+        public void first(EasyAsyncCallbacks callbacks, EasyAsyncResult<Object, Object> args) throws InterruptedException {
+            run(callbacks, args);
+        }
+
+        @BackgroundJob(id = "second", executor = ExecutorType.IO, group = GROUP, cacheTtl = 0)
+        public void second(EasyAsyncCallbacks callbacks, EasyAsyncResult<Object, Object> args) throws InterruptedException {
+            run(callbacks, args);
+        }
+
+        @BackgroundJob(id = "hung", executor = ExecutorType.IO, group = GROUP, cacheTtl = 0, timeout = 50)
+        public void hung(EasyAsyncCallbacks callbacks, EasyAsyncResult<Object, Object> args) {
+            if(callbacks == EasyAsyncCallbacks.ON_BACKGROUND) {
+                started.add(args.getParameter());
+                while(gate.getCount() > 0) {
+                    try {
+                        gate.await(CoreFixture.TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        //blocks like a read that ignores the interruption
+                    }
+                }
+                hungReturned.countDown();
+            }
+        }
+    }
+
+    private void limit(final int maxConcurrency, final int maxQueued, final OverflowPolicy policy) throws Exception {
+        fixture.onMainThread(new Runnable() {
+            @Override
+            public void run() {
+                fixture.core.setGroupLimit(GROUP, maxConcurrency, maxQueued, policy);
+            }
+        });
+    }
+
+    private void start(final String id, final Object key, final int priority) throws Exception {
+        fixture.onMainThread(new Runnable() {
+            @Override
+            public void run() {
+                fixture.core.start(id, key, null, priority);
+            }
+        });
+    }
+
+    private void start(String id, Object key) throws Exception {
+        start(id, key, EasyAsyncCore.DEFAULT_PRIORITY);
+    }
+
+    private void awaitIdle() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + CoreFixture.TIMEOUT_SECONDS * 1000;
+        while(fixture.core.getGroupRunningCount(GROUP) > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5); //the slot is freed after the run has posted its result
+        }
+        assertEquals(0, fixture.core.getGroupRunningCount(GROUP));
+    }
+
+    private void awaitStarted(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + CoreFixture.TIMEOUT_SECONDS * 1000;
+        while(jobs.started.size() < count) {
+            if(System.currentTimeMillis() > deadline)
+                throw new AssertionError("Timed out waiting for " + count + " runs to start");
+            Thread.sleep(5);
+        }
+    }
+
+    private void releaseAndAwait(int runs) throws Exception {
+        jobs.gate.countDown();
+        CoreFixture.await(jobs.finished);
+        fixture.drainMainThread();
+        assertEquals(runs, jobs.started.size());
+    }
+
+    @Test
+    public void runsBeyondTheMaximumConcurrencyWait() throws Exception {
+        limit(2, 10, OverflowPolicy.REJECT);
+        jobs.finished = new CountDownLatch(4);
+        start("first", 1);
+        start("first", 2);
+        start("first", 3);
+        start("first", 4);
+        awaitStarted(2);
+
+        assertEquals(2, fixture.core.getGroupRunningCount(GROUP));
+        assertEquals(2, fixture.core.getGroupQueueDepth(GROUP));
+        releaseAndAwait(4);
+        assertEquals(2, jobs.maxConcurrent.get());
+        awaitIdle();
+        assertEquals(0, fixture.core.getGroupQueueDepth(GROUP));
+    }
+
+    @Test
+    public void waitingRunsStartInOrderOfPriorityThenArrival() throws Exception {
+        limit(1, 10, OverflowPolicy.REJECT);
+        jobs.finished = new CountDownLatch(4);
+        start("first", "running");
+        awaitStarted(1);
+        start("first", "low", BackgroundJob.PRIORITY_LOW);
+        start("first", "high", BackgroundJob.PRIORITY_HIGH);
+        start("first", "low after", BackgroundJob.PRIORITY_LOW);
+
+        releaseAndAwait(4);
+        assertEquals(Arrays.<Object>asList("running", "high", "low", "low after"), jobs.started);
+    }
+
+    @Test
+    public void rejectDropsTheNewRun() throws Exception {
+        limit(1, 1, OverflowPolicy.REJECT);
+        jobs.finished = new CountDownLatch(3);
+        start("first", 1);
+        awaitStarted(1);
+        start("first", 2);
+        start("first", 3);
+
+        releaseAndAwait(2);
+        assertEquals(Arrays.<Object>asList(3), jobs.cancelled);
+        assertEquals(Arrays.<Object>asList(1, 2), jobs.started);
+    }
+
+    @Test
+    public void dropOldestDropsTheRunThatHasWaitedTheLongest() throws Exception {
+        limit(1, 1, OverflowPolicy.DROP_OLDEST);
+        jobs.finished = new CountDownLatch(3);
+        start("first", 1);
+        awaitStarted(1);
+        start("first", 2);
+        start("first", 3);
+
+        releaseAndAwait(2);
+        assertEquals(Arrays.<Object>asList(2), jobs.cancelled);
+        assertEquals(Arrays.<Object>asList(1, 3), jobs.started);
+    }
+
+    @Test
+    public void replaceSameIdDropsTheWaitingRunOfTheSameJobOnly() throws Exception {
+        limit(1, 1, OverflowPolicy.REPLACE_SAME_ID);
+        jobs.finished = new CountDownLatch(4);
+        start("first", "running");
+        awaitStarted(1);
+        start("second", "replaced");
+        start("second", "replacement");
+        start("first", "no waiting run to replace");
+
+        releaseAndAwait(2);
+        assertEquals(Arrays.<Object>asList("replaced", "no waiting run to replace"), jobs.cancelled);
+        assertEquals(Arrays.<Object>asList("running", "replacement"), jobs.started);
+    }
+
+    @Test
+    public void raisedLimitLetsTheWaitingRunsIn() throws Exception {
+        limit(1, 10, OverflowPolicy.REJECT);
+        jobs.finished = new CountDownLatch(3);
+        start("first", 1);
+        start("first", 2);
+        start("first", 3);
+        awaitStarted(1);
+
+        limit(3, 10, OverflowPolicy.REJECT);
+        awaitStarted(3);
+        assertEquals(0, fixture.core.getGroupQueueDepth(GROUP));
+        releaseAndAwait(3);
+    }
+
+    @Test
+    public void agingLetsAWaitingRunOfLowPriorityPassTheNewerRunsOfHigherPriority() throws Exception {
+        fixture.onMainThread(new Runnable() {
+            @Override
+            public void run() {
+                fixture.core.setPriorityAgingInterval(5);
+            }
+        });
+        limit(1, 10, OverflowPolicy.REJECT);
+        jobs.finished = new CountDownLatch(3);
+        start("first", "running");
+        awaitStarted(1);
+        start("first", "low", BackgroundJob.PRIORITY_LOW);
+        Thread.sleep(200); //more than the levels between the low and the high priority
+        start("first", "high", BackgroundJob.PRIORITY_HIGH);
+
+        releaseAndAwait(3);
+        assertEquals(Arrays.<Object>asList("running", "low", "high"), jobs.started);
+    }
+
+    @Test
+    public void timedOutRunGivesItsSlotUpOnce() throws Exception {
+        limit(1, 10, OverflowPolicy.REJECT);
+        jobs.finished = new CountDownLatch(1);
+        start("hung", "hung");
+        awaitStarted(1);
+        start("first", "after the timeout");
+
+        //the thread of the hung run never returns until the gate opens
+        awaitStarted(2);
+        assertEquals(1, fixture.core.getGroupRunningCount(GROUP));
+        releaseAndAwait(2);
+        CoreFixture.await(jobs.hungReturned);
+        Thread.sleep(50); //the executor frees the slot right after the job has returned
+        awaitIdle(); //but not a second time
+    }
+}
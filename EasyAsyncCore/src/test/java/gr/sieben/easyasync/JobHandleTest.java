@@ -0,0 +1,248 @@
+package gr.sieben.easyasync;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * The composition of {@link gr.sieben.easyasync.JobHandle} and the outcome that each end of a run gives to it
+ */
+public class JobHandleTest {
+
+    private final CoreFixture fixture = new CoreFixture();
+
+    @After
+    public void tearDown() throws Exception {
+        fixture.destroy();
+    }
+
+    private static <R> R getNow(JobHandle<R> handle) throws Exception {
+        return handle.get(CoreFixture.TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private static Throwable failureOf(JobHandle<?> handle) throws Exception {
+        try {
+            getNow(handle);
+        } catch (ExecutionException e) {
+            return e.getCause();
+        }
+        fail("the handle has succeeded");
+        return null;
+    }
+
+    @Test
+    public void thenAppliesTheContinuationAndSkipsItAfterAFailure() throws Exception {
+        JobHandle<Integer> source = new JobHandle<Integer>();
+        JobHandle<String> mapped = source.then(new JobHandle.Continuation<Integer, String>() {
+            @Override
+            public String apply(Integer result) {
+                return "value " + result;
+            }
+        }, JobHandle.DIRECT);
+        source.complete(7, null);
+        assertEquals("value 7", getNow(mapped));
+
+        IllegalStateException error = new IllegalStateException("failed");
+        JobHandle<Integer> failing = new JobHandle<Integer>();
+        JobHandle<String> skipped = failing.then(new JobHandle.Continuation<Integer, String>() {
+            @Override
+            public String apply(Integer result) {
+                throw new AssertionError("the continuation of a failed handle has run");
+            }
+        }, JobHandle.DIRECT);
+        failing.complete(null, error);
+        assertSame(error, failureOf(skipped));
+    }
+
+    @Test
+    public void exceptionOfAContinuationFailsTheNextHandle() throws Exception {
+        JobHandle<Integer> source = new JobHandle<Integer>();
+        final Exception error = new Exception("continuation");
+        JobHandle<String> mapped = source.then(new JobHandle.Continuation<Integer, String>() {
+            @Override
+            public String apply(Integer result) throws Exception {
+                throw error;
+            }
+        }, JobHandle.DIRECT);
+        source.complete(1, null);
+        assertSame(error, failureOf(mapped));
+        assertFalse(mapped.isCancelled());
+    }
+
+    @Test
+    public void combineWaitsForBothHandles() throws Exception {
+        JobHandle<Integer> first = new JobHandle<Integer>();
+        JobHandle<Integer> second = new JobHandle<Integer>();
+        JobHandle<Integer> sum = first.combine(second, new JobHandle.Combiner<Integer, Integer, Integer>() {
+            @Override
+            public Integer combine(Integer a, Integer b) {
+                return a + b;
+            }
+        }, JobHandle.DIRECT);
+        first.complete(2, null);
+        assertFalse(sum.isDone());
+        second.complete(3, null);
+        assertEquals(Integer.valueOf(5), getNow(sum));
+    }
+
+    @Test
+    public void raceTakesTheFirstSuccessAndFailsOnlyWhenAllFail() throws Exception {
+        JobHandle<String> slow = new JobHandle<String>();
+        JobHandle<String> fast = new JobHandle<String>();
+        JobHandle<String> failed = new JobHandle<String>();
+        JobHandle<String> winner = JobHandle.race(slow, failed, fast);
+        failed.complete(null, new IllegalStateException("failed"));
+        assertFalse(winner.isDone());
+        fast.complete("fast", null);
+        slow.complete("slow", null);
+        assertEquals("fast", getNow(winner));
+
+        JobHandle<String> a = new JobHandle<String>();
+        JobHandle<String> b = new JobHandle<String>();
+        JobHandle<String> none = JobHandle.race(a, b);
+        a.complete(null, new IllegalStateException("a"));
+        IllegalStateException last = new IllegalStateException("b");
+        b.complete(null, last);
+        assertSame(last, failureOf(none));
+    }
+
+    @Test
+    public void whenCompleteRunsOnTheExecutorAndHandleCompletesOnce() throws Exception {
+        JobHandle<String> handle = new JobHandle<String>();
+        final AtomicReference<String> received = new AtomicReference<String>();
+        final CountDownLatch called = new CountDownLatch(1);
+        handle.whenComplete(new JobHandle.Callback<String>() {
+            @Override
+            public void onComplete(String result, Throwable error) {
+                received.set(result);
+                called.countDown();
+            }
+        }, fixture.mainThread);
+        assertTrue(handle.complete("first", null));
+        assertFalse(handle.complete("second", null));
+        assertFalse(handle.cancel(false));
+        CoreFixture.await(called);
+        assertEquals("first", received.get());
+    }
+
+    @Test
+    public void cancelledHandleThrowsCancellationException() throws Exception {
+        JobHandle<String> handle = new JobHandle<String>();
+        assertTrue(handle.cancel(false));
+        assertTrue(handle.isCancelled());
+        try {
+            getNow(handle);
+            fail("the handle has been cancelled");
+        } catch (CancellationException e) {
+            //expected
+        }
+    }
+
+    public static class Jobs {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch running = new CountDownLatch(1);
+
+        @BackgroundJob(id = "value")
+        public void value(EasyAsyncCallbacks callbacks, EasyAsyncResult<Object, Object> args) {
+            if(callbacks == EasyAsyncCallbacks.ON_BACKGROUND)
+                args.setResult("computed");
+        }
+
+        @BackgroundJob(id = "failing")
+        public void failing(EasyAsyncCallbacks callbacks) {
+            if(callbacks == EasyAsyncCallbacks.ON_BACKGROUND)
+                throw new IllegalStateException("failing");
+        }
+
+        @BackgroundJob(id = "slow", timeout = 50, cacheTtl = 0)
+        public void slow(EasyAsyncCallbacks callbacks) {
+            if(callbacks == EasyAsyncCallbacks.ON_BACKGROUND) {
+                running.countDown();
+                while(release.getCount() > 0) {
+                    try {
+                        release.await(CoreFixture.TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        //blocks like a read that ignores the interruption
+                    }
+                }
+            }
+        }
+    }
+
+    private JobHandle<Object> submit(final String id) throws Exception {
+        final AtomicReference<JobHandle<Object>> handle = new AtomicReference<JobHandle<Object>>();
+        fixture.onMainThread(new Runnable() {
+            @Override
+            public void run() {
+                handle.set(fixture.core.<Object>submit(id));
+            }
+        });
+        return handle.get();
+    }
+
+    @Test
+    public void handleOfARunAndOfItsCachedResultSucceed() throws Exception {
+        fixture.register(new Jobs());
+        assertEquals("computed", getNow(submit("value")));
+        fixture.drainMainThread();
+        assertEquals("computed", getNow(submit("value")));
+    }
+
+    @Test
+    public void failedRunFailsTheHandleWithItsError() throws Exception {
+        fixture.register(new Jobs());
+        JobHandle<Object> handle = submit("failing");
+        Throwable error = failureOf(handle);
+        while(error != null && !(error instanceof IllegalStateException)) {
+            error = error.getCause(); //the invocation wraps what the job has thrown
+        }
+        assertEquals("failing", error == null ? null : error.getMessage());
+        assertFalse(handle.isCancelled());
+    }
+
+    @Test
+    public void timedOutRunFailsTheHandleWithATimeout() throws Exception {
+        Jobs jobs = new Jobs();
+        fixture.register(jobs);
+        JobHandle<Object> handle = submit("slow");
+        try {
+            assertTrue(failureOf(handle) instanceof TimeoutException);
+            assertFalse(handle.isCancelled());
+        } finally {
+            jobs.release.countDown();
+        }
+    }
+
+    @Test
+    public void cancelledRunCancelsTheHandle() throws Exception {
+        Jobs jobs = new Jobs();
+        fixture.register(jobs);
+        JobHandle<Object> handle = submit("slow");
+        CoreFixture.await(jobs.running);
+        fixture.onMainThread(new Runnable() {
+            @Override
+            public void run() {
+                fixture.core.cancel("slow");
+            }
+        });
+        jobs.release.countDown();
+        try {
+            getNow(handle);
+            fail("the run has been cancelled");
+        } catch (CancellationException e) {
+            assertTrue(handle.isCancelled());
+        }
+    }
+}
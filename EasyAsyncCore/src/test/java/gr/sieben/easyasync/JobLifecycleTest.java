@@ -0,0 +1,245 @@
+package gr.sieben.easyasync;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * The states of a run: the last callback of a completed, a cancelled and a failed run, and what the next start does
+ */
+public class JobLifecycleTest {
+
+    private final CoreFixture fixture = new CoreFixture();
+
+    @After
+    public void tearDown() throws Exception {
+        fixture.destroy();
+    }
+
+    public static class Jobs {
+        final List<EasyAsyncCallbacks> delivered = Collections.synchronizedList(new ArrayList<EasyAsyncCallbacks>());
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        final AtomicInteger attempts = new AtomicInteger();
+        final AtomicInteger dependentRuns = new AtomicInteger();
+        final CountDownLatch running = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        volatile CountDownLatch finished = new CountDownLatch(1);
+
+        private void onLast(EasyAsyncCallbacks callbacks, EasyAsyncResult<Object, Object> args) {
+            if(callbacks == EasyAsyncCallbacks.AFTER_EXECUTE || callbacks == EasyAsyncCallbacks.CANCELLED) {
+                delivered.add(callbacks);
+                error.set(args.getError());
+                finished.countDown();
+            }
+        }
+
+        @BackgroundJob(id = "flaky", cacheTtl = 0)
+        public void flaky(EasyAsyncCallbacks callbacks, EasyAsyncResult<Object, Object> args) {
+            if(callbacks == EasyAsyncCallbacks.ON_BACKGROUND) {
+                if(attempts.incrementAndGet() == 1)
+                    throw new IllegalStateException("boom");
+                args.setResult("ok");
+            }
+            onLast(callbacks, args);
+        }
+
+        @BackgroundJob(id = "blocking", cacheTtl = 0)
+        public void blocking(EasyAsyncCallbacks callbacks, EasyAsyncResult<Object, Object> args) throws Exception {
+            if(callbacks == EasyAsyncCallbacks.ON_BACKGROUND) {
+                running.countDown();
+                release.await(CoreFixture.TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                args.setResult("ignored");
+            }
+            onLast(callbacks, args);
+        }
+
+        @BackgroundJob(id = "dependent", dependsOn = "flaky", cacheTtl = 0)
+        public void dependent(EasyAsyncCallbacks callbacks, EasyAsyncResult<Object, Object> args) {
+            if(callbacks == EasyAsyncCallbacks.ON_BACKGROUND)
+                dependentRuns.incrementAndGet();
+            onLast(callbacks, args);
+        }
+    }
+
+    public static class Direct {
+        final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+        volatile CountDownLatch finished = new CountDownLatch(1);
+
+        @BackgroundJob(id = "erroneous", cacheTtl = 0)
+        public void erroneous(EasyAsyncCallbacks callbacks, EasyAsyncResult<Object, Object> args) {
+            if(callbacks == EasyAsyncCallbacks.ON_BACKGROUND)
+                throw new AssertionError("error");
+            if(callbacks == EasyAsyncCallbacks.CANCELLED) {
+                errors.add(args.getError());
+                finished.countDown();
+            }
+        }
+    }
+
+    //stands in for the generated dispatcher, which lets an error of the annotated method through unwrapped
+    public static class Direct$$EasyAsyncDispatcher implements EasyAsyncDispatcher {
+        @Override
+        public int getJobCount() {
+            return 1;
+        }
+
+        @Override
+        public BackgroundJob getJob(int index) {
+            try {
+                return Direct.class.getMethod("erroneous", EasyAsyncCallbacks.class, EasyAsyncResult.class)
+                        .getAnnotation(BackgroundJob.class);
+            } catch (NoSuchMethodException e) {
+                throw new AssertionError(e);
+            }
+        }
+
+        @Override
+        public String getMethodName(int index) {
+            return "erroneous";
+        }
+
+        @Override
+        public int getParameterCount(int index) {
+            return 2;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void dispatch(Object target, int index, EasyAsyncCallbacks callbacks, EasyAsyncResult args) {
+            ((Direct) target).erroneous(callbacks, args);
+        }
+    }
+
+    private static boolean causedBy(Throwable error, String message) {
+        for(Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if(message.equals(cause.getMessage()))
+                return true;
+        }
+        return false;
+    }
+
+    @Test
+    public void failedRunDeliversCancelledWithItsError() throws Exception {
+        Jobs jobs = new Jobs();
+        fixture.register(jobs);
+        fixture.start("flaky", null);
+        CoreFixture.await(jobs.finished);
+
+        assertEquals(Collections.singletonList(EasyAsyncCallbacks.CANCELLED), jobs.delivered);
+        assertTrue(String.valueOf(jobs.error.get()), causedBy(jobs.error.get(), "boom"));
+    }
+
+    @Test
+    public void startAfterAFailedRunRunsAgain() throws Exception {
+        Jobs jobs = new Jobs();
+        fixture.register(jobs);
+        fixture.start("flaky", null);
+        CoreFixture.await(jobs.finished);
+
+        jobs.finished = new CountDownLatch(1);
+        fixture.start("flaky", null);
+        CoreFixture.await(jobs.finished);
+
+        assertEquals(2, jobs.attempts.get());
+        assertEquals(EasyAsyncCallbacks.AFTER_EXECUTE, jobs.delivered.get(1));
+        assertEquals(null, jobs.error.get());
+    }
+
+    @Test
+    public void handleOfAFailedRunFailsWithItsError() throws Exception {
+        Jobs jobs = new Jobs();
+        fixture.register(jobs);
+        final AtomicReference<JobHandle<Object>> handle = new AtomicReference<JobHandle<Object>>();
+        fixture.onMainThread(new Runnable() {
+            @Override
+            public void run() {
+                handle.set(fixture.core.submit("flaky"));
+            }
+        });
+        try {
+            handle.get().get(CoreFixture.TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            fail("the run has failed");
+        } catch (ExecutionException e) {
+            assertTrue(causedBy(e.getCause(), "boom"));
+        }
+        assertFalse(handle.get().isCancelled());
+    }
+
+    @Test
+    public void dependentOfAFailedRunFailsWithTheSameError() throws Exception {
+        Jobs jobs = new Jobs();
+        jobs.finished = new CountDownLatch(2);
+        fixture.register(jobs);
+        fixture.start("dependent", null);
+        CoreFixture.await(jobs.finished);
+        fixture.drainMainThread();
+
+        assertEquals(0, jobs.dependentRuns.get());
+        assertEquals(2, jobs.delivered.size());
+        assertTrue(causedBy(jobs.error.get(), "boom"));
+    }
+
+    @Test
+    public void cancelledRunDeliversCancelledWithoutError() throws Exception {
+        Jobs jobs = new Jobs();
+        fixture.register(jobs);
+        fixture.start("blocking", null);
+        CoreFixture.await(jobs.running);
+        fixture.onMainThread(new Runnable() {
+            @Override
+            public void run() {
+                fixture.core.cancel("blocking");
+            }
+        });
+        jobs.release.countDown();
+        CoreFixture.await(jobs.finished);
+        fixture.drainMainThread();
+
+        assertEquals(Collections.singletonList(EasyAsyncCallbacks.CANCELLED), jobs.delivered);
+        assertSame(null, jobs.error.get());
+    }
+
+    @Test
+    public void errorOfTheBackgroundPhaseFinishesTheRunWithoutReachingTheThreadHandler() throws Exception {
+        final List<Throwable> uncaught = Collections.synchronizedList(new ArrayList<Throwable>());
+        Thread.UncaughtExceptionHandler previous = Thread.getDefaultUncaughtExceptionHandler();
+        Thread.setDefaultUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+            @Override
+            public void uncaughtException(Thread thread, Throwable error) {
+                uncaught.add(error);
+            }
+        });
+        try {
+            Direct direct = new Direct();
+            fixture.register(direct);
+            fixture.start("erroneous", null);
+            CoreFixture.await(direct.finished);
+
+            //the failed run is not left running, so the next start runs again instead of attaching to it
+            direct.finished = new CountDownLatch(1);
+            fixture.start("erroneous", null);
+            CoreFixture.await(direct.finished);
+            fixture.drainMainThread();
+
+            assertEquals(2, direct.errors.size());
+            assertTrue(String.valueOf(direct.errors.get(0)), direct.errors.get(0) instanceof AssertionError);
+            assertEquals(Collections.<Throwable>emptyList(), uncaught);
+        } finally {
+            Thread.setDefaultUncaughtExceptionHandler(previous);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package gr.sieben.easyasync;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The metrics that the core reports to {@link gr.sieben.easyasync.JobMetricsRecorder} for each run
+ */
+public class JobMetricsTest {
+
+    private final CoreFixture fixture = new CoreFixture();
+    private final JobMetricsRecorder recorder = new JobMetricsRecorder();
+
+    @Before
+    public void setUp() throws Exception {
+        fixture.onMainThread(new Runnable() {
+            @Override
+            public void run() {
+                fixture.core.setMetricsListener(recorder);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        fixture.destroy();
+    }
+
+    public static class Jobs {
+        final AtomicInteger attempts = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+        volatile CountDownLatch finished = new CountDownLatch(1);
+
+        @BackgroundJob(id = "sleepy")
+        public void sleepy(EasyAsyncCallbacks callbacks) throws Exception {
+            if(callbacks == EasyAsyncCallbacks.ON_BACKGROUND)
+                Thread.sleep(20);
+            else if(callbacks == EasyAsyncCallbacks.AFTER_EXECUTE)
+                finished.countDown();
+        }
+
+        @BackgroundJob(id = "retried", maxAttempts = 3, retryDelay = 5, retryJitter = 0)
+        public void retried(EasyAsyncCallbacks callbacks) {
+            if(callbacks == EasyAsyncCallbacks.ON_BACKGROUND && attempts.incrementAndGet() < 3)
+                throw new IllegalStateException("attempt " + attempts.get());
+            if(callbacks == EasyAsyncCallbacks.AFTER_EXECUTE)
+                finished.countDown();
+        }
+
+        @BackgroundJob(id = "failing")
+        public void failing(EasyAsyncCallbacks callbacks) {
+            if(callbacks == EasyAsyncCallbacks.ON_BACKGROUND)
+                throw new IllegalStateException("failing");
+            if(callbacks == EasyAsyncCallbacks.CANCELLED)
+                finished.countDown();
+        }
+
+        @BackgroundJob(id = "afterFailing", dependsOn = "failing")
+        public void afterFailing(EasyAsyncCallbacks callbacks) {
+            if(callbacks == EasyAsyncCallbacks.CANCELLED)
+                finished.countDown();
+        }
+
+        @BackgroundJob(id = "hanging", timeout = 20, cacheTtl = 0)
+        public void hanging(EasyAsyncCallbacks callbacks) throws InterruptedException {
+            if(callbacks == EasyAsyncCallbacks.ON_BACKGROUND) {
+                while(release.getCount() > 0) {
+                    try {
+                        CoreFixture.await(release);
+                    } catch (InterruptedException e) {
+                        //ignores the interruption of the timeout, like a blocked read
+                    }
+                }
+            }
+            if(callbacks == EasyAsyncCallbacks.TIMED_OUT)
+                finished.countDown();
+        }
+
+        @BackgroundJob(id = "afterHanging", dependsOn = "hanging")
+        public void afterHanging(EasyAsyncCallbacks callbacks) {
+            if(callbacks == EasyAsyncCallbacks.CANCELLED)
+                finished.countDown();
+        }
+    }
+
+    @Test
+    public void runRecordsItsPhasesAndTheCache() throws Exception {
+        Jobs jobs = new Jobs();
+        fixture.register(jobs);
+        fixture.start("sleepy", null);
+        CoreFixture.await(jobs.finished);
+        jobs.finished = new CountDownLatch(1);
+        fixture.start("sleepy", null); //cached
+        CoreFixture.await(jobs.finished);
+        fixture.drainMainThread();
+
+        JobMetrics metrics = recorder.getMetrics("sleepy");
+        assertEquals(1, metrics.getQueueWait().getCount());
+        assertEquals(1, metrics.getBackground().getCount());
+        assertTrue(metrics.getBackground().getMaxMillis() >= 20);
+        assertTrue("before and after execute", metrics.getMainThread().getCount() >= 2);
+        assertEquals(1, metrics.getCacheMissCount());
+        assertEquals(1, metrics.getCacheHitCount());
+        assertEquals(0, metrics.getErrorCount());
+        assertEquals(0, metrics.getCancelledCount());
+    }
+
+    @Test
+    public void retriesAreCountedAndTheSucceedingAttemptIsNotAnError() throws Exception {
+        Jobs jobs = new Jobs();
+        fixture.register(jobs);
+        fixture.start("retried", null);
+        CoreFixture.await(jobs.finished);
+        fixture.drainMainThread();
+
+        JobMetrics metrics = recorder.getMetrics("retried");
+        assertEquals(3, jobs.attempts.get());
+        assertEquals(2, metrics.getRetryCount());
+        assertEquals(0, metrics.getErrorCount());
+    }
+
+    @Test
+    public void failureIsCountedAsAnErrorOnly() throws Exception {
+        Jobs jobs = new Jobs();
+        fixture.register(jobs);
+        fixture.start("failing", null);
+        CoreFixture.await(jobs.finished);
+        fixture.drainMainThread();
+
+        JobMetrics metrics = recorder.getMetrics("failing");
+        assertEquals(1, metrics.getErrorCount());
+        assertEquals(0, metrics.getCancelledCount());
+    }
+
+    @Test
+    public void dependentOfAFailedRunIsCountedAsCancelled() throws Exception {
+        Jobs jobs = new Jobs();
+        jobs.finished = new CountDownLatch(2);
+        fixture.register(jobs);
+        fixture.start("afterFailing", null);
+        CoreFixture.await(jobs.finished);
+        fixture.drainMainThread();
+
+        assertEquals(1, recorder.getMetrics("failing").getErrorCount());
+        assertEquals(0, recorder.getMetrics("failing").getCancelledCount());
+        JobMetrics dependent = recorder.getMetrics("afterFailing");
+        assertEquals(0, dependent.getErrorCount());
+        assertEquals(1, dependent.getCancelledCount());
+        assertEquals(0, dependent.getTimedOutCount());
+    }
+
+    @Test
+    public void dependentOfATimedOutRunIsCountedAsTimedOut() throws Exception {
+        Jobs jobs = new Jobs();
+        jobs.finished = new CountDownLatch(2);
+        fixture.register(jobs);
+        try {
+            fixture.start("afterHanging", null);
+            CoreFixture.await(jobs.finished);
+            fixture.drainMainThread();
+        } finally {
+            jobs.release.countDown();
+        }
+
+        assertEquals(1, recorder.getMetrics("hanging").getTimedOutCount());
+        JobMetrics dependent = recorder.getMetrics("afterHanging");
+        assertEquals(1, dependent.getCancelledCount());
+        assertEquals(1, dependent.getTimedOutCount());
+        assertEquals(0, dependent.getErrorCount());
+    }
+}
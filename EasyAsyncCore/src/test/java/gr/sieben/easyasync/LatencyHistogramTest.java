@@ -0,0 +1,83 @@
+package gr.sieben.easyasync;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The buckets, the percentiles and the concurrent recording of {@link gr.sieben.easyasync.LatencyHistogram}
+ */
+public class LatencyHistogramTest {
+
+    private static final double DELTA = 1e-9;
+
+    @Test
+    public void durationsFallInTheBucketOfTheirSignificantBits() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(500); //below a microsecond
+        histogram.record(TimeUnit.MICROSECONDS.toNanos(1));
+        histogram.record(TimeUnit.MICROSECONDS.toNanos(3));
+        histogram.record(-1); //recorded as zero
+        histogram.record(TimeUnit.DAYS.toNanos(1)); //past the last bucket
+
+        assertEquals(2, histogram.getBucketCount(0));
+        assertEquals(1, histogram.getBucketCount(1));
+        assertEquals(1, histogram.getBucketCount(2));
+        assertEquals(1, histogram.getBucketCount(LatencyHistogram.BUCKET_COUNT - 1));
+        assertEquals(5, histogram.getCount());
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.getBucketUpperBoundNanos(LatencyHistogram.BUCKET_COUNT - 1));
+    }
+
+    @Test
+    public void percentileIsTheUpperBoundOfItsBucketButNotAboveTheMaximum() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for(int i = 0; i < 99; i++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(100)); //bucket 7, below 128 microseconds
+        }
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(5));
+
+        assertEquals(0.128, histogram.getPercentileMillis(50), DELTA);
+        assertEquals(0.128, histogram.getPercentileMillis(99), DELTA);
+        assertEquals(5, histogram.getPercentileMillis(100), DELTA);
+        assertEquals(5, histogram.getMaxMillis(), DELTA);
+        assertEquals((99 * 0.1 + 5) / 100, histogram.getAverageMillis(), DELTA);
+    }
+
+    @Test
+    public void emptyAndResetHistogramsReportZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentileMillis(99), DELTA);
+        assertEquals(0, histogram.getAverageMillis(), DELTA);
+        histogram.record(1000);
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMaxMillis(), DELTA);
+        assertEquals(0, histogram.getPercentileMillis(99), DELTA);
+    }
+
+    @Test
+    public void concurrentRecordsAreNotLost() throws Exception {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        final int threads = 4;
+        final int records = 10000;
+        final CountDownLatch done = new CountDownLatch(threads);
+        for(int t = 0; t < threads; t++) {
+            final long nanos = TimeUnit.MICROSECONDS.toNanos(t + 1);
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for(int i = 0; i < records; i++) {
+                        histogram.record(nanos);
+                    }
+                    done.countDown();
+                }
+            }).start();
+        }
+        CoreFixture.await(done);
+        assertEquals(threads * records, histogram.getCount());
+        assertEquals(0.004, histogram.getMaxMillis(), DELTA);
+    }
+}
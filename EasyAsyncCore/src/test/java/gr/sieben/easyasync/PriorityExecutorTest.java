@@ -0,0 +1,160 @@
+package gr.sieben.easyasync;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The order of the waiting runnables of {@link gr.sieben.easyasync.PriorityExecutor}, its aging and its threads
+ */
+public class PriorityExecutorTest {
+
+    private final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+
+    //occupies the single thread of the executor until the gate opens
+    private static void block(PriorityExecutor executor, final CountDownLatch started, final CountDownLatch gate) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    gate.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+    }
+
+    private PriorityExecutor.PrioritizedRunnable record(final String name, int priority, final CountDownLatch done) {
+        return new PriorityExecutor.PrioritizedRunnable(new Runnable() {
+            @Override
+            public void run() {
+                order.add(name);
+                done.countDown();
+            }
+        }, priority);
+    }
+
+    @Test
+    public void waitingRunnablesRunByPriorityThenBySubmission() throws Exception {
+        PriorityExecutor executor = new PriorityExecutor("test", 1, 0, null);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch gate = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(4);
+        block(executor, started, gate);
+        CoreFixture.await(started);
+
+        executor.execute(record("low", BackgroundJob.PRIORITY_LOW, done));
+        executor.execute(record("normal 1", BackgroundJob.PRIORITY_NORMAL, done));
+        executor.execute(record("high", BackgroundJob.PRIORITY_HIGH, done));
+        executor.execute(record("normal 2", BackgroundJob.PRIORITY_NORMAL, done));
+        gate.countDown();
+        CoreFixture.await(done);
+
+        assertEquals(Arrays.asList("high", "normal 1", "normal 2", "low"), order);
+    }
+
+    @Test
+    public void agingLetsALongWaitingRunnableOvertakeHigherPriorities() throws Exception {
+        PriorityExecutor executor = new PriorityExecutor("test", 1, 5, null);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch gate = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(2);
+        block(executor, started, gate);
+        CoreFixture.await(started);
+
+        executor.execute(record("low", BackgroundJob.PRIORITY_LOW, done));
+        //9 levels apart, 5 ms per level
+        Thread.sleep(100);
+        executor.execute(record("high", BackgroundJob.PRIORITY_HIGH, done));
+        gate.countDown();
+        CoreFixture.await(done);
+
+        assertEquals(Arrays.asList("low", "high"), order);
+    }
+
+    @Test
+    public void workersAreBackgroundDaemonThreads() throws Exception {
+        final PriorityExecutor executor = new PriorityExecutor("test", 2, 0, null);
+        final AtomicReference<Thread> worker = new AtomicReference<Thread>();
+        final CountDownLatch done = new CountDownLatch(1);
+        //a worker must not inherit the priority and the daemon status of the thread that submits
+        Thread submitting = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        worker.set(Thread.currentThread());
+                        done.countDown();
+                    }
+                });
+            }
+        });
+        submitting.setPriority(Thread.MAX_PRIORITY);
+        submitting.setDaemon(false);
+        submitting.start();
+        CoreFixture.await(done);
+
+        assertTrue(worker.get().isDaemon());
+        assertEquals(PriorityExecutor.THREAD_PRIORITY, worker.get().getPriority());
+    }
+
+    @Test
+    public void detachedThreadIsReplaced() throws Exception {
+        PriorityExecutor executor = new PriorityExecutor("test", 1, 0, null);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch gate = new CountDownLatch(1);
+        final AtomicReference<Thread> stuck = new AtomicReference<Thread>();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                stuck.set(Thread.currentThread());
+                started.countDown();
+                try {
+                    gate.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        CoreFixture.await(started);
+        CountDownLatch done = new CountDownLatch(1);
+        executor.execute(record("next", BackgroundJob.PRIORITY_NORMAL, done));
+
+        executor.detach(stuck.get());
+        CoreFixture.await(done);
+        gate.countDown();
+        assertEquals(Arrays.asList("next"), order);
+    }
+
+    @Test
+    public void errorOfARunnableDoesNotStopTheWorker() throws Exception {
+        PriorityExecutor executor = new PriorityExecutor("test", 1, 0, null);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Thread.currentThread().setUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+                    @Override
+                    public void uncaughtException(Thread thread, Throwable error) {
+                        order.add(error.getMessage());
+                    }
+                });
+                throw new AssertionError("error");
+            }
+        });
+        CountDownLatch done = new CountDownLatch(1);
+        executor.execute(record("next", BackgroundJob.PRIORITY_NORMAL, done));
+        CoreFixture.await(done);
+        assertEquals(Arrays.asList("error", "next"), order);
+    }
+}
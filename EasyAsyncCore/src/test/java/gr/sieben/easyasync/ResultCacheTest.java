@@ -0,0 +1,138 @@
+package gr.sieben.easyasync;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * The time to live, the least recently used bound and the memory trimming of {@link gr.sieben.easyasync.ResultCache}
+ */
+public class ResultCacheTest {
+
+    //a main thread whose clock is moved by the test, nothing is executed
+    private static class ManualClock implements MainThreadExecutor {
+        long now;
+
+        @Override
+        public void execute(Runnable runnable) {}
+
+        @Override
+        public void executeDelayed(Runnable runnable, long delayMillis) {}
+
+        @Override
+        public void executeOnNextFrame(Runnable runnable) {}
+
+        @Override
+        public void executeWhenIdle(Runnable runnable) {}
+
+        @Override
+        public void remove(Runnable runnable) {}
+
+        @Override
+        public long elapsedMillis() {
+            return now;
+        }
+    }
+
+    private ManualClock clock;
+    private ResultCache cache;
+
+    @Before
+    public void setUp() {
+        clock = new ManualClock();
+        cache = new ResultCache(clock);
+    }
+
+    private static EasyAsyncResult result(Object value) {
+        EasyAsyncResult args = new EasyAsyncResult();
+        args.setResult(value);
+        return args;
+    }
+
+    private static JobKey key(String id) {
+        return new JobKey(id, null);
+    }
+
+    @Test
+    public void entryExpiresAfterItsTimeToLiveButIsKeptForTheReplay() {
+        EasyAsyncResult args = result("value");
+        cache.put(key("job"), args, 100);
+
+        clock.now = 99;
+        assertNotNull(cache.get(key("job")));
+        clock.now = 100;
+        assertNull("a stale entry is a miss", cache.get(key("job")));
+        assertSame("the stale entry is still there for a configuration change", args, cache.peek(key("job")).args);
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void negativeTimeToLiveNeverExpires() {
+        cache.put(key("job"), result("value"), -1);
+        clock.now = Long.MAX_VALUE / 2;
+        assertNotNull(cache.get(key("job")));
+    }
+
+    @Test
+    public void boundEvictsTheLeastRecentlyUsedEntry() {
+        cache.setMaxSize(2, null);
+        EasyAsyncResult first = result("first");
+        cache.put(key("first"), first, -1);
+        cache.put(key("second"), result("second"), -1);
+        cache.get(key("first")); //the second one is now the least recently used
+
+        cache.put(key("third"), result("third"), -1);
+
+        assertNotNull(cache.peek(key("first")));
+        assertNull(cache.peek(key("second")));
+        assertNotNull(cache.peek(key("third")));
+        assertEquals("value of a kept entry is untouched", "first", first.getResult());
+    }
+
+    @Test
+    public void boundIsMeasuredWithTheEstimator() {
+        cache.setMaxSize(10, new ResultSizeEstimator() {
+            @Override
+            public int sizeOf(String id, Object result) {
+                return ((String) result).length();
+            }
+        });
+        cache.put(key("a"), result("123456"), -1);
+        cache.put(key("b"), result("1234"), -1);
+
+        cache.put(key("c"), result("1"), -1);
+        assertNull("6 + 4 + 1 is over the bound", cache.peek(key("a")));
+        assertNotNull(cache.peek(key("b")));
+        assertNotNull(cache.peek(key("c")));
+    }
+
+    @Test
+    public void evictedEntryIsRecycled() {
+        cache.setMaxSize(1, null);
+        EasyAsyncResult first = result("first");
+        cache.put(key("first"), first, -1);
+        cache.put(key("second"), result("second"), -1);
+        assertNull(first.getResult());
+    }
+
+    @Test
+    public void trimKeepsTheMostRecentHalfAndEvictRemovesAll() {
+        for(int i = 0; i < 4; i++) {
+            cache.put(key("job" + i), result(i), -1);
+        }
+        cache.trimToHalf();
+        assertNull(cache.peek(key("job0")));
+        assertNull(cache.peek(key("job1")));
+        assertNotNull(cache.peek(key("job2")));
+        assertNotNull(cache.peek(key("job3")));
+
+        cache.evictAll();
+        assertNull(cache.peek(key("job2")));
+        assertNull(cache.peek(key("job3")));
+    }
+}
@@ -0,0 +1,266 @@
+package gr.sieben.easyasync;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The log of {@link gr.sieben.easyasync.ResultStore}: what a new process restores, the torn and corrupt records, the
+ * compaction, and the persisted results of the runs that are started before the file has been read
+ */
+public class ResultStoreTest {
+
+    private File file;
+    private final CoreFixture fixture = new CoreFixture();
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("easyasync", ".results");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        fixture.destroy();
+        file.delete();
+        new File(file.getPath() + ".compact").delete();
+    }
+
+    private ResultStore store(long maxBytes) {
+        return new ResultStore(file, new SerializableResultSerializer(), maxBytes);
+    }
+
+    private static void write(ResultStore store, String id, Object result) {
+        store.write(id, store.toBytes(id, result));
+    }
+
+    //takes once the file has been read
+    private static Object take(ResultStore store, String id) throws InterruptedException {
+        store.sync();
+        ResultStore.Restored restored = store.take(id);
+        return restored == null ? null : restored.result;
+    }
+
+    @Test
+    public void newStoreRestoresTheLatestResultOfEachJob() throws Exception {
+        ResultStore previous = store(1024 * 1024);
+        write(previous, "profile", "old");
+        write(previous, "profile", "new");
+        write(previous, "settings", 42);
+        previous.sync();
+
+        ResultStore next = store(1024 * 1024);
+        assertEquals("new", take(next, "profile"));
+        assertEquals(42, take(next, "settings"));
+        assertNull("a result is taken once", take(next, "profile"));
+    }
+
+    //a store whose read does not finish until the gate opens
+    private ResultStore slowStore(final CountDownLatch gate) {
+        return new ResultStore(file, new SerializableResultSerializer() {
+            @Override
+            public Object fromBytes(String id, byte[] bytes) throws IOException {
+                try {
+                    CoreFixture.await(gate);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.fromBytes(id, bytes);
+            }
+        }, 1024 * 1024);
+    }
+
+    @Test
+    public void takeDoesNotWaitForTheFileToBeRead() throws Exception {
+        ResultStore previous = store(1024 * 1024);
+        write(previous, "profile", "persisted");
+        previous.sync();
+
+        CountDownLatch gate = new CountDownLatch(1);
+        ResultStore next = slowStore(gate);
+        assertNull(next.take("profile"));
+        assertFalse(next.isLoaded());
+        gate.countDown();
+        next.sync();
+        assertTrue(next.isLoaded());
+        assertEquals("persisted", take(next, "profile"));
+    }
+
+    @Test
+    public void resultWrittenDuringTheReadIsNotReplacedByTheOlderOne() throws Exception {
+        ResultStore previous = store(1024 * 1024);
+        write(previous, "profile", "old");
+        previous.sync();
+
+        ResultStore next = store(1024 * 1024);
+        write(next, "profile", "fresh");
+        assertNull(take(next, "profile"));
+        next.sync();
+        assertEquals("fresh", take(store(1024 * 1024), "profile"));
+    }
+
+    @Test
+    public void tornTailIsTruncated() throws Exception {
+        ResultStore previous = store(1024 * 1024);
+        write(previous, "profile", "kept");
+        previous.sync();
+        long intact = file.length();
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.seek(intact);
+            raf.writeInt(1000); //a header whose body has not been written, the process was killed
+            raf.writeInt(0);
+            raf.write(new byte[10]);
+        } finally {
+            raf.close();
+        }
+
+        ResultStore next = store(1024 * 1024);
+        assertEquals("kept", take(next, "profile"));
+        next.sync();
+        assertEquals(intact, file.length());
+    }
+
+    @Test
+    public void recordWithAWrongChecksumEndsTheLog() throws Exception {
+        ResultStore previous = store(1024 * 1024);
+        write(previous, "first", "intact");
+        previous.sync();
+        long firstEnd = file.length();
+        write(previous, "second", "corrupted");
+        previous.sync();
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            long last = file.length() - 1;
+            raf.seek(last);
+            int value = raf.read();
+            raf.seek(last);
+            raf.write(value ^ 0xFF);
+        } finally {
+            raf.close();
+        }
+
+        ResultStore next = store(1024 * 1024);
+        assertEquals("intact", take(next, "first"));
+        assertNull(take(next, "second"));
+        next.sync();
+        assertEquals(firstEnd, file.length());
+    }
+
+    @Test
+    public void compactionKeepsTheNewestResultsWithinTheMaximumSize() throws Exception {
+        long maxBytes = 2048;
+        ResultStore store = store(maxBytes);
+        for(int i = 0; i < 40; i++) {
+            write(store, "job" + i, "result of the job number " + i);
+            Thread.sleep(2); //distinct times of storing, the newest are kept
+        }
+        store.sync();
+        assertTrue(file.length() + " bytes", file.length() <= maxBytes);
+
+        ResultStore next = store(maxBytes);
+        assertEquals("result of the job number 39", take(next, "job39"));
+        assertNull("the oldest is evicted", take(next, "job0"));
+    }
+
+    @Test
+    public void clearDeletesEveryResult() throws Exception {
+        ResultStore previous = store(1024 * 1024);
+        write(previous, "profile", "value");
+        previous.sync();
+        previous.clear();
+        previous.sync();
+
+        assertEquals(0, file.length());
+        assertNull(take(store(1024 * 1024), "profile"));
+    }
+
+    public static class Jobs {
+        final List<Object> delivered = Collections.synchronizedList(new ArrayList<Object>());
+        final CountDownLatch running = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        volatile CountDownLatch finished = new CountDownLatch(1);
+
+        @BackgroundJob(id = "profile", persist = true, cacheTtl = 0)
+        public void profile(EasyAsyncCallbacks callbacks, EasyAsyncResult<Object, Object> args) throws InterruptedException {
+            if(callbacks == EasyAsyncCallbacks.ON_BACKGROUND) {
+                running.countDown();
+                CoreFixture.await(release);
+                args.setResult("fresh");
+            } else if(callbacks == EasyAsyncCallbacks.AFTER_EXECUTE) {
+                delivered.add(args.getResult());
+                finished.countDown();
+            }
+        }
+
+        @BackgroundJob(id = "names", persist = true)
+        public void names(EasyAsyncCallbacks callbacks, EasyAsyncResult<Object, List<String>> args) {
+            if(callbacks == EasyAsyncCallbacks.ON_BACKGROUND) {
+                args.setResult(new ArrayList<String>(Arrays.asList("persisted")));
+            } else if(callbacks == EasyAsyncCallbacks.AFTER_EXECUTE) {
+                args.getResult().add("changed by the main thread");
+                finished.countDown();
+            }
+        }
+    }
+
+    private void useStore(final ResultStore store) throws Exception {
+        fixture.onMainThread(new Runnable() {
+            @Override
+            public void run() {
+                fixture.core.setResultStore(store);
+            }
+        });
+    }
+
+    @Test
+    public void startBeforeTheReadRunsTheJobAndGetsThePersistedResultWhenTheReadFinishes() throws Exception {
+        ResultStore previous = store(1024 * 1024);
+        write(previous, "profile", "persisted");
+        previous.sync();
+
+        CountDownLatch gate = new CountDownLatch(1);
+        useStore(slowStore(gate));
+        Jobs jobs = new Jobs();
+        jobs.finished = new CountDownLatch(2);
+        fixture.register(jobs);
+        fixture.start("profile", null);
+        CoreFixture.await(jobs.running);
+
+        gate.countDown();
+        long deadline = System.currentTimeMillis() + CoreFixture.TIMEOUT_SECONDS * 1000;
+        while(jobs.delivered.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        jobs.release.countDown();
+        CoreFixture.await(jobs.finished);
+        assertEquals(Arrays.<Object>asList("persisted", "fresh"), jobs.delivered);
+    }
+
+    @Test
+    public void resultIsPersistedAsTheBackgroundJobHasReturnedIt() throws Exception {
+        ResultStore store = store(1024 * 1024);
+        useStore(store);
+        Jobs jobs = new Jobs();
+        fixture.register(jobs);
+        fixture.start("names", null);
+        CoreFixture.await(jobs.finished);
+        fixture.drainMainThread();
+        store.sync();
+
+        assertEquals(Arrays.asList("persisted"), take(store(1024 * 1024), "names"));
+    }
+}
@@ -0,0 +1,201 @@
+package gr.sieben.easyasync;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The retries of a failed background phase: the attempts, the exceptions that are retried, the backoff and its
+ * cancellation, see {@link gr.sieben.easyasync.BackgroundJob#maxAttempts()}
+ */
+public class RetryTest {
+
+    private final CoreFixture fixture = new CoreFixture();
+    private final Jobs jobs = new Jobs();
+
+    @Before
+    public void setUp() throws Exception {
+        fixture.register(jobs);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        fixture.destroy();
+    }
+
+    public static class Jobs {
+        final AtomicInteger attempts = new AtomicInteger();
+        final List<Object> parameters = Collections.synchronizedList(new ArrayList<Object>());
+        final List<EasyAsyncCallbacks> callbacks = Collections.synchronizedList(new ArrayList<EasyAsyncCallbacks>());
+        final AtomicReference<Object> result = new AtomicReference<Object>();
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        final CountDownLatch finished = new CountDownLatch(1);
+        final CountDownLatch failedOnce = new CountDownLatch(1);
+        final CountDownLatch otherRan = new CountDownLatch(1);
+
+        //records the callbacks of the run and fails the attempts before the given one with the exception
+        private void attempt(EasyAsyncCallbacks callbacks, EasyAsyncResult<Object, Object> args, int succeedingAttempt,
+                             RuntimeException failure) {
+            if(callbacks == EasyAsyncCallbacks.ON_BACKGROUND) {
+                parameters.add(args.getParameter());
+                if(attempts.incrementAndGet() < succeedingAttempt) {
+                    failedOnce.countDown();
+                    throw failure;
+                }
+                args.setResult("attempt " + attempts.get());
+                return;
+            }
+            this.callbacks.add(callbacks);
+            if(callbacks == EasyAsyncCallbacks.AFTER_EXECUTE || callbacks == EasyAsyncCallbacks.CANCELLED) {
+                result.set(args.getResult());
+                error.set(args.getError());
+                finished.countDown();
+            }
+        }
+
+        @BackgroundJob(id = "flaky", maxAttempts = 3, retryDelay = 5, retryJitter = 0, cacheTtl = 0)
+        public void flaky(EasyAsyncCallbacks callbacks, EasyAsyncResult<Object, Object> args) {
+            attempt(callbacks, args, 3, new IllegalStateException("flaky"));
+        }
+
+        @BackgroundJob(id = "broken", maxAttempts = 3, retryDelay = 5, retryJitter = 0, cacheTtl = 0)
+        public void broken(EasyAsyncCallbacks callbacks, EasyAsyncResult<Object, Object> args) {
+            attempt(callbacks, args, Integer.MAX_VALUE, new IllegalStateException("broken"));
+        }
+
+        @BackgroundJob(id = "io", maxAttempts = 3, retryDelay = 5, retryJitter = 0, cacheTtl = 0,
+                retryOn = IOException.class)
+        public void io(EasyAsyncCallbacks callbacks, EasyAsyncResult<Object, Object> args) {
+            attempt(callbacks, args, 2, new IllegalStateException(new IOException("io")));
+        }
+
+        @BackgroundJob(id = "notRetried", maxAttempts = 3, retryDelay = 5, retryJitter = 0, cacheTtl = 0,
+                retryOn = IOException.class)
+        public void notRetried(EasyAsyncCallbacks callbacks, EasyAsyncResult<Object, Object> args) {
+            attempt(callbacks, args, 2, new IllegalStateException("not io"));
+        }
+
+        @BackgroundJob(id = "slowBackoff", executor = ExecutorType.SERIAL, maxAttempts = 2, retryDelay = 60000,
+                retryJitter = 0, cacheTtl = 0)
+        public void slowBackoff(EasyAsyncCallbacks callbacks, EasyAsyncResult<Object, Object> args) {
+            attempt(callbacks, args, 2, new IllegalStateException("slow backoff"));
+        }
+
+        @BackgroundJob(id = "other", executor = ExecutorType.SERIAL, cacheTtl = 0)
+        public void other(EasyAsyncCallbacks callbacks) {
+            if(callbacks == EasyAsyncCallbacks.ON_BACKGROUND)
+                otherRan.countDown();
+        }
+    }
+
+    @Test
+    public void failedAttemptsAreRetriedWithTheSameArgumentsUntilOneSucceeds() throws Exception {
+        fixture.start("flaky", "key");
+        CoreFixture.await(jobs.finished);
+
+        assertEquals(3, jobs.attempts.get());
+        assertEquals(Arrays.<Object>asList("key", "key", "key"), jobs.parameters);
+        assertEquals(Arrays.asList(EasyAsyncCallbacks.BEFORE_EXECUTE, EasyAsyncCallbacks.AFTER_EXECUTE), jobs.callbacks);
+        assertEquals("attempt 3", jobs.result.get());
+    }
+
+    @Test
+    public void lastFailedAttemptCancelsTheRunWithItsException() throws Exception {
+        fixture.start("broken", null);
+        CoreFixture.await(jobs.finished);
+        fixture.drainMainThread();
+
+        assertEquals(3, jobs.attempts.get());
+        assertEquals(Arrays.asList(EasyAsyncCallbacks.BEFORE_EXECUTE, EasyAsyncCallbacks.CANCELLED), jobs.callbacks);
+        assertTrue(String.valueOf(jobs.error.get()), causedBy(jobs.error.get(), "broken"));
+    }
+
+    @Test
+    public void exceptionCausedByARetryableTypeIsRetried() throws Exception {
+        fixture.start("io", null);
+        CoreFixture.await(jobs.finished);
+        assertEquals(2, jobs.attempts.get());
+        assertEquals(EasyAsyncCallbacks.AFTER_EXECUTE, jobs.callbacks.get(1));
+    }
+
+    @Test
+    public void exceptionOfAnotherTypeIsNotRetried() throws Exception {
+        fixture.start("notRetried", null);
+        CoreFixture.await(jobs.finished);
+        assertEquals(1, jobs.attempts.get());
+        assertEquals(EasyAsyncCallbacks.CANCELLED, jobs.callbacks.get(1));
+    }
+
+    @Test
+    public void backoffFreesTheThreadOfTheExecutorAndACancellationEndsIt() throws Exception {
+        fixture.start("slowBackoff", null);
+        CoreFixture.await(jobs.failedOnce);
+
+        //the serial executor has a single thread, so the other job runs only if the backoff does not hold it
+        fixture.start("other", null);
+        CoreFixture.await(jobs.otherRan);
+
+        fixture.onMainThread(new Runnable() {
+            @Override
+            public void run() {
+                fixture.core.cancel("slowBackoff");
+            }
+        });
+        CoreFixture.await(jobs.finished);
+        assertEquals(1, jobs.attempts.get());
+        assertEquals(Arrays.asList(EasyAsyncCallbacks.BEFORE_EXECUTE, EasyAsyncCallbacks.CANCELLED), jobs.callbacks);
+    }
+
+    @Test
+    public void delayDoublesUpToTheCapAndTheJitterOnlyShortensIt() throws Exception {
+        BackgroundJob annotation = Delays.class.getMethod("delays").getAnnotation(BackgroundJob.class);
+        RetryPolicy policy = RetryPolicy.create(annotation);
+        assertEquals(100, policy.delayMillis(1));
+        assertEquals(200, policy.delayMillis(2));
+        assertEquals(400, policy.delayMillis(3));
+        assertEquals(500, policy.delayMillis(4));
+        assertEquals(500, policy.delayMillis(60));
+
+        BackgroundJob jittered = Delays.class.getMethod("jittered").getAnnotation(BackgroundJob.class);
+        RetryPolicy jitteredPolicy = RetryPolicy.create(jittered);
+        for(int i = 0; i < 100; i++) {
+            long delay = jitteredPolicy.delayMillis(2);
+            assertTrue(String.valueOf(delay), delay > 100 && delay <= 200);
+        }
+        assertEquals(null, RetryPolicy.create(Delays.class.getMethod("once").getAnnotation(BackgroundJob.class)));
+    }
+
+    public static class Delays {
+        @BackgroundJob(id = "delays", maxAttempts = 10, retryDelay = 100, retryMaxDelay = 500, retryJitter = 0)
+        public void delays() {
+        }
+
+        @BackgroundJob(id = "jittered", maxAttempts = 10, retryDelay = 100, retryMaxDelay = 500, retryJitter = 0.5)
+        public void jittered() {
+        }
+
+        @BackgroundJob(id = "once")
+        public void once() {
+        }
+    }
+
+    private static boolean causedBy(Throwable error, String message) {
+        for(Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if(message.equals(cause.getMessage()))
+                return true;
+        }
+        return false;
+    }
+}
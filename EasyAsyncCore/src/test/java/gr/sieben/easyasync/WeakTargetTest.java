@@ -0,0 +1,93 @@
+package gr.sieben.easyasync;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.lang.ref.WeakReference;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * The targets that are held weakly are swept from the registry when they have been collected, the ones that are held
+ * strongly, the default, are kept
+ */
+public class WeakTargetTest {
+
+    private final CoreFixture fixture = new CoreFixture();
+
+    @After
+    public void tearDown() throws Exception {
+        fixture.destroy();
+    }
+
+    public static class Screen {
+        @BackgroundJob(id = "screen")
+        public void screen() {
+        }
+    }
+
+    public static class Other {
+        @BackgroundJob(id = "other")
+        public void other() {
+        }
+    }
+
+    private void holdWeakly() throws Exception {
+        fixture.onMainThread(new Runnable() {
+            @Override
+            public void run() {
+                fixture.core.setWeakTargets(true);
+            }
+        });
+    }
+
+    //registers a target that only the library references
+    private WeakReference<Object> registerUnreferenced() throws Exception {
+        Screen screen = new Screen();
+        fixture.register(screen);
+        return new WeakReference<Object>(screen);
+    }
+
+    //collects the garbage until the probe has been cleared or the time is up
+    private static void collect(WeakReference<Object> probe) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + CoreFixture.TIMEOUT_SECONDS * 1000;
+        while(probe.get() != null && System.currentTimeMillis() < deadline) {
+            System.gc();
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void collectedTargetIsSweptOnTheNextRegistration() throws Exception {
+        holdWeakly();
+        WeakReference<Object> probe = registerUnreferenced();
+        collect(probe);
+        assertNull("the library keeps the target alive", probe.get());
+
+        //the reference is queued by the collector a little after it has been cleared
+        ObjectHolder holder = fixture.core.mAnnotatedMethods.get("screen");
+        long deadline = System.currentTimeMillis() + CoreFixture.TIMEOUT_SECONDS * 1000;
+        while(holder.getBinding(true) != null && System.currentTimeMillis() < deadline) {
+            fixture.register(new Other());
+            Thread.sleep(10);
+        }
+        assertNull(holder.getBinding(true));
+        assertNull(holder.getTarget());
+
+        //a start for the collected target skips its callbacks
+        fixture.start("screen", null);
+        fixture.drainMainThread();
+    }
+
+    @Test
+    public void targetsAreHeldStronglyByDefault() throws Exception {
+        WeakReference<Object> probe = registerUnreferenced();
+        for(int i = 0; i < 5; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNotNull(probe.get());
+        assertNotNull(fixture.core.mAnnotatedMethods.get("screen").getTarget());
+    }
+}
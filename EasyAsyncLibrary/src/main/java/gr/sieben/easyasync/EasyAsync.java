@@ -2,17 +2,14 @@ package gr.sieben.easyasync;
 
 import android.annotation.TargetApi;
 import android.app.Activity;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
 import android.os.Build;
 import android.support.v4.app.Fragment;
 import android.support.v4.app.FragmentActivity;
 import android.support.v4.app.FragmentManager;
 
-import java.lang.reflect.Method;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-
-import gr.sieben.easyasync.exceptions.EasyAsyncRuntimeException;
-
 /**
  * Base class for the EasyAsync library.
  * EasyAsync library is a library that makes asynchronous calls very easy and compact, minimizing the boilerplate
@@ -33,6 +30,9 @@ import gr.sieben.easyasync.exceptions.EasyAsyncRuntimeException;
  * <li>
  * {@link #init(android.app.FragmentManager)}
  * </li>
+ * Pass <b>lazy</b> to {@linkplain #init(android.app.FragmentManager, boolean)} to keep the initialisation out of the
+ * critical path of a cold start. When several activities are alive at the same time give each of them a registry of its
+ * own with {@linkplain #initScope(android.app.FragmentManager)}, the global registry is shared by all of them.
  * </p>
  *<p>
  * Quick Example 1:
@@ -95,24 +95,45 @@ import gr.sieben.easyasync.exceptions.EasyAsyncRuntimeException;
  * </code></pre>
  * </p>
  * <p>
+ * When the EasyAsyncCompiler annotation processor is in the annotation processor path, a dispatcher is generated
+ * for every class with annotated methods and the annotated methods are invoked without reflection.
+ * Otherwise the annotated methods are found and invoked with reflection.
+ * </p>
+ * <p>
  * To start the background job you must use the {@linkplain #start(String)} or {@linkplain #forceStart(String)} method with the desired
  * background job id that is used in the annotated parameter. Using {@linkplain #start(String)} method the background job is executed once and then
- * is cached in memory. If you start a specific background job again then the annotated method will be invoked like it has been executed.
+ * its result is cached in memory. If you start a specific background job again then the annotated method will be invoked like it has been executed.
+ * The cached result expires after the <b>cacheTtl</b> of the {@link gr.sieben.easyasync.BackgroundJob} annotation and then the background job
+ * is executed again. The cache is bounded, see {@linkplain #setResultCacheMaxSize(int)}, and it is trimmed when the memory is low.
  * If a background job needs to be re-executed then call forceStart, it will re-schedule the async task.
+ * Use {@linkplain #start(String, Object, JobListener)} to start a background job with a key, for example its parameter.
+ * Concurrent requests with the same id and key share one run and each listener receives the same result.
+ * By default the background jobs are executed one after the other. Use the <b>executor</b> of the
+ * {@link gr.sieben.easyasync.BackgroundJob} annotation to execute a job in a shared parallel pool or in an executor
+ * that is registered with {@linkplain #registerExecutor(String, java.util.concurrent.Executor)}.
  * <b>NOTE: If the background job has already finished during an orientation change the annotated method will be invoked again
  * as though it has just finished, for convenience. You can change this behavior by using {@link gr.sieben.easyasync.EasyAsyncResult#setCallbackInConfigurationChange(boolean)} method.</b>
  * </p>
  * <p>
+ * The scheduling, the registry and the dispatch of the background jobs are made by {@link gr.sieben.easyasync.EasyAsyncCore},
+ * which also runs on the JVM. This class runs it on the main looper and registers the Activity through the retained fragment.
+ * </p>
+ * <p>
+ * The registered activities are weakly held, see {@linkplain #setWeakTargets(boolean)}.
  * To avoid memory leaks you should invoke {@linkplain #destroy(android.app.Activity)} or {@linkplain #destroy(android.support.v4.app.FragmentActivity)}
  * in the {@link android.app.Activity#onDestroy()} method of your activity respectively.
  * </p>
  */
-public class EasyAsync {
+public class EasyAsync extends EasyAsyncCore {
     //easyAsync instance
     private static EasyAsync easyAsync;
 
     //private constructor for the singleton protocol
-    private EasyAsync() {}
+    private EasyAsync() {
+        super(new HandlerMainThreadExecutor(Utils.getMainHandler()));
+        //an Activity whose destroy has been forgotten must not be kept alive with its views
+        setWeakTargets(true);
+    }
 
     /**
      * Retrieves the EasyAsync object as a singleton. Read the documentation for more details.
@@ -125,17 +146,15 @@ public class EasyAsync {
         return easyAsync;
     }
 
-    /**
-     * ConcurrentHashMap to avoid deadlocks and crashes when simultaneous access to the object.
-     */
-    ConcurrentHashMap<String, ObjectHolder> mAnnotatedMethods = new ConcurrentHashMap<String, ObjectHolder>();
-
     /*
     Holders of the retained Fragments. Each time one of each would be null.
      */
     private RetainedSupportFragment retainedSupportFragment;
     private RetainedFragment retainedFragment;
 
+    //registered once on the application context, it lives as long as the process like the singleton
+    private ComponentCallbacks2 memoryCallbacks;
+
     /**
      * Basic method for initialisation. For pre Honeycomb devices.
      * <b>This must be called only one time and not during configuration changes</b>
@@ -143,14 +162,27 @@ public class EasyAsync {
      * @param fragmentManager The fragment manager of the current Activity. FragmentManager must not have pending transactions.
      */
     public void init(FragmentManager fragmentManager) {
+        init(fragmentManager, false);
+    }
+
+    /**
+     * Initialisation for pre Honeycomb devices that can be lazy, see {@linkplain #init(android.app.FragmentManager, boolean)}.
+     * <b>This must be called only one time and not during configuration changes</b>
+     * @param fragmentManager The fragment manager of the current Activity. FragmentManager must not have pending transactions.
+     * @param lazy True to return without attaching the retained fragment and scanning the Activity
+     */
+    public void init(FragmentManager fragmentManager, boolean lazy) {
         Fragment tagFragment = fragmentManager.findFragmentByTag(FragmentController.FRAGMENT_TAG);
         if(tagFragment != null)
             retainedSupportFragment = (RetainedSupportFragment) tagFragment;
         else {
             retainedSupportFragment = RetainedSupportFragment.newInstance();
+            if(lazy)
+                deferRegistration();
             fragmentManager.beginTransaction().add(retainedSupportFragment,
                     FragmentController.FRAGMENT_TAG).commit();
-            fragmentManager.executePendingTransactions();
+            if(!lazy)
+                fragmentManager.executePendingTransactions();
         }
     }
 
@@ -162,65 +194,140 @@ public class EasyAsync {
      */
     @TargetApi(Build.VERSION_CODES.HONEYCOMB)
     public void init(android.app.FragmentManager fragmentManager) {
+        init(fragmentManager, false);
+    }
+
+    /**
+     * Initialisation for after Honeycomb devices that can be lazy. A lazy initialisation returns right away: the retained
+     * fragment is attached with the next message of the main thread instead of synchronously and the Activity is scanned
+     * for the annotated methods when a background job is started for the first time or when the main thread is idle.
+     * The background jobs that are started before the fragment has been attached are buffered and started after the scan.
+     * Use it to keep the initialisation out of the critical path of a cold start.
+     * <b>This must be called only one time and not during configuration changes</b>
+     * @param fragmentManager The fragment manager of the current Activity. FragmentManager must not have pending transactions.
+     * @param lazy True to return without attaching the retained fragment and scanning the Activity
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    public void init(android.app.FragmentManager fragmentManager, boolean lazy) {
         android.app.Fragment tagFragment = fragmentManager.findFragmentByTag(FragmentController.FRAGMENT_TAG);
         if(tagFragment != null)
             retainedFragment = (RetainedFragment) tagFragment;
         else {
             retainedFragment = RetainedFragment.newInstance();
+            if(lazy)
+                deferRegistration();
             fragmentManager.beginTransaction().add(retainedFragment,
                     FragmentController.FRAGMENT_TAG).commit();
-            fragmentManager.executePendingTransactions();
+            if(!lazy)
+                fragmentManager.executePendingTransactions();
         }
     }
 
     /**
-     * Start an asynchronous background job for the current id. The id is defined in the @BackgroundJob annotation
-     * @param id The asynchronous method id to start
+     * Initialisation of a registry of the Activity alone, for pre Honeycomb devices, see {@linkplain #initScope(android.app.FragmentManager)}.
+     * @param fragmentManager The fragment manager of the current Activity. FragmentManager must not have pending transactions.
+     * @return The scope of the Activity
      */
-    public void start(String id) {
-        //if the annotation method does not exist
-        if(!mAnnotatedMethods.containsKey(id)) {
-            throw new EasyAsyncRuntimeException("Method with id="+id+" is not declared in any of the target Activity");
-        }
-        //starts the async task through the available fragment
-        if(retainedSupportFragment == null) {
-            retainedFragment.startAsync(id, false);
-        } else {
-            retainedSupportFragment.startAsync(id, false);
+    public EasyAsyncCore initScope(FragmentManager fragmentManager) {
+        Fragment tagFragment = fragmentManager.findFragmentByTag(FragmentController.SCOPE_FRAGMENT_TAG);
+        RetainedSupportFragment scopeFragment;
+        if(tagFragment != null)
+            scopeFragment = (RetainedSupportFragment) tagFragment;
+        else {
+            scopeFragment = RetainedSupportFragment.newInstance();
+            fragmentManager.beginTransaction().add(scopeFragment,
+                    FragmentController.SCOPE_FRAGMENT_TAG).commit();
+            fragmentManager.executePendingTransactions();
         }
+        return scopeFragment.getController().getCore();
     }
 
     /**
-     * Force start an asynchronous background job for the current id. Force start must be used when the annotated @BackgroundJob must be restarted if not yet started.
-     * @param id The asynchronous method id to start
+     * Initialisation of a registry of the Activity alone, for after Honeycomb devices. Use it instead of
+     * {@linkplain #init(android.app.FragmentManager)} when several activities are alive at the same time, for example in
+     * different tasks or in multi-window, so that their ids do not collide and the detach of one of them does not clear
+     * the targets of the others. Start the background jobs with the returned scope, see {@linkplain EasyAsyncCore#newScope()}.
+     * It is called in every onCreate, after a configuration change it returns the same scope. The scope is destroyed with the
+     * retained fragment when the Activity finishes, so {@linkplain #destroy(android.app.Activity)} is not needed for it.
+     * @param fragmentManager The fragment manager of the current Activity. FragmentManager must not have pending transactions.
+     * @return The scope of the Activity
      */
-    public void forceStart(String id) {
-        //if the annotation method does not exist
-        if(!mAnnotatedMethods.containsKey(id)) {
-            throw new EasyAsyncRuntimeException("Method with id="+id+" is not declared in any of the target Activity");
-        }
-        //starts the async task through the available fragment
-        if(retainedSupportFragment == null) {
-            retainedFragment.startAsync(id, true);
-        } else {
-            retainedSupportFragment.startAsync(id, true);
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    public EasyAsyncCore initScope(android.app.FragmentManager fragmentManager) {
+        android.app.Fragment tagFragment = fragmentManager.findFragmentByTag(FragmentController.SCOPE_FRAGMENT_TAG);
+        RetainedFragment scopeFragment;
+        if(tagFragment != null)
+            scopeFragment = (RetainedFragment) tagFragment;
+        else {
+            scopeFragment = RetainedFragment.newInstance();
+            fragmentManager.beginTransaction().add(scopeFragment,
+                    FragmentController.SCOPE_FRAGMENT_TAG).commit();
+            fragmentManager.executePendingTransactions();
         }
+        return scopeFragment.getController().getCore();
+    }
+
+    /**
+     * Registers the callbacks that forward the memory state of the system to {@linkplain #onTrimMemory(int)} and
+     * {@linkplain #onLowMemory()} on the application context, once. It is called by the retained fragments, so that the
+     * {@link android.app.Fragment} and the {@link android.support.v4.app.Fragment}, which does not receive the trim levels,
+     * behave the same. Before Ice Cream Sandwich there are no trim levels and the retained fragment forwards only its
+     * {@link android.support.v4.app.Fragment#onLowMemory()}.
+     * @param context Any context of the application
+     */
+    @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+    void registerMemoryCallbacks(Context context) {
+        if(memoryCallbacks != null || Build.VERSION.SDK_INT < Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+            return;
+        memoryCallbacks = new ComponentCallbacks2() {
+            @Override
+            public void onTrimMemory(int level) {
+                EasyAsync.this.onTrimMemory(level);
+            }
+
+            @Override
+            public void onLowMemory() {
+                EasyAsync.this.onLowMemory();
+            }
+
+            @Override
+            public void onConfigurationChanged(Configuration newConfig) {}
+        };
+        context.getApplicationContext().registerComponentCallbacks(memoryCallbacks);
+    }
+
+    /**
+     * Whether the memory state of the system is already forwarded by the callbacks of the application context
+     * @return True if {@linkplain #registerMemoryCallbacks(android.content.Context)} has registered them
+     */
+    boolean hasMemoryCallbacks() {
+        return memoryCallbacks != null;
     }
 
     /**
-     * Cancels an asynchronous background job for the current id. This should trigger a callback of type {@link gr.sieben.easyasync.EasyAsyncCallbacks#CANCELLED}
-     * in the annotated method
-     * @param id The asynchronous method id to start
+     * Evicts cached results according to the memory trim level. It is called by the callbacks that the retained fragment
+     * registers on the application context and it can also be called from
+     * {@link android.content.ComponentCallbacks2#onTrimMemory(int)} of the Application.
+     * @param level The trim level of {@link android.content.ComponentCallbacks2}
      */
-    public void cancel(String id) {
-        //cancels the async task of the respective fragment
-        if(retainedSupportFragment == null) {
-            retainedFragment.cancelAsync(id);
-        } else {
-            retainedSupportFragment.cancelAsync(id);
+    public void onTrimMemory(int level) {
+        if(level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+            evictResultCache();
+        } else if(level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            trimResultCache();
         }
     }
 
+    /**
+     * Evicts all the cached results. It is called by the callbacks of the application context or the retained fragment and it can also
+     * be called from {@link android.content.ComponentCallbacks#onLowMemory()} of the Application.
+     */
+    public void onLowMemory() {
+        evictResultCache();
+    }
+
     /**
      * Must be called in the onDestroy method of the activity
      * @param activity the activity as a parameter
@@ -242,146 +349,15 @@ public class EasyAsync {
         }
     }
 
-    //overloaded method to clear the references
-    private void destroy() {
-        mAnnotatedMethods.clear();
-        retainedFragment = null;
-        retainedSupportFragment = null;
-    }
-
-    /**
-     * Method that is used to find annotations of the @BackgroundJob in target class
-     * @param target The target object
-     */
-    void findAnnotations(Object target) {
-        Class<?> targetClass = target.getClass();
-        //if we reach an android component or a java component we stop searching
-        if (targetClass.getName().startsWith("android.") || targetClass.getName().startsWith("java.")) {
-            return;
-        }
-        BackgroundJob annotation;
-        for(Method method : targetClass.getMethods()) {
-            if(method.isAnnotationPresent(BackgroundJob.class)) {
-                annotation = method.getAnnotation(BackgroundJob.class);
-
-                if(annotation.id() == null)  //annotation needs a unique id to work, throw an exception otherwise
-                    throw new EasyAsyncRuntimeException("You have to specify an id in class "+
-                            targetClass.getName()+" and in annotated method "+method.getName()+
-                            ". See documentation for more details");
-                if(mAnnotatedMethods.containsKey(annotation.id())
-                        && mAnnotatedMethods.get(annotation.id()).getTarget() != null) {
-                        //checking for a unique key inside, we also check the target to be null
-                        //because there might be an orientation change so we must reinitialise the targets of each async
-                    ObjectHolder similarMethod = mAnnotatedMethods.get(annotation.id());
-                    throw new EasyAsyncRuntimeException("You must specify a unique id in the annotated method. In class " +
-                            targetClass.getName() + " method " + method.getName() + " has the same id with method " +
-                            similarMethod.getAnnotatedMethod().getName() + " in class " +
-                            similarMethod.getTarget().getClass().getName());
-                }
-
-                //this condition checks whether we should create the annotation or reset the targets
-                if(!mAnnotatedMethods.containsKey(annotation.id()))
-                    mAnnotatedMethods.put(annotation.id(), createObjectHolder(target, method));
-                else
-                    setObjectHolder(annotation.id(), target, method);
-            }
-        }
-    }
-
     /**
-     * Helper method for clearing the target Activity and annotated Method
-     * This has to be done in an orientation change in order to avoid any activity leaks
+     * Releases the runs of all the background jobs, clears the registered Activity and the retained fragment.
+     * Prefer {@linkplain #destroy(android.app.Activity)} or {@linkplain #destroy(android.support.v4.app.FragmentActivity)},
+     * which destroy only when the Activity is finishing.
      */
-    void clearAnnotations() {
-        for(Map.Entry<String, ObjectHolder> holder : mAnnotatedMethods.entrySet()) {
-            holder.getValue().setTarget(null);
-            holder.getValue().setMethodType(null);
-            holder.getValue().setAnnotatedMethod(null);
-        }
-    }
-
-    //setting targets
-    private void setObjectHolder(String id, Object target, Method method) {
-        ObjectHolder holder = mAnnotatedMethods.get(id);
-        holder.setAnnotatedMethod(method);
-        holder.setTarget(target);
-        holder.setMethodType(getParameterMethodType(target, method));
-    }
-
-    //creating during init
-    private ObjectHolder createObjectHolder(Object target, Method method) {
-        ObjectHolder holder = new ObjectHolder();
-        holder.setAnnotatedMethod(method);
-        holder.setTarget(target);
-        holder.setMethodType(getParameterMethodType(target, method));
-        return holder;
-    }
-
-    //returns the Method type according to the AnnotatedMethodType for easier use
-    private AnnotatedMethodType getParameterMethodType(Object target, Method method) {
-        Class[] types = method.getParameterTypes();
-        AnnotatedMethodType methodType = null;
-        if(types == null || types.length == 0)
-            methodType = AnnotatedMethodType.NO_PARAM;
-        else {
-            int typesSize = types.length;
-            switch (typesSize) {
-                case 1:
-                    if (types[0] == EasyAsyncCallbacks.class)
-                        methodType = AnnotatedMethodType.TYPE_CALLBACKS;
-                    else
-                        throw new EasyAsyncRuntimeException("Method " + method.getName() + " in class " + target.getClass().getName() +
-                                " has one parameter and it is not of type AnnotatedMethodType. " +
-                                "See documentation for more details");
-                    break;
-                case 2:
-                    if(types[0] == EasyAsyncCallbacks.class && types[1] == EasyAsyncResult.class)
-                        methodType = AnnotatedMethodType.TYPE_RESULT;
-                    else
-                        throw new EasyAsyncRuntimeException("Method "+method.getName()+" in class "+target.getClass().getName()+
-                                " has two parameters and they are not of type (AnnotatedMethodType, EasyAsyncResult). " +
-                                "See documentation for more details");
-                    break;
-            }
-        }
-
-        return methodType;
-    }
-
-    /**
-     * This method is called when we want to invoke any annotated method in the target Activity
-     * @param id The id of the method to be invoked
-     * @param callbacks The callbacks that will be passed in the method
-     * @param args The arguments that will be passed
-     */
-    synchronized void invokeMethod(String id, EasyAsyncCallbacks callbacks, EasyAsyncResult args) {
-        if(mAnnotatedMethods.size() == 0) {
-            return;
-        }
-        ObjectHolder holder = mAnnotatedMethods.get(id);
-        AnnotatedMethodType parameterType = holder.getMethodType();
-        //we categorize the invokation depending on the number of the parameters specified
-        if(parameterType == AnnotatedMethodType.NO_PARAM)
-            try {
-                holder.getAnnotatedMethod().invoke(holder.getTarget());
-            } catch (Exception e) {
-                throw new EasyAsyncRuntimeException("Problem when invoking method "+holder.getAnnotatedMethod().getName()+" with " +
-                        "no parameter", e);
-            }
-        else if(parameterType == AnnotatedMethodType.TYPE_CALLBACKS)
-            try {
-                holder.getAnnotatedMethod().invoke(holder.getTarget(), callbacks);
-            } catch (Exception e) {
-                throw new EasyAsyncRuntimeException("Problem when invoking method "+holder.getAnnotatedMethod().getName()+" with " +
-                        "one parameter of type EasyAsyncCallbacks "+callbacks.toString(), e);
-            }
-        else if(parameterType == AnnotatedMethodType.TYPE_RESULT)
-            try {
-                holder.getAnnotatedMethod().invoke(holder.getTarget(), callbacks, args);
-            } catch (Exception e) {
-                throw new EasyAsyncRuntimeException("Problem when invoking method "+holder.getAnnotatedMethod().getName()+" with " +
-                        "two parameter of type EasyAsyncCallbacks "+callbacks.toString()+
-                        " and EasyAsyncResult"+args.toString(), e);
-            }
+    @Override
+    public void destroy() {
+        super.destroy();
+        retainedFragment = null;
+        retainedSupportFragment = null;
     }
 }
@@ -1,82 +1,97 @@
 package gr.sieben.easyasync;
 
-import java.util.Map;
+import android.content.Context;
 
 /**
- * A controller class that controls the data in fragments in order to maintain scalability
+ * A controller class that forwards the lifecycle of the retained fragments to the core, the same for the
+ * support.Fragment and the app.Fragment. The fragment that is added with {@link #SCOPE_FRAGMENT_TAG} forwards to
+ * a scope of its own, which lives as long as the fragment, instead of the global registry.
  */
-class FragmentController implements AsyncTaskCallbacks {
+class FragmentController {
 
     public static String FRAGMENT_TAG = "asyncfragmenttag";
+    public static String SCOPE_FRAGMENT_TAG = "asyncscopefragmenttag";
 
-    private EasyAsyncResult args; //argument object that needs to be retained and passed through different async states
+    private boolean scoped;
+    private EasyAsyncCore scope; //created with the first use of a scoped fragment, also after the process has been recreated
 
-    public FragmentController() {
-        args = new EasyAsyncResult();
+    public FragmentController() {}
+
+    /**
+     * Sets whether the fragment forwards to a scope of its own, from its tag
+     * @param tag The tag of the fragment
+     */
+    public void setTag(String tag) {
+        scoped = SCOPE_FRAGMENT_TAG.equals(tag);
     }
 
     /**
-     * Method that starts the respective AsyncTask for the background job specified
-     * @param id The id to be started
-     * @param isForced True if it has to be restarted, false otherwise
+     * Gets the registry that the fragment forwards to
+     * @return The scope of the fragment or the global registry
      */
-    public void startAsync(String id, boolean isForced) {
-        EasyAsyncTask asyncTask = EasyAsync.getInstance().mAnnotatedMethods.get(id).getAsyncTask();
-        if(!isForced && asyncTask != null) {
-            return;
-        }
-        asyncTask = new EasyAsyncTask();
-        asyncTask.setCallbacks(this);
-        asyncTask.setId(id);
-        EasyAsync.getInstance().mAnnotatedMethods.get(id).setAsyncTask(asyncTask);
-        asyncTask.execute();
+    public EasyAsyncCore getCore() {
+        if(!scoped)
+            return EasyAsync.getInstance();
+        if(scope == null)
+            scope = EasyAsync.getInstance().newScope();
+        return scope;
     }
 
     /**
-     * Cancels the async task
-     * @param id The id of the AsyncTask to cancel
+     * Method that is called after a configuration change in the activity. Invokes methods with a
+     * EasyAsyncCallbacks.AFTER_EXECUTE when the AsyncTask has already been completed, its result is still cached
+     * and the arguments of its run have set the callbackConfigurationChange to true.
      */
-    public void cancelAsync(String id) {
-        EasyAsync.getInstance().mAnnotatedMethods.get(id).getAsyncTask().cancel(true);
+    public void onActivityCreated() {
+        getCore().getController().replayCompleted();
     }
 
     /**
-     * The callback that is called from the AsyncTask that indicates a change in its state.
-     * @param id The id of the background job
-     * @param easyAsyncCallbacks The callbackMethod that indicates the current state
+     * Registers the memory callbacks of the result cache on the application context, once for all the retained
+     * fragments, see {@linkplain gr.sieben.easyasync.EasyAsync#registerMemoryCallbacks(android.content.Context)}
+     * @param context The activity of the fragment
      */
-    @Override
-    public synchronized void onResponse(String id, EasyAsyncCallbacks easyAsyncCallbacks) {
-        EasyAsync.getInstance().invokeMethod(id, easyAsyncCallbacks, args);
+    public void onCreate(Context context) {
+        EasyAsync.getInstance().registerMemoryCallbacks(context);
     }
 
     /**
-     * Method that is called after a configuration change in the activity. Invokes methods with a
-     * EasyAsyncCallbacks.AFTER_EXECUTE when the AsyncTask has already been completed and the arguments
-     * has set the callbackConfigurationChange to true.
+     * Forwards the low memory state of the system to the result cache, when the callbacks of the application context
+     * do not forward it already
      */
-    public void onActivityCreated() {
-        for(Map.Entry<String, ObjectHolder> entry : EasyAsync.getInstance().mAnnotatedMethods.entrySet()) {
-            EasyAsyncTask asyncTask = entry.getValue().getAsyncTask();
-            if(asyncTask != null && asyncTask.hasStarted() && asyncTask.isCompleted()
-                    && args.isCallbackOnConfigurationChangeEnabled()) {
-                onResponse(entry.getKey(), EasyAsyncCallbacks.AFTER_EXECUTE);
-            }
-        }
+    public void onLowMemory() {
+        EasyAsync easyAsync = EasyAsync.getInstance();
+        if(!easyAsync.hasMemoryCallbacks())
+            easyAsync.onLowMemory();
     }
 
     /**
-     * During a configuration change we need to re-find the annotations
+     * During a configuration change we need to re-find the annotations. After a lazy initialisation the
+     * Activity is scanned later, see {@link gr.sieben.easyasync.EasyAsync#init(android.app.FragmentManager, boolean)}
      * @param target The activity as a target
      */
     public void onAttach(Object target) {
-        EasyAsync.getInstance().findAnnotations(target);
+        EasyAsyncCore core = getCore();
+        if(core.isRegistrationDeferred())
+            core.registerLazily(target);
+        else
+            core.findAnnotations(target);
     }
 
     /**
      * During a configuration change we need to clear all available references to avoid memory leaks
      */
     public void onDetach() {
-        EasyAsync.getInstance().clearAnnotations();
+        getCore().clearAnnotations();
+    }
+
+    /**
+     * The retained fragment is destroyed with its Activity, so its scope is destroyed too
+     */
+    public void onDestroy() {
+        if(scope != null) {
+            scope.destroy();
+            scope = null;
+        }
     }
 }
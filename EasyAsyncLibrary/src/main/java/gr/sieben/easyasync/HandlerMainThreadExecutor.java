@@ -0,0 +1,85 @@
+package gr.sieben.easyasync;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.os.SystemClock;
+import android.view.Choreographer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link gr.sieben.easyasync.MainThreadExecutor} of android that posts to the handler of the main looper.
+ * Its clock is {@link android.os.SystemClock#elapsedRealtime()}, so the time to live of the cached results
+ * includes the time that the device sleeps. The frames are the frames of the {@link android.view.Choreographer}
+ * from Jelly Bean, before that the frames are assumed to be 16 milliseconds apart. The idle runnables are
+ * {@link android.os.MessageQueue.IdleHandler}s of the main looper.
+ */
+class HandlerMainThreadExecutor implements MainThreadExecutor {
+
+    private static final long FRAME_INTERVAL_MILLIS = 16;
+
+    private final Handler handler;
+    private final List<Runnable> idle = new ArrayList<Runnable>(); //the pending idle runnables, main thread only
+
+    HandlerMainThreadExecutor(Handler handler) {
+        this.handler = handler;
+    }
+
+    @Override
+    public void execute(Runnable runnable) {
+        handler.post(runnable);
+    }
+
+    @Override
+    public void executeDelayed(Runnable runnable, long delayMillis) {
+        handler.postDelayed(runnable, delayMillis);
+    }
+
+    @Override
+    public void executeOnNextFrame(Runnable runnable) {
+        if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            postFrameCallback(runnable);
+        } else {
+            handler.postDelayed(runnable, FRAME_INTERVAL_MILLIS);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static void postFrameCallback(final Runnable runnable) {
+        Choreographer.getInstance().postFrameCallback(new Choreographer.FrameCallback() {
+            @Override
+            public void doFrame(long frameTimeNanos) {
+                runnable.run();
+            }
+        });
+    }
+
+    @Override
+    public void executeWhenIdle(final Runnable runnable) {
+        idle.add(runnable);
+        Looper.myQueue().addIdleHandler(new MessageQueue.IdleHandler() {
+            @Override
+            public boolean queueIdle() {
+                //an idle handler can not be removed without a reference to it, so a removed runnable is skipped
+                if(idle.remove(runnable))
+                    runnable.run();
+                return false;
+            }
+        });
+    }
+
+    @Override
+    public void remove(Runnable runnable) {
+        idle.remove(runnable);
+        handler.removeCallbacks(runnable);
+    }
+
+    @Override
+    public long elapsedMillis() {
+        return SystemClock.elapsedRealtime();
+    }
+}
@@ -27,6 +27,7 @@ class RetainedSupportFragment extends Fragment {
         super.onCreate(savedInstanceState);
         //retain fragment across coniguration changes
         setRetainInstance(true);
+        mController.onCreate(getActivity());
     }
 
     @Override
@@ -38,20 +39,33 @@ class RetainedSupportFragment extends Fragment {
     @Override
     public void onAttach(Activity activity) {
         super.onAttach(activity);
+        mController.setTag(getTag());
         mController.onAttach(activity);
     }
 
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        mController.onDestroy();
+    }
+
+    /**
+     * Gets the controller that the fragment forwards its lifecycle to
+     * @return The controller of the fragment
+     */
+    FragmentController getController() {
+        return mController;
+    }
+
     @Override
     public void onDetach() {
         super.onDetach();
         mController.onDetach();
     }
 
-    public void startAsync(String id, boolean isForced) {
-        mController.startAsync(id, isForced);
-    }
-
-    public void cancelAsync(String id) {
-        mController.cancelAsync(id);
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+        mController.onLowMemory();
     }
 }
@@ -1,10 +1,26 @@
 package gr.sieben.easyasync;
 
+import android.os.Handler;
+import android.os.Looper;
+
 /**
  * Utility class that has convenience methods
  */
 class Utils { //future use
 
+    private static Handler mainHandler;
+
+    /**
+     * Gets a handler of the main thread that is shared by the library
+     * @return The handler of the main looper
+     */
+    public static synchronized Handler getMainHandler() {
+        if(mainHandler == null) {
+            mainHandler = new Handler(Looper.getMainLooper());
+        }
+        return mainHandler;
+    }
+
     /**
      * Gets whether the current android phone is greater than Honeycomb or not
      * @return true if higher, false otherwise